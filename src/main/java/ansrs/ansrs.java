@@ -20,20 +20,27 @@
 // misrepresentation, and required attribution.
 package ansrs;
 
+import ansrs.daemon.DaemonClient;
+import ansrs.daemon.DaemonServer;
 import ansrs.db.ArchiveRepository;
 import ansrs.db.DatabaseInitialiser;
 import ansrs.db.GroupRepository;
+import ansrs.db.StorageProfile;
 import ansrs.set.WorkingSet;
 import ansrs.set.CompletedSet;
+import ansrs.set.SetFormat;
 import ansrs.cli.SRSCommand;
 import ansrs.db.ItemRepository;
 import ansrs.util.Log;
+import ansrs.util.StartupTimer;
 import picocli.CommandLine;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
+import java.util.Arrays;
+import java.util.Optional;
 
 public class ansrs {
 
@@ -51,20 +58,40 @@ public class ansrs {
     }
 
     public static void main(String[] args) {
+        StartupTimer.mark("main");
         try {
             Files.createDirectories(srsDir);
 
-            WorkingSet workingSet = new WorkingSet(workingSetPath);
-            CompletedSet completedSet = new CompletedSet(completedSetPath);
-            Connection conn = DatabaseInitialiser.initEmbeddedDb(databasePath);
+            // everything except starting the daemon goes to a running daemon when there is one
+            boolean startingDaemon = args.length > 0 && args[0].equals("daemon") && !Arrays.asList(args).contains("--stop");
+            if (!startingDaemon) {
+                Optional<Integer> forwarded = DaemonClient.forward(DaemonServer.socketPath(srsDir), Path.of(""), args, System.out, System.err);
+                if (forwarded.isPresent()) System.exit(forwarded.get());
+            }
+            StartupTimer.mark("daemon probe");
+
+            String formatName = System.getenv("ANSRS_SET_FORMAT");
+            SetFormat setFormat = (formatName == null || formatName.isBlank()) ? null : SetFormat.valueOf(formatName.trim().toUpperCase());
+            WorkingSet workingSet = new WorkingSet(workingSetPath, setFormat);
+            CompletedSet completedSet = new CompletedSet(completedSetPath, setFormat);
+            StartupTimer.mark("set load");
+            String profileName = System.getenv("ANSRS_STORAGE_PROFILE");
+            StorageProfile storageProfile = (profileName == null || profileName.isBlank()) ? StorageProfile.BALANCED
+                    : StorageProfile.fromName(profileName).orElseThrow(() -> new RuntimeException(Log.errorMsg("Unknown ANSRS_STORAGE_PROFILE " + profileName)));
+            Connection conn = DatabaseInitialiser.initEmbeddedDb(databasePath, storageProfile);
             ItemRepository itemRepository = new ItemRepository(conn);
             ArchiveRepository archiveRepository = new ArchiveRepository(conn);
             GroupRepository groupRepository = new GroupRepository(conn);
 
             SRSCommand root = new SRSCommand(workingSet, completedSet, itemRepository, archiveRepository, groupRepository);
             int exitCode = new CommandLine(root).execute(args);
+            StartupTimer.mark("command");
+            workingSet.close();
+            completedSet.close();
             itemRepository.close();
             archiveRepository.close();
+            StartupTimer.mark("shutdown");
+            StartupTimer.report();
             System.exit(exitCode);
         } catch (IOException e) {
             throw new RuntimeException(Log.errorMsg("Error initializing environment"), e);
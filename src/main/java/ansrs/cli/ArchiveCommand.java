@@ -3,6 +3,8 @@ package ansrs.cli;
 import ansrs.data.Item;
 import ansrs.db.ItemRepository;
 import ansrs.db.ArchiveRepository;
+import ansrs.db.StorageProfile;
+import ansrs.db.UnitOfWork;
 import ansrs.util.Log;
 import ansrs.util.Printer;
 import ansrs.util.VersionProvider;
@@ -10,6 +12,7 @@ import picocli.CommandLine.*;
 
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.stream.Stream;
 
 @Command(
         name = "archive",
@@ -42,6 +45,15 @@ public class ArchiveCommand implements Callable<Integer> {
     @Option(names = {"--list"}, description = "List all archived items")
     private boolean listAll;
 
+    @Option(names = {"--storage-profile"}, paramLabel = "PROFILE", description = "[\"fast-bulk\"/\"balanced\"/\"durable\"/\"compact\"] Storage profile to run --all or --restore-all under")
+    private String storageProfile;
+
+    @Option(names = {"--limit"}, paramLabel = "N", description = "Use with --list to show only N archived items, ordered by ITEM_ID, or with --name to show the N best matches (default " + SRSCommand.SEARCH_LIMIT + ")")
+    private Integer limit;
+
+    @Option(names = {"--after-id"}, paramLabel = "ITEM_ID", description = "Use with --list --limit to start the page after ITEM_ID")
+    private Integer afterId;
+
     @Option(names = {"--sure"}, description = "Confirm destructive operation for --delete, --all, and --restore-all")
     private boolean sure;
 
@@ -64,8 +76,12 @@ public class ArchiveCommand implements Callable<Integer> {
         if (listAll) return handleList(archiveRepository);
         if (getId != null) return handleGet(getId, archiveRepository);
         if (nameQuery != null) return handleSearch(nameQuery, archiveRepository);
-        if (archiveAll) return handleArchiveAll(db, archiveRepository);
-        if (restoreAll) return handleRestoreAll(db, archiveRepository);
+        if (archiveAll || restoreAll) {
+            StorageProfile profile = storageProfile == null ? null : StorageProfile.fromName(storageProfile).orElseThrow();
+            try (StorageProfile.Scope scope = profile == null ? null : archiveRepository.useStorageProfile(profile)) {
+                return archiveAll ? handleArchiveAll(db, archiveRepository) : handleRestoreAll(db, archiveRepository);
+            }
+        }
 
         throw new ParameterException(spec.commandLine(), Log.errorMsg("No valid operation specified"));
     }
@@ -84,6 +100,24 @@ public class ArchiveCommand implements Callable<Integer> {
             throw new ParameterException(spec.commandLine(), Log.errorMsg("No operation specified"));
         if (ops > 1)
             throw new ParameterException(spec.commandLine(), Log.errorMsg("Only one operation can be used at a time"));
+        if (limit != null) {
+            if (!listAll && nameQuery == null)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--limit is to be used along with --list or --name"));
+            if (limit <= 0)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--limit must be positive"));
+        }
+        if (storageProfile != null) {
+            if (!archiveAll && !restoreAll)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--storage-profile is to be used along with --all or --restore-all"));
+            if (StorageProfile.fromName(storageProfile).isEmpty())
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("Unknown storage profile " + storageProfile + ", pick one of fast-bulk, balanced, durable or compact"));
+        }
+        if (afterId != null) {
+            if (limit == null || !listAll)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--after-id is to be used along with --list --limit"));
+            if (afterId < 0)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--after-id cannot be negative"));
+        }
     }
 
     private int handleAdd(int itemId, ItemRepository db, ArchiveRepository archiveRepository) {
@@ -99,15 +133,16 @@ public class ArchiveCommand implements Callable<Integer> {
             return 1;
         }
 
-        if (!archiveRepository.insertItem(item)){
-            Log.error("Archiving ITEM_ID[" + itemId + "] failed, aborted");
-            return 1;
-        }
-
-        if (!db.deleteItemsById(itemId)) {
-            archiveRepository.deleteItemsById(itemId);
-            Log.error("Rollback: Failed to remove ITEM_ID[" + itemId + "] from DB after archiving");
-            return 1;
+        try (UnitOfWork unit = db.beginUnitOfWork()) {
+            if (!archiveRepository.insertItem(item)){
+                Log.error("Archiving ITEM_ID[" + itemId + "] failed, aborted");
+                return 1;
+            }
+            if (!db.deleteItemsById(itemId)) {
+                Log.error("Failed to remove ITEM_ID[" + itemId + "] from DB after archiving, rolled back");
+                return 1;
+            }
+            unit.commit();
         }
 
         Log.info("Archived ITEM_ID[" + itemId + "] successfully");
@@ -141,15 +176,16 @@ public class ArchiveCommand implements Callable<Integer> {
             return 1;
         }
 
-        if (!db.insertItem(item)){
-            Log.error("Failed to restore ITEM_ID[" + itemId + "] to DB");
-            return 1;
-        }
-
-        if (!archiveRepository.deleteItemsById(itemId)) {
-            db.deleteItemsById(itemId);
-            Log.error("Rollback: Failed to remove ITEM_ID[" + itemId + "] from archive after restore");
-            return 1;
+        try (UnitOfWork unit = db.beginUnitOfWork()) {
+            if (!db.insertItem(item)){
+                Log.error("Failed to restore ITEM_ID[" + itemId + "] to DB");
+                return 1;
+            }
+            if (!archiveRepository.deleteItemsById(itemId)) {
+                Log.error("Failed to remove ITEM_ID[" + itemId + "] from archive after restore, rolled back");
+                return 1;
+            }
+            unit.commit();
         }
 
         Log.info("Restored ITEM_ID[" + itemId + "] successfully");
@@ -157,8 +193,13 @@ public class ArchiveCommand implements Callable<Integer> {
     }
 
     private int handleList(ArchiveRepository archiveRepository) {
-        var list = archiveRepository.getAllItems().orElse(Collections.emptyList());
-        Printer.printItemsList(list);
+        if (limit != null) {
+            Printer.printItemsPage(archiveRepository.getItemsPage(afterId == null ? 0 : afterId, limit).orElse(new ArrayList<>()), limit);
+            return 0;
+        }
+        try (Stream<Item> items = archiveRepository.streamAllItems()) {
+            Printer.printItems(items);
+        }
         return 0;
     }
 
@@ -171,50 +212,41 @@ public class ArchiveCommand implements Callable<Integer> {
 
     private int handleSearch(String query, ArchiveRepository archiveRepository) {
         System.out.println("Search: "+query.trim());
-        var list = archiveRepository.searchItemsByName(query.trim()).orElse(Collections.emptyList());
+        int matches = limit == null ? SRSCommand.SEARCH_LIMIT : limit;
+        var list = archiveRepository.searchItemsByName(query.trim(), matches).orElse(Collections.emptyList());
         Printer.printItemsList(list);
+        if (list.size() == matches) Log.info("Showing the " + matches + " best matches, raise --limit to see more");
         return 0;
     }
 
     private int handleArchiveAll(ItemRepository db, ArchiveRepository archiveRepository) {
         if (!sure)
             throw new ParameterException(spec.commandLine(), Log.errorMsg("--sure flag required to confirm mass archival"));
-        var allItems = db.getAllItems().orElse(Collections.emptyList());
-        if (allItems.isEmpty()) {
+        if (db.countItems() == 0) {
             Log.error("No items in DB to archive");
             return 1;
         }
 
-        Set<Integer> workingIds = parent.workingSet.getItemIdSet();
-        Set<Integer> completedIds = parent.completedSet.getItems().keySet();
-        List<Item> toArchive = new ArrayList<>();
-
-        for (Item item : allItems) {
-            if (workingIds.contains(item.getItemId()) || completedIds.contains(item.getItemId())) {
-                Log.warn("Skipping ITEM_ID[" + item.getItemId() + "]: exists in Working/Completed set, either complete and commit, or delete it");
-                continue;
-            }
-            toArchive.add(item);
-        }
-
-        if (toArchive.isEmpty()) {
-            Log.error("No eligible items to archive");
-            return 1;
-        }
-
-        if (!archiveRepository.insertItemsBatch(toArchive)){
+        // items still in the Working/Completed set stay behind, everything else moves in one statement pair
+        Set<Integer> excluded = new HashSet<>(parent.workingSet.getItemIdSet());
+        excluded.addAll(parent.completedSet.getItems().keySet());
+        // only ids that are in the database are held back, set entries without a row are not worth a warning
+        List<Integer> skipped = new ArrayList<>(db.existingIds(excluded));
+        Collections.sort(skipped);
+        for (int id : skipped)
+            Log.warn("Skipping ITEM_ID[" + id + "]: exists in Working/Completed set, either complete and commit, or delete it");
+
+        Optional<Integer> archived = archiveRepository.archiveAllItemsExcept(excluded);
+        if (archived.isEmpty()) {
             Log.error("Failed to archive items");
             return 1;
         }
-
-        for (Item item : toArchive) {
-            if (!db.deleteItemsById(item.getItemId())) {
-                archiveRepository.deleteItemsById(item.getItemId());
-                Log.error("Rollback: failed to delete ITEM_ID[" + item.getItemId() + "] from DB");
-            }
+        if (archived.get() == 0) {
+            Log.error("No eligible items to archive");
+            return 1;
         }
 
-        Log.info("Archived " + toArchive.size() + " items successfully");
+        Log.info("Archived " + archived.get() + " items successfully");
         return 0;
     }
 
@@ -222,36 +254,25 @@ public class ArchiveCommand implements Callable<Integer> {
         if (!sure)
             throw new ParameterException(spec.commandLine(), Log.errorMsg("--sure flag required to confirm mass restore"));
 
-        var allItems = archiveRepository.getAllItems().orElse(Collections.emptyList());
-        if (allItems.isEmpty()) {
-            Log.error("No items in archive to restore");
+        Optional<List<Integer>> conflicts = archiveRepository.getIdsAlsoInItems();
+        if (conflicts.isEmpty()) {
+            Log.error("Failed to read archive");
             return 1;
         }
+        for (int id : conflicts.get())
+            Log.warn("Skipping ITEM_ID[" + id + "]: already exists in DB");
 
-        int restoredCount = 0;
-        for (Item item : allItems) {
-            if (db.exists(item.getItemId())) {
-                Log.warn("Skipping ITEM_ID[" + item.getItemId() + "]: already exists in DB");
-                continue;
-            }
-            if (!db.insertItem(item)) {
-                Log.error("Failed to restore ITEM_ID[" + item.getItemId() + "] to DB");
-                continue;
-            }
-            if (!archiveRepository.deleteItemsById(item.getItemId())) {
-                db.deleteItemsById(item.getItemId());
-                Log.error("Rollback: failed to remove ITEM_ID[" + item.getItemId() + "] from archive after restore");
-                continue;
-            }
-            restoredCount++;
+        Optional<Integer> restored = archiveRepository.restoreAllItemsExcept(conflicts.get());
+        if (restored.isEmpty()) {
+            Log.error("Failed to restore items");
+            return 1;
         }
-
-        if (restoredCount == 0) {
-            Log.error("No items were restored");
+        if (restored.get() == 0) {
+            Log.error(conflicts.get().isEmpty() ? "No items in archive to restore" : "No items were restored");
             return 1;
         }
 
-        Log.info("Restored " + restoredCount + " items successfully");
+        Log.info("Restored " + restored.get() + " items successfully");
         return 0;
     }
 }
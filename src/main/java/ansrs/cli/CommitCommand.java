@@ -1,14 +1,15 @@
 package ansrs.cli;
 
 import ansrs.data.Item;
+import ansrs.db.UnitOfWork;
 import ansrs.set.CompletedSet;
+import ansrs.set.SetTransaction;
 import ansrs.util.Log;
 import ansrs.util.Printer;
 import ansrs.util.VersionProvider;
 import picocli.CommandLine.*;
 
 import java.time.LocalDate;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -29,7 +30,7 @@ public class CommitCommand implements Callable<Integer> {
 
     @Override
     public Integer call() {
-        HashMap<Integer, CompletedSet.Pair<Item.Pool, LocalDate>> completedSetItems = parent.completedSet.getItems();
+        Map<Integer, CompletedSet.Pair<Item.Pool, LocalDate>> completedSetItems = parent.completedSet.getItems();
         if(completedSetItems.isEmpty()){
             throw new ParameterException(spec.commandLine(), Log.errorMsg("Nothing to commit"));
         }
@@ -41,21 +42,26 @@ public class CommitCommand implements Callable<Integer> {
         if (!parent.workingSet.getItemIdSet().isEmpty() && !force){
             throw new ParameterException(spec.commandLine(), Log.errorMsg("Items found in WorkingSet, use --force to override and commit"));
         }
-        for (Item item : dbItems){
-            CompletedSet.Pair<Item.Pool, LocalDate> poolLocalDatePair = completedSetItems.get(item.getItemId());
-            Item.Pool pool = poolLocalDatePair.getPool();
-            if (pool!=null){
-                item.setItemPool(pool);
+        // the set file is only rewritten once the database update has committed
+        try (UnitOfWork unit = parent.itemRepository.beginUnitOfWork();
+             SetTransaction tx = parent.completedSet.beginBatch()) {
+            unit.enlist(tx);
+            for (Item item : dbItems){
+                CompletedSet.Pair<Item.Pool, LocalDate> poolLocalDatePair = completedSetItems.get(item.getItemId());
+                Item.Pool pool = poolLocalDatePair.getPool();
+                if (pool!=null){
+                    item.setItemPool(pool);
+                }
+                item.setLastRecall(poolLocalDatePair.getLast_recall());
+                item.setTotalRecalls(item.getTotalRecalls()+1);
+                parent.completedSet.removeItem(item.getItemId());
             }
-            item.setLastRecall(poolLocalDatePair.getLast_recall());
-            item.setTotalRecalls(item.getTotalRecalls()+1);
-            parent.completedSet.removeItem(item.getItemId());
-        }
-        if (!parent.itemRepository.updateItemsBatch(dbItems)){
-            Log.error("Commit Failed, rolling back");
-            //rollback from Set items, not db, to preserve the null pools, that signify no change
-            for (Map.Entry<Integer, CompletedSet.Pair<Item.Pool, LocalDate>> item: completedSetItems.entrySet()) parent.completedSet.addItem(item.getKey(), item.getValue().getPool(), item.getValue().getLast_recall());
-            return 1;
+            if (!parent.itemRepository.updateItemsBatch(dbItems)){
+                //closing without a commit restores the set as it was on disk, null pools that signify no change included
+                Log.error("Commit Failed, rolling back");
+                return 1;
+            }
+            unit.commit();
         }
         Log.info("Commit success: "+ dbItems.size()+" items updated");
         Printer.printItemsList(dbItems);
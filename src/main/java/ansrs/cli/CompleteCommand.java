@@ -1,6 +1,7 @@
 package ansrs.cli;
 
 import ansrs.data.Item;
+import ansrs.set.SetTransaction;
 import ansrs.util.Log;
 import ansrs.util.VersionProvider;
 import picocli.CommandLine.*;
@@ -43,13 +44,19 @@ public class CompleteCommand implements Callable<Integer> {
 
         Set<Integer> workingSetItemIds = new HashSet<>(parent.workingSet.getItemIdSet());
         if (allComplete && itemId == 0) {
-            for (int id : workingSetItemIds) {
-
-                boolean cs = parent.completedSet.addItem(id, null);
-                boolean ws = parent.workingSet.removeItem(id);
-                if (!ws&&cs){
-                    Log.warn("ITEM_ID["+id+"] not completely transferred, use --list to verify");
+            try (SetTransaction completedTx = parent.completedSet.beginBatch();
+                 SetTransaction workingTx = parent.workingSet.beginBatch()) {
+                for (int id : workingSetItemIds) {
+
+                    boolean cs = parent.completedSet.addItem(id, null);
+                    boolean ws = parent.workingSet.removeItem(id);
+                    if (!ws&&cs){
+                        Log.warn("ITEM_ID["+id+"] not completely transferred, use --list to verify");
+                    }
                 }
+                // completed first, an interruption in between leaves items in both sets rather than in neither
+                completedTx.commit();
+                workingTx.commit();
             }
             Log.info("WorkingSet completed");
             return 0;
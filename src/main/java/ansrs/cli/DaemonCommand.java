@@ -0,0 +1,44 @@
+package ansrs.cli;
+
+import ansrs.daemon.DaemonClient;
+import ansrs.daemon.DaemonServer;
+import ansrs.util.Log;
+import ansrs.util.VersionProvider;
+import picocli.CommandLine.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+
+@Command(name = "daemon",
+        header = "Keep the database and sets open in the background and serve commands from it",
+        mixinStandardHelpOptions = true, versionProvider = VersionProvider.class)
+public class DaemonCommand implements Callable<Integer> {
+
+    @ParentCommand
+    SRSCommand parent;
+
+    @Spec
+    Model.CommandSpec spec;
+
+    @Option(names = {"--stop"}, description = "Stop the running daemon")
+    private boolean stop;
+
+    @Override
+    public Integer call() {
+        Path socketPath = DaemonServer.socketPath(parent.workingSet.getSetPath().toAbsolutePath().getParent());
+        if (stop) {
+            // a running daemon intercepts --stop itself, reaching here means none is listening
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("No daemon running"));
+        }
+        if (DaemonClient.isRunning(socketPath))
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("Daemon already running"));
+        try {
+            new DaemonServer(parent, socketPath).serve();
+            return 0;
+        } catch (IOException e) {
+            Log.error("Daemon failed: " + e.getMessage());
+            return 1;
+        }
+    }
+}
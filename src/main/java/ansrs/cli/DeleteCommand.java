@@ -1,5 +1,7 @@
 package ansrs.cli;
 
+import ansrs.db.UnitOfWork;
+import ansrs.set.SetTransaction;
 import ansrs.util.Log;
 import ansrs.util.VersionProvider;
 import picocli.CommandLine.*;
@@ -42,15 +44,22 @@ public class DeleteCommand implements Callable<Integer> {
     public Integer call() {
         validate();
         if (reset) {
-            if (
-                    parent.itemRepository.clearItems() &&
-                            parent.completedSet.clearSet() &&
-                            parent.workingSet.clearSet()
-            ){
-                Log.info("Reset successful");
-                return 0;
+            // the database and both sets are cleared together or not at all
+            try (UnitOfWork unit = parent.itemRepository.beginUnitOfWork();
+                 SetTransaction cs = parent.completedSet.beginBatch();
+                 SetTransaction ws = parent.workingSet.beginBatch()) {
+                unit.enlist(cs, ws);
+                if (
+                        parent.itemRepository.clearItems() &&
+                                parent.completedSet.clearSet() &&
+                                parent.workingSet.clearSet()
+                ){
+                    unit.commit();
+                    Log.info("Reset successful");
+                    return 0;
+                }
             }
-            else Log.error("Complete Reset failed, use --list flag to check status");
+            Log.error("Complete Reset failed, nothing was changed");
             return 1;
         }
 
@@ -82,13 +91,19 @@ public class DeleteCommand implements Callable<Integer> {
 
 
         if (deleteFromDatabase) {
-            if (!parent.itemRepository.deleteItemsById(itemId)) {
-                Log.error("Error in deleting ITEM_ID [" + itemId + "] from DB, use --list to confirm its existence");
-                return 1;
+            try (UnitOfWork unit = parent.itemRepository.beginUnitOfWork();
+                 SetTransaction csTx = parent.completedSet.beginBatch();
+                 SetTransaction wsTx = parent.workingSet.beginBatch()) {
+                unit.enlist(csTx, wsTx);
+                if (!parent.itemRepository.deleteItemsById(itemId)) {
+                    Log.error("Error in deleting ITEM_ID [" + itemId + "] from DB, use --list to confirm its existence");
+                    return 1;
+                }
+                boolean cs = parent.completedSet.removeItem(itemId);
+                boolean ws = parent.workingSet.removeItem(itemId);
+                unit.commit();
+                Log.info("ITEM_ID [" + itemId + "] deleted from the database" + ((cs)?", and the CompletedSet.":"") + ((ws)?", and the WorkingSet.":"")+((!ws&&!cs)?".":""));
             }
-            boolean cs = parent.completedSet.removeItem(itemId);
-            boolean ws = parent.workingSet.removeItem(itemId);
-            Log.info("ITEM_ID [" + itemId + "] deleted from the database" + ((cs)?", and the CompletedSet.":"") + ((ws)?", and the WorkingSet.":"")+((!ws&&!cs)?".":""));
         } else if (deleteFromCompletedSet) {
             if (!parent.completedSet.removeItem(itemId)) {
                 throw new ParameterException(spec.commandLine(), Log.errorMsg("ITEM_ID [" + itemId + "] non-existent in CompletedSet"));
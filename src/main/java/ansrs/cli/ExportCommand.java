@@ -0,0 +1,141 @@
+package ansrs.cli;
+
+import ansrs.data.Group;
+import ansrs.data.Item;
+import ansrs.db.GroupItemRepository;
+import ansrs.service.Exporter;
+import ansrs.util.Log;
+import ansrs.util.VersionProvider;
+import picocli.CommandLine.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+@Command(name = "export", description = """
+        items and archive export as csv in the import format, so an export can be imported back.
+        groups export as (GROUP_ID, GROUP_NAME, GROUP_LINK, CREATED_AT, UPDATED_AT).
+        group_items export as (GROUP_ID, ITEM_ID).
+        jsonl writes one JSON object per row, keyed by the column names.
+        """, header = "Export a table of the database to a csv or jsonl file.",
+        mixinStandardHelpOptions = true, versionProvider = VersionProvider.class)
+public class ExportCommand implements Callable<Integer> {
+
+    @Spec
+    Model.CommandSpec spec;
+
+    @ParentCommand
+    SRSCommand parent;
+
+    @Option(names = "--table", paramLabel = "TABLE", description = "[\"items\"/\"archive\"/\"groups\"/\"group_items\"] Table to export", required = true)
+    private String table;
+
+    @Option(names = "--path", paramLabel = "FILE_PATH", description = "File to write the export to", required = true)
+    private String filePath;
+
+    @Option(names = "--format", paramLabel = "FORMAT", description = "[\"csv\"/\"jsonl\"] Output format", defaultValue = "csv")
+    private String format;
+
+    @Option(names = "--gzip", description = "Compress the output with gzip")
+    private boolean gzip;
+
+    @Option(names = "--fast", description = "Let H2 write the csv itself with CSVWRITE, csv only and without --gzip")
+    private boolean fast;
+
+    @Option(names = "--sure", description = "Confirm overwriting an existing file")
+    private boolean sure;
+
+    @Override
+    public Integer call() {
+        validate();
+        Path path = parent.resolvePath(filePath);
+        String name = table.trim().toLowerCase(Locale.ROOT);
+        long start = System.nanoTime();
+        Optional<Long> rows = fast ? fastExport(name, path) : streamExport(name, path);
+        if (rows.isEmpty()) {
+            Log.error("Export failed");
+            return 1;
+        }
+        long elapsed = System.nanoTime() - start;
+        Log.info(String.format("Export success: Wrote %,d %s rows to %s in %.1f s, %,d rows/s", rows.get(), name, path, elapsed / 1e9,
+                elapsed <= 0 ? 0 : rows.get() * 1_000_000_000L / elapsed));
+        return 0;
+    }
+
+    private Optional<Long> streamExport(String name, Path path) {
+        try (Exporter exporter = new Exporter(path, Exporter.Format.fromName(format).orElseThrow(), gzip)) {
+            Log.info("Exporting " + name);
+            long rows = switch (name) {
+                case "items" -> {
+                    try (Stream<Item> items = parent.itemRepository.streamAllItems()) {
+                        yield exporter.writeItems(items);
+                    }
+                }
+                case "archive" -> {
+                    try (Stream<Item> items = parent.archiveRepository.streamAllItems()) {
+                        yield exporter.writeItems(items);
+                    }
+                }
+                case "groups" -> {
+                    try (Stream<Group> groups = parent.groupRepository.streamAll()) {
+                        yield exporter.writeGroups(groups);
+                    }
+                }
+                default -> {
+                    try (Stream<GroupItemRepository.Membership> memberships = parent.groupRepository.streamMemberships()) {
+                        yield exporter.writeMemberships(memberships);
+                    }
+                }
+            };
+            exporter.finish();
+            return Optional.of(rows);
+        } catch (Exception e) {
+            Log.error(e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // CSVWRITE goes to <file>.part as well, so a failed export never leaves a half written file in place
+    private Optional<Long> fastExport(String name, Path path) {
+        Path part = path.resolveSibling(path.getFileName() + ".part");
+        Log.info("Exporting " + name + " through the database");
+        Optional<Long> rows = switch (name) {
+            case "items" -> parent.itemRepository.bulkExport(part);
+            case "archive" -> parent.archiveRepository.bulkExport(part);
+            case "groups" -> parent.groupRepository.bulkExport(part, false);
+            default -> parent.groupRepository.bulkExport(part, true);
+        };
+        try {
+            if (rows.isPresent()) Files.move(part, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            else Files.deleteIfExists(part);
+            return rows;
+        } catch (IOException e) {
+            Log.error("Failed to finish export to " + path + "\n" + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void validate() {
+        String name = table.trim().toLowerCase(Locale.ROOT);
+        if (!name.equals("items") && !name.equals("archive") && !name.equals("groups") && !name.equals("group_items"))
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("Pick one of --table=items, archive, groups or group_items"));
+        if (Exporter.Format.fromName(format).isEmpty())
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("Pick either --format=csv or --format=jsonl"));
+        if (fast && (gzip || Exporter.Format.fromName(format).orElseThrow() != Exporter.Format.CSV))
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("--fast writes plain csv, drop --gzip and --format"));
+        if (filePath.isBlank())
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("File path is required for export"));
+        Path path = parent.resolvePath(filePath);
+        if (Files.isDirectory(path))
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("Regular file required"));
+        if (path.getParent() != null && !Files.isDirectory(path.getParent()))
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("Existing directory required for " + path));
+        if (Files.exists(path) && !sure)
+            throw new ParameterException(spec.commandLine(), Log.errorMsg(path + " already exists, use --sure to overwrite it"));
+    }
+}
@@ -5,6 +5,7 @@ import ansrs.db.GroupRepository;
 import ansrs.data.Item;
 import ansrs.set.WorkingSet;
 import ansrs.util.Log;
+import ansrs.util.Pager;
 import ansrs.util.Printer;
 import ansrs.util.VersionProvider;
 import picocli.CommandLine.*;
@@ -12,7 +13,9 @@ import picocli.CommandLine.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.stream.Stream;
 
 @Command(
         name = "group",
@@ -57,6 +60,12 @@ public class GroupCommand implements Callable<Integer> {
     @Option(names = "--show-all", description = "Show all groups in collection")
     private boolean showAll;
 
+    @Option(names = "--limit", paramLabel = "N", description = "Use with --show-all to show only N groups, ordered by GROUP_ID")
+    private Integer limit;
+
+    @Option(names = "--after-id", paramLabel = "GROUP_ID", description = "Use with --limit to start the page after GROUP_ID")
+    private Integer afterId;
+
     @Option(names = "--show-items", description = "Show items in a specific group")
     private boolean showItems;
 
@@ -133,8 +142,14 @@ public class GroupCommand implements Callable<Integer> {
         // ===== SHOW ALL GROUPS =====
 
         if (showAll){
-            List<Group> groups = groupRepository.findAll().orElse(new ArrayList<>());
-            Printer.printGroupsList(groups);
+            if (limit != null) {
+                Printer.printGroupsPage(groupRepository.findPage(afterId == null ? 0 : afterId, limit).orElse(new ArrayList<>()), limit);
+                return 0;
+            }
+            // paged in from the database, only one page of groups is held at a time
+            try (Stream<Group> groups = Pager.stream(groupRepository::findPage, group -> group.id, Pager.DEFAULT_PAGE_SIZE)) {
+                Printer.printGroups(groups);
+            }
             return 0;
         }
 
@@ -165,8 +180,9 @@ public class GroupCommand implements Callable<Integer> {
         if (!batchItemIds.isEmpty()) {
             List<Integer> toAdd = new ArrayList<>();
 
+            Set<Integer> members = groupRepository.existingMembers(groupId, batchItemIds);
             for (Integer id : batchItemIds) {
-                if (parent.groupRepository.itemExistsInGroup(groupId, id)) {
+                if (members.contains(id)) {
                     Log.warn("ITEM_ID[" + id + "] already exists in GROUP[" + groupId + "], skipping.");
                 } else {
                     toAdd.add(id);
@@ -246,6 +262,19 @@ public class GroupCommand implements Callable<Integer> {
             );
         }
 
+        if (limit != null) {
+            if (!showAll)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--limit is to be used along with --show-all"));
+            if (limit <= 0)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--limit must be positive"));
+        }
+        if (afterId != null) {
+            if (limit == null)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--after-id is to be used along with --limit"));
+            if (afterId < 0)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--after-id cannot be negative"));
+        }
+
         if (showAll) return;
 
         // ===== CREATE RULES =====
@@ -329,8 +358,9 @@ public class GroupCommand implements Callable<Integer> {
         }
 
 
+        Set<Integer> existing = batchItemIds.isEmpty() ? Set.of() : parent.itemRepository.existingIds(batchItemIds);
         for (Integer id : batchItemIds) {
-            if (id == null || id <= 0 || !parent.itemRepository.exists(id)) {
+            if (id == null || id <= 0 || !existing.contains(id)) {
                 throw new ParameterException(
                         spec.commandLine(),
                         Log.errorMsg("Invalid ITEM_ID in batch: " + id)
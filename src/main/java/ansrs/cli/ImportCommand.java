@@ -1,15 +1,19 @@
 package ansrs.cli;
 
 import ansrs.data.Item;
+import ansrs.db.CsvBulk;
+import ansrs.db.StorageProfile;
 import ansrs.util.Log;
 import ansrs.service.CSVImporter;
+import ansrs.service.ImportCheckpoint;
 import ansrs.util.VersionProvider;
 import picocli.CommandLine.*;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.Callable;
 
@@ -39,36 +43,132 @@ public class ImportCommand implements Callable<Integer> {
     @Option(names = "--preserve", paramLabel = "PRESERVE_OPTION", description = "[\"csv\"/\"db\"] Pick between overwriting csv values in db or preserving db values in the even of duplicate ITEM_IDs.", required = true)
     private String overwrite;
 
+    @Option(names = "--storage-profile", paramLabel = "PROFILE", description = "[\"fast-bulk\"/\"balanced\"/\"durable\"/\"compact\"] Storage profile to run the import under, fast-bulk suits large files")
+    private String storageProfile;
+
+    @Option(names = "--chunk-size", paramLabel = "ROWS", description = "Rows validated and committed together, only one chunk is held in memory at a time", defaultValue = "5000")
+    private int chunkSize;
+
+    @Option(names = "--resume", description = "Continue an import that stopped part way, after the last chunk it committed")
+    private boolean resume;
+
+    @Option(names = "--fast", description = "For large, trusted files: H2 reads, checks and moves the whole file in one pass, a row with missing fields is rejected instead of failing the file, --chunk-size and --resume do not apply")
+    private boolean fast;
+
+    // at most one progress line per interval, so large files do not flood the terminal
+    private static final long PROGRESS_INTERVAL_NANOS = 2_000_000_000L;
+
     @Override
     public Integer call() {
         validate();
-        try {
-            Log.info("Parsing CSV");
-            CSVImporter csv = new CSVImporter(filePath);
-            List<Item> items = csv.parse();
-            if (items.isEmpty())
+        Path path = parent.resolvePath(filePath);
+        if (fast) return fastImport(path);
+        ImportCheckpoint checkpoint = new ImportCheckpoint(path);
+        long skip = 0;
+        if (resume) {
+            skip = checkpoint.committedRecords().orElseThrow(() -> new ParameterException(spec.commandLine(),
+                    Log.errorMsg("Nothing to resume, no checkpoint matches the current file, rerun without --resume")));
+            Log.info("Resuming after record " + skip);
+        } else if (checkpoint.exists()) {
+            Log.warn("Discarding the checkpoint of an earlier unfinished import of this file, use --resume to continue it instead");
+        }
+        boolean preserveDb = overwrite.equalsIgnoreCase("db");
+        StorageProfile profile = storageProfile == null ? null : StorageProfile.fromName(storageProfile).orElseThrow();
+        long[] added = {0}, duplicates = {0};
+        try (StorageProfile.Scope scope = profile == null ? null : parent.itemRepository.useStorageProfile(profile)) {
+            Log.info("Importing CSV");
+            long start = System.nanoTime();
+            long[] lastReport = {start};
+            CSVImporter csv = new CSVImporter(path.toString());
+            CSVImporter.Summary summary = csv.stream(chunkSize, skip, (chunk, records) -> {
+                if (!chunk.isEmpty()) {
+                    List<Item> toWrite = chunk;
+                    if (preserveDb) {
+                        // duplicates are looked up per chunk, the ids already in the database are never loaded whole
+                        Set<Integer> existing = parent.itemRepository.existingIds(chunk.stream().map(Item::getItemId).toList());
+                        toWrite = new ArrayList<>(chunk.size());
+                        for (Item i : chunk) {
+                            if (existing.contains(i.getItemId())) {
+                                Log.warn("Duplicate " + i);
+                                duplicates[0]++;
+                            } else toWrite.add(i);
+                        }
+                    }
+                    if (!toWrite.isEmpty()) {
+                        boolean ok = preserveDb ? parent.itemRepository.insertItemsBatch(toWrite) : parent.itemRepository.upsertItemsBatch(toWrite);
+                        if (!ok) return false;
+                        added[0] += toWrite.size();
+                    }
+                }
+                checkpoint.save(records);
+                long now = System.nanoTime();
+                if (now - lastReport[0] >= PROGRESS_INTERVAL_NANOS) {
+                    Log.info(String.format("%,d records read, %,d rows written, %,d rows/s", records, added[0], rate(added[0], now - start)));
+                    lastReport[0] = now;
+                }
+                return true;
+            });
+            if (!summary.completed()) {
+                logFailure(added[0]);
+                return 1;
+            }
+            checkpoint.clear();
+            if (summary.valid() == 0 && skip == 0)
                 throw new ParameterException(spec.commandLine(), Log.errorMsg("Import Failed: No Valid Rows"));
-            Set<Integer> dbItemsSet = parent.itemRepository.getAllItemsIds().orElse(new HashSet<>());
-            boolean success = false;
-            if (overwrite.equalsIgnoreCase("db")) {
-                List<Item> duplicates = items.stream().filter(k -> dbItemsSet.contains(k.getItemId())).toList();
-                List<Item> uniques = items.stream().filter(k -> !dbItemsSet.contains(k.getItemId())).toList();
-                if (!uniques.isEmpty()) success = parent.itemRepository.insertItemsBatch(uniques);
-                if (!duplicates.isEmpty()) Log.warn(duplicates.size() + " duplicate item(s)");
-                for (Item i : duplicates) Log.warn("Duplicate " + i.toString());
-                if (success) {
-                    Log.info("Import success: Added " + uniques.size() + " Unique Rows to database");
-                    return 0;
-                } else if (uniques.isEmpty()) Log.error("No Items to add to db");
-                else Log.error("Import failed");
+            if (duplicates[0] > 0) Log.warn(duplicates[0] + " duplicate item(s)");
+            long elapsed = System.nanoTime() - start;
+            if (preserveDb) {
+                if (added[0] == 0) {
+                    Log.error("No Items to add to db");
+                    return 1;
+                }
+                Log.info("Import success: Added " + added[0] + " Unique Rows to database");
             } else {
-                success = parent.itemRepository.upsertItemsBatch(items);
-                if (success) {
-                    Log.info("Import success: Merged " + items.size() + " Valid Rows to database");
-                    return 0;
-                } else Log.error("Import failed");
+                Log.info("Import success: Merged " + added[0] + " Valid Rows to database");
             }
+            Log.info(String.format("%,d records in %.1f s, %,d rows/s", summary.records() - skip, elapsed / 1e9, rate(added[0], elapsed)));
+            return 0;
+        } catch (ParameterException e) {
+            throw e;
+        } catch (Exception e) {
+            logFailure(added[0]);
             return 1;
+        }
+    }
+
+    private Integer fastImport(Path path) {
+        boolean preserveDb = overwrite.equalsIgnoreCase("db");
+        StorageProfile profile = storageProfile == null ? null : StorageProfile.fromName(storageProfile).orElseThrow();
+        try (StorageProfile.Scope scope = profile == null ? null : parent.itemRepository.useStorageProfile(profile)) {
+            Log.info("Importing CSV through the database");
+            long start = System.nanoTime();
+            // the header is told apart exactly as the streaming import does it, a bad first row fails the file
+            boolean header = new CSVImporter(path.toString()).hasHeader();
+            // rejects are collected so the count leads them, as in the streaming import
+            StringBuilder rejects = new StringBuilder();
+            Optional<CsvBulk.Result> result = parent.itemRepository.bulkImport(path, header, preserveDb,
+                    reject -> rejects.append(Log.warnMsg("Invalid ")).append(reject).append("\n"));
+            if (result.isEmpty()) {
+                Log.error("Import failed");
+                return 1;
+            }
+            CsvBulk.Result res = result.get();
+            if (res.rejected() > 0) Log.warn(res.rejected() + " invalid row(s)\n" + rejects);
+            if (res.written() == 0 && res.duplicates() == 0)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("Import Failed: No Valid Rows"));
+            if (res.duplicates() > 0) Log.warn(res.duplicates() + " duplicate item(s)");
+            long elapsed = System.nanoTime() - start;
+            if (preserveDb) {
+                if (res.written() == 0) {
+                    Log.error("No Items to add to db");
+                    return 1;
+                }
+                Log.info("Import success: Added " + res.written() + " Unique Rows to database");
+            } else {
+                Log.info("Import success: Merged " + res.written() + " Valid Rows to database");
+            }
+            Log.info(String.format("%,d records in %.1f s, %,d rows/s", res.rows(), elapsed / 1e9, rate(res.written(), elapsed)));
+            return 0;
         } catch (ParameterException e) {
             throw e;
         } catch (Exception e) {
@@ -77,12 +177,21 @@ public class ImportCommand implements Callable<Integer> {
         }
     }
 
+    private static void logFailure(long added) {
+        if (added > 0) Log.error("Import failed after " + added + " rows, rerun with --resume to continue after the last committed chunk");
+        else Log.error("Import failed");
+    }
+
+    private static long rate(long rows, long nanos) {
+        return nanos <= 0 ? 0 : rows * 1_000_000_000L / nanos;
+    }
+
     private void validate() {
         if (filePath.isBlank())
             throw new ParameterException(spec.commandLine(), Log.errorMsg("File path is required for import"));
         if (!filePath.trim().endsWith(".csv"))
             throw new ParameterException(spec.commandLine(), Log.errorMsg("CSV file expected"));
-        Path path = Path.of(filePath).toAbsolutePath().normalize();
+        Path path = parent.resolvePath(filePath);
         if (!Files.exists(path))
             throw new ParameterException(spec.commandLine(), Log.errorMsg("Existing File required"));
         if (!Files.isRegularFile(path))
@@ -91,6 +200,12 @@ public class ImportCommand implements Callable<Integer> {
             throw new ParameterException(spec.commandLine(), Log.errorMsg("File is not readable"));
         if (!overwrite.equalsIgnoreCase("csv") && !overwrite.equalsIgnoreCase("db"))
             throw new ParameterException(spec.commandLine(), Log.errorMsg("Pick either --overwrite=csv or --overwrite=db"));
+        if (fast && resume)
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("--resume does not apply to --fast, a fast import commits in one go"));
+        if (chunkSize <= 0)
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("--chunk-size must be positive"));
+        if (storageProfile != null && StorageProfile.fromName(storageProfile).isEmpty())
+            throw new ParameterException(spec.commandLine(), Log.errorMsg("Unknown storage profile " + storageProfile + ", pick one of fast-bulk, balanced, durable or compact"));
     }
 
 }
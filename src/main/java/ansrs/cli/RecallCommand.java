@@ -5,9 +5,11 @@ import ansrs.db.ItemRepository;
 import ansrs.util.Log;
 import ansrs.util.Printer;
 import ansrs.service.RecallService;
+import ansrs.set.SetTransaction;
 import ansrs.util.VersionProvider;
 import picocli.CommandLine.*;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.Callable;
@@ -37,6 +39,9 @@ public class RecallCommand implements Callable<Integer> {
             split = ",", arity = "1..*")
     private ArrayList<Integer> customRecallIds = new ArrayList<>();
 
+    @Option(names = {"--rebuild-scores"}, description = "Recompute the stored recall scores of every item before recalling")
+    private boolean rebuildScores;
+
     private final ArrayList<Integer> validCustomRecallIds = new ArrayList<>();
 
     @Override
@@ -48,21 +53,33 @@ public class RecallCommand implements Callable<Integer> {
             if (!overwrite && !append)
                 throw new ParameterException(spec.commandLine(), Log.errorMsg("WorkingSet non-empty, use --overwrite or --append to bypass"));
             if (overwrite) {
-                workingSetItems.clear();
                 Log.info("Overwriting existing WorkingSet");
             } else {
                 Log.info("Appending items to non-empty WorkingSet");
             }
         }
+        Set<Integer> recalled = new LinkedHashSet<>();
         if (validCustomRecallIds.isEmpty()){
             RecallService recallService = createRecallService(parent.itemRepository);
-            workingSetItems.addAll(recallService.recall(recallCount));
+            if (rebuildScores && !recallService.rebuildScoreIndex()) {
+                Log.error("Recall score rebuild failed");
+                return 1;
+            }
+            recalled.addAll(recallService.recall(recallCount));
         } else {
-            workingSetItems.addAll(validCustomRecallIds);
+            recalled.addAll(validCustomRecallIds);
+        }
+        // goes through the set api rather than the live id set, so the change is recorded and survives a concurrent writer
+        try (SetTransaction tx = parent.workingSet.beginBatch()) {
+            if (overwrite && !workingSetItems.isEmpty()) parent.workingSet.clearSet();
+            parent.workingSet.fillSet(recalled);
+            tx.commit();
         }
-        parent.workingSet.fillSet(workingSetItems);
         Log.info(workingSetItems.size() + " items in WorkingSet");
-        List<Item> list = parent.itemRepository.getItemsFromList(workingSetItems.stream().toList()).orElse(new ArrayList<>());
+        // freshly recalled items are listed first and in ranking order, anything already in the set follows
+        List<Integer> order = new ArrayList<>(recalled);
+        for (int id : workingSetItems) if (!recalled.contains(id)) order.add(id);
+        List<Item> list = parent.itemRepository.getItemsFromList(order).orElse(new ArrayList<>());
         Printer.printItemsList(list);
         return 0;
     }
@@ -87,9 +104,11 @@ public class RecallCommand implements Callable<Integer> {
                     }
                 }
             } else {
+                // one lookup for the whole list rather than a query per id
+                Set<Integer> existing = parent.itemRepository.existingIds(customRecallIds);
                 for (int id : customRecallIds) {
                     if (id<=0) Log.warn("ITEM_ID cannot be non-positive, ignoring");
-                    else if (!parent.itemRepository.exists(id)) {
+                    else if (!existing.contains(id)) {
                         Log.warn("ITEM_ID[" + id + "] non existent in database, ignoring");
                     } else {
                         validCustomRecallIds.add(id);
@@ -9,7 +9,7 @@ import ansrs.util.VersionProvider;
 import picocli.CommandLine.*;
 
 import java.time.LocalDate;
-import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 @Command(name = "rollback", header = "Roll back items from CompletedSet to WorkingSet",
@@ -32,7 +32,7 @@ public class RollbackCommand implements Callable<Integer> {
     public Integer call() {
         validate();
         if (all) {
-            HashMap<Integer, CompletedSet.Pair<Item.Pool, LocalDate>> completedSetItems = parent.completedSet.getItems();
+            Map<Integer, CompletedSet.Pair<Item.Pool, LocalDate>> completedSetItems = parent.completedSet.getItems();
             if (parent.workingSet.fillSet(completedSetItems.keySet()) &&
                             parent.completedSet.clearSet()) {
                 Log.info("Full rollback complete.");
@@ -1,5 +1,6 @@
 package ansrs.cli;
 
+import ansrs.data.Item;
 import ansrs.db.ArchiveRepository;
 import ansrs.db.GroupRepository;
 import ansrs.set.WorkingSet;
@@ -12,21 +13,27 @@ import ansrs.util.VersionProvider;
 import picocli.CommandLine;
 import picocli.CommandLine.*;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 
 @Command(name = "ansrs",
         description = "AnSRS (Pronounced \"Answers\") is a spaced repetition system.", versionProvider = VersionProvider.class,
         mixinStandardHelpOptions = true,
         subcommands = {AddCommand.class, CompleteCommand.class, DeleteCommand.class, CommitCommand.class,
-                RecallCommand.class, RollbackCommand.class, ImportCommand.class, ArchiveCommand.class,
-                GroupCommand.class})
+                RecallCommand.class, RollbackCommand.class, ImportCommand.class, ExportCommand.class,
+                ArchiveCommand.class, GroupCommand.class, DaemonCommand.class})
 public class SRSCommand implements Callable<Integer> {
     public final WorkingSet workingSet;
     public final CompletedSet completedSet;
     public final ItemRepository itemRepository;
     public final ArchiveRepository archiveRepository;
     public final GroupRepository groupRepository;
+    // matches a name search shows when no --limit is given
+    static final int SEARCH_LIMIT = 50;
+    // relative paths given on the command line resolve against this, the daemon points it at each client's directory
+    private Path workingDirectory = Path.of("").toAbsolutePath();
 
     public SRSCommand(WorkingSet workingSet, CompletedSet completedSet, ItemRepository ItemRepository, ArchiveRepository archiveRepository, GroupRepository groupRepository) {
         this.workingSet = workingSet;
@@ -45,6 +52,12 @@ public class SRSCommand implements Callable<Integer> {
     @Option(names = {"-s", "--set"}, description = "Use this flag with --list to print only set", required = false)
     private boolean set;
 
+    @Option(names = {"--limit"}, paramLabel = "N", description = "Use with --list to show only N database items, ordered by ITEM_ID, or with --name to show the N best matches (default " + SEARCH_LIMIT + ")", required = false)
+    private Integer limit;
+
+    @Option(names = {"--after-id"}, paramLabel = "ITEM_ID", description = "Use with --list --limit to start the page after ITEM_ID", required = false)
+    private Integer afterId;
+
     @Option(names = {"-i", "--id"}, paramLabel = "ITEM_ID", description = "Print a specific Item", required = false, defaultValue = "-12341234")
     private int itemId;
 
@@ -61,11 +74,16 @@ public class SRSCommand implements Callable<Integer> {
         }
         if (!itemName.equals("zyxwvutsrqp")) {
             System.out.println("Search: " + itemName);
-            Printer.printItemsList(itemRepository.searchItemsByName(itemName.trim()).orElse(new ArrayList<>()));
+            int matches = limit == null ? SEARCH_LIMIT : limit;
+            List<Item> found = itemRepository.searchItemsByName(itemName.trim(), matches).orElse(new ArrayList<>());
+            Printer.printItemsList(found);
+            if (found.size() == matches) Log.info("Showing the " + matches + " best matches, raise --limit to see more");
         }
         if (list) {
             if (set) {
                 Printer.setStatePrinter(workingSet, completedSet, itemRepository);
+            } else if (limit != null) {
+                Printer.statePrinter(workingSet, completedSet, itemRepository, afterId == null ? 0 : afterId, limit);
             } else {
                 Printer.statePrinter(workingSet, completedSet, itemRepository);
             }
@@ -73,6 +91,14 @@ public class SRSCommand implements Callable<Integer> {
         return 0;
     }
 
+    public Path resolvePath(String path) {
+        return workingDirectory.resolve(path).toAbsolutePath().normalize();
+    }
+
+    public void setWorkingDirectory(Path workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
     private void validate() {
         if (itemId != -12341234) {
             if (itemId <= 0)
@@ -86,6 +112,18 @@ public class SRSCommand implements Callable<Integer> {
         }
         if (set && !list)
             throw new ParameterException(spec.commandLine(), Log.errorMsg("--set is to be used along with --list, to display only Set statuses"));
+        if (limit != null) {
+            if (itemName.equals("zyxwvutsrqp") && (!list || set))
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--limit is to be used along with --list, to page through the database, or --name"));
+            if (limit <= 0)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--limit must be positive"));
+        }
+        if (afterId != null) {
+            if (limit == null || !list || set)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--after-id is to be used along with --list --limit"));
+            if (afterId < 0)
+                throw new ParameterException(spec.commandLine(), Log.errorMsg("--after-id cannot be negative"));
+        }
     }
 
     private void startMessage(){
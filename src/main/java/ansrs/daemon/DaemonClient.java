@@ -0,0 +1,63 @@
+package ansrs.daemon;
+
+import ansrs.util.Log;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+// forwards a command line to a running daemon and replays its output, so no database or set is opened locally
+public class DaemonClient {
+
+    public static boolean isRunning(Path socketPath) {
+        if (!Files.exists(socketPath)) return false;
+        try (SocketChannel ignored = SocketChannel.open(UnixDomainSocketAddress.of(socketPath))) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // empty when no daemon is listening, the caller then runs the command itself
+    public static Optional<Integer> forward(Path socketPath, Path workingDirectory, String[] args, PrintStream out, PrintStream err) {
+        if (!Files.exists(socketPath)) return Optional.empty();
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(socketPath));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+        try (channel) {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+            request.writeUTF(workingDirectory.toAbsolutePath().toString());
+            request.writeInt(args.length);
+            for (String arg : args) request.writeUTF(arg);
+            request.flush();
+
+            DataInputStream response = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (true) {
+                byte type = response.readByte();
+                byte[] payload = new byte[response.readInt()];
+                response.readFully(payload);
+                switch (type) {
+                    case DaemonServer.STDOUT -> out.write(payload);
+                    case DaemonServer.STDERR -> err.write(payload);
+                    case DaemonServer.EXIT -> {
+                        out.flush();
+                        err.flush();
+                        return Optional.of(new DataInputStream(new ByteArrayInputStream(payload)).readInt());
+                    }
+                    default -> throw new IOException("Unknown frame " + type);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Lost connection to the daemon"), e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package ansrs.daemon;
+
+import ansrs.cli.SRSCommand;
+import ansrs.util.Log;
+import picocli.CommandLine;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+// keeps the repositories and sets of one SRSCommand open and runs forwarded commands against them
+// request:  UTF client working directory, int argc, argc UTF args
+// response: frames of byte type, int length, payload, ending with an EXIT frame whose payload is the exit code
+public class DaemonServer {
+
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 3;
+
+    private final SRSCommand root;
+    private final Path socketPath;
+    // commands share the repositories, the sets and System.out, so they run one at a time
+    private final ReentrantLock commandLock = new ReentrantLock();
+    private volatile ServerSocketChannel server;
+
+    public DaemonServer(SRSCommand root, Path socketPath) {
+        this.root = root;
+        this.socketPath = socketPath;
+    }
+
+    public static Path socketPath(Path srsDir) {
+        return srsDir.resolve("ansrs.sock");
+    }
+
+    // blocks until stopped, each connection is handled on its own virtual thread
+    public void serve() throws IOException {
+        if (Files.exists(socketPath)) {
+            if (DaemonClient.isRunning(socketPath)) throw new IllegalStateException(Log.errorMsg("Daemon already running on " + socketPath));
+            Files.delete(socketPath);
+        }
+        try (ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.bind(UnixDomainSocketAddress.of(socketPath));
+            server = channel;
+            Log.info("Daemon listening on " + socketPath);
+            while (true) {
+                SocketChannel client;
+                try {
+                    client = channel.accept();
+                } catch (ClosedChannelException e) {
+                    break;
+                }
+                Thread.ofVirtual().name("ansrs-command").start(() -> handle(client));
+            }
+        } finally {
+            Files.deleteIfExists(socketPath);
+        }
+        Log.info("Daemon stopped");
+    }
+
+    public void stop() {
+        ServerSocketChannel channel = server;
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(client)));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+            Path workingDirectory = Path.of(in.readUTF());
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) args[i] = in.readUTF();
+
+            PrintStream stdout = new PrintStream(new FrameOutputStream(out, STDOUT), true, StandardCharsets.UTF_8);
+            PrintStream stderr = new PrintStream(new FrameOutputStream(out, STDERR), true, StandardCharsets.UTF_8);
+            int exitCode = execute(workingDirectory, args, stdout, stderr);
+            stdout.flush();
+            stderr.flush();
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(4);
+                out.writeInt(exitCode);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // client went away mid command, nothing left to report to
+        }
+    }
+
+    private int execute(Path workingDirectory, String[] args, PrintStream stdout, PrintStream stderr) {
+        if (args.length > 0 && args[0].equals("daemon")) {
+            if (Arrays.asList(args).contains("--stop")) {
+                stdout.println(Log.infoMsg("Daemon stopping"));
+                stop();
+                return 0;
+            }
+            stderr.println(Log.errorMsg("Daemon already running"));
+            return 1;
+        }
+        commandLock.lock();
+        PrintStream systemOut = System.out;
+        PrintStream systemErr = System.err;
+        try {
+            System.setOut(stdout);
+            System.setErr(stderr);
+            root.setWorkingDirectory(workingDirectory);
+            root.workingSet.refresh();
+            root.completedSet.refresh();
+            CommandLine commandLine = new CommandLine(root);
+            commandLine.setOut(new PrintWriter(stdout, true));
+            commandLine.setErr(new PrintWriter(stderr, true));
+            return commandLine.execute(args);
+        } catch (RuntimeException e) {
+            stderr.println(e.getMessage());
+            return 1;
+        } finally {
+            System.setOut(systemOut);
+            System.setErr(systemErr);
+            commandLock.unlock();
+        }
+    }
+
+    // turns every write into a frame, so output reaches the client as the command produces it
+    private static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+}
@@ -3,19 +3,25 @@ package ansrs.db;
 import ansrs.data.Item;
 import ansrs.util.Log;
 
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class ArchiveRepository implements AutoCloseable{
     private final Connection connection;
+    private final StatementCache statements;
+    private int lookupChunkSize = ItemLookup.DEFAULT_CHUNK_SIZE;
 
     public ArchiveRepository(Connection connection){
         this.connection = connection;
+        this.statements = StatementCache.of(connection);
     }
 
     public boolean insertItem(Item item) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                     INSERT INTO archive
                     (id, name, link, pool, last_recall, total_recalls)
                     VALUES (?, ?, ?, ?, ?, ?)
@@ -24,7 +30,7 @@ public class ArchiveRepository implements AutoCloseable{
             ps.setString(2, item.getItemName());
             ps.setString(3, item.getItemLink());
             ps.setString(4, item.getItemPool().name());
-            ps.setString(5, item.getLastRecall().toString());
+            ps.setObject(5, item.getLastRecall());
             ps.setInt(6, item.getTotalRecalls());
             ps.executeUpdate();
             return true;
@@ -34,75 +40,63 @@ public class ArchiveRepository implements AutoCloseable{
     }
 
     public boolean insertItemsBatch(List<Item> items) {
-        try (PreparedStatement statement = connection.prepareStatement("""
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             TrigramTrigger.Suspension quiet = TrigramTrigger.suspend();
+             PreparedStatement statement = statements.prepare("""
                 INSERT INTO archive
                 (id, name, link, pool, last_recall, total_recalls)
                 VALUES (?, ?, ?, ?, ?, ?)
                 """)) {
-            connection.setAutoCommit(false);
             for (Item item : items) {
                 statement.setInt(1, item.getItemId());
                 statement.setString(2, item.getItemName());
                 statement.setString(3, item.getItemLink());
                 statement.setString(4, item.getItemPool().name());
-                statement.setString(5, item.getLastRecall().toString());
+                statement.setObject(5, item.getLastRecall());
                 statement.setInt(6, item.getTotalRecalls());
                 statement.addBatch();
             }
+            List<Item> renamed = TrigramIndex.renamed(connection, "archive", items);
             statement.executeBatch();
-            connection.commit();
+            TrigramIndex.reindex(connection, "archive", renamed);
+            tx.commit();
             return true;
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ignore) {
-            }
             if (Objects.equals(e.getSQLState(), "23505"))
                 throw new RuntimeException(Log.errorMsg("ERROR: Duplicate ITEM_ID found."));
             return false;
-        } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException ignore) {
-            }
         }
     }
 
     public boolean upsertItemsBatch(List<Item> items) {
-        try (PreparedStatement statement = connection.prepareStatement("""
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             TrigramTrigger.Suspension quiet = TrigramTrigger.suspend();
+             PreparedStatement statement = statements.prepare("""
                 MERGE INTO archive
                 (id, name, link, pool, last_recall, total_recalls)
                 VALUES (?, ?, ?, ?, ?, ?)
                 """)) {
-            connection.setAutoCommit(false);
             for (Item item : items) {
                 statement.setInt(1, item.getItemId());
                 statement.setString(2, item.getItemName());
                 statement.setString(3, item.getItemLink());
                 statement.setString(4, item.getItemPool().name());
-                statement.setString(5, item.getLastRecall().toString());
+                statement.setObject(5, item.getLastRecall());
                 statement.setInt(6, item.getTotalRecalls());
                 statement.addBatch();
             }
+            List<Item> renamed = TrigramIndex.renamed(connection, "archive", items);
             statement.executeBatch();
-            connection.commit();
+            TrigramIndex.reindex(connection, "archive", renamed);
+            tx.commit();
             return true;
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ignore) {
-            }
             return false;
-        } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException ignore) {
-            }
         }
     }
 
     public boolean updateItem(Item item) {
-        try (PreparedStatement ps = connection.prepareStatement(
+        try (PreparedStatement ps = statements.prepare(
                 """
                             MERGE INTO archive
                             (id, name, link, pool, last_recall, total_recalls)
@@ -113,7 +107,7 @@ public class ArchiveRepository implements AutoCloseable{
             ps.setString(2, item.getItemName());
             ps.setString(3, item.getItemLink());
             ps.setString(4, item.getItemPool().name());
-            ps.setString(5, item.getLastRecall().toString());
+            ps.setObject(5, item.getLastRecall());
             ps.setInt(6, item.getTotalRecalls());
             ps.executeUpdate();
             return true;
@@ -123,52 +117,43 @@ public class ArchiveRepository implements AutoCloseable{
     }
 
     public boolean updateItemsBatch(List<Item> items) {
-        try (PreparedStatement ps = connection.prepareStatement(
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             PreparedStatement ps = statements.prepare(
                 """
                         UPDATE archive
                         SET name=?, link=?, pool=?, last_recall=?, total_recalls=?
                         WHERE id=?
                         """)
         ) {
-            connection.setAutoCommit(false);
             for (Item item : items) {
                 ps.setString(1, item.getItemName());
                 ps.setString(2, item.getItemLink());
                 ps.setString(3, item.getItemPool().name());
-                ps.setString(4, item.getLastRecall().toString());
+                ps.setObject(4, item.getLastRecall());
                 ps.setInt(5, item.getTotalRecalls());
                 ps.setInt(6, item.getItemId());
                 ps.addBatch();
             }
             ps.executeBatch();
-            connection.commit();
+            tx.commit();
             return true;
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ignore) {
-            }
             return false;
-        } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException ignore) {
-            }
         }
     }
 
 
     public Optional<Item> getItemById(int itemId) {
-        try (
-                ResultSet rs = connection.createStatement().executeQuery("SELECT * FROM archive WHERE id=" + itemId);
-        ) {
+        try (PreparedStatement ps = statements.prepare("SELECT * FROM archive WHERE id=?")) {
+            ps.setInt(1, itemId);
+            ResultSet rs = ps.executeQuery();
             if (rs.next()) {
                 return Optional.of(new Item(
                         rs.getInt("id"),
                         rs.getString("name"),
                         rs.getString("link"),
                         Item.Pool.valueOf(rs.getString("pool")),
-                        rs.getDate("last_recall").toLocalDate(),
+                        rs.getObject("last_recall", LocalDate.class),
                         rs.getInt("total_recalls")
                 ));
             } else return Optional.empty();
@@ -179,7 +164,7 @@ public class ArchiveRepository implements AutoCloseable{
 
     public Optional<List<Item>> getAllItems() {
         List<Item> items = new ArrayList<>();
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM archive");
+        try (PreparedStatement stmt = statements.prepare("SELECT * FROM archive");
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 Item p = new Item(
@@ -187,7 +172,7 @@ public class ArchiveRepository implements AutoCloseable{
                         rs.getString("name"),
                         rs.getString("link"),
                         Item.Pool.valueOf(rs.getString("pool")),
-                        rs.getDate("last_recall").toLocalDate(),
+                        rs.getObject("last_recall", LocalDate.class),
                         rs.getInt("total_recalls")
                 );
                 items.add(p);
@@ -199,9 +184,39 @@ public class ArchiveRepository implements AutoCloseable{
         return Optional.of(items);
     }
 
+    // every row as a lazily read cursor, must be closed by the caller, preferably with try-with-resources
+    public Stream<Item> streamAllItems() {
+        try {
+            return ItemLookup.stream(statements, "archive");
+        } catch (SQLException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to fetch archived items from DB\n" + e.getMessage()));
+        }
+    }
+
+    // up to limit items with ids above afterId in id order, pass the last id seen to read the next page
+    public Optional<List<Item>> getItemsPage(int afterId, int limit) {
+        try {
+            return Optional.of(ItemLookup.page(statements, "archive", afterId, limit));
+        } catch (SQLException e) {
+            Log.error("Failed to fetch archived items from DB\n" + e);
+            return Optional.empty();
+        }
+    }
+
+    // visits every row without holding the table in memory, false if the rows could not be read
+    public boolean forEachItem(Consumer<Item> action) {
+        try (Stream<Item> items = ItemLookup.stream(statements, "archive")) {
+            items.forEach(action);
+            return true;
+        } catch (SQLException e) {
+            Log.error("Failed to fetch items from DB\n" + e);
+            return false;
+        }
+    }
+
     public Optional<HashSet<Integer>> getAllItemsIds() {
         HashSet<Integer> items = new HashSet<>();
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT id FROM archive");
+        try (PreparedStatement stmt = statements.prepare("SELECT id FROM archive");
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 items.add(rs.getInt(1));
@@ -213,32 +228,25 @@ public class ArchiveRepository implements AutoCloseable{
         return Optional.of(items);
     }
 
+    // items for the given ids in the order they were asked for, ids with no row are skipped
     public Optional<List<Item>> getItemsFromList(List<Integer> ids) {
         if (ids == null || ids.isEmpty()) return Optional.empty();
-        String inClause = ids.stream().map(k -> String.valueOf(k)).collect(Collectors.joining(",", "(", ")"));
-        List<Item> res = new ArrayList<>();
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM archive WHERE id IN " + inClause);
-             ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                Item p = new Item(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("link"),
-                        Item.Pool.valueOf(rs.getString("pool")),
-                        rs.getDate("last_recall").toLocalDate(),
-                        rs.getInt("total_recalls")
-                );
-                res.add(p);
-            }
-            return Optional.of(res);
+        try {
+            return Optional.of(ItemLookup.byIds(connection, statements, "archive", ids, lookupChunkSize));
         } catch (SQLException e) {
             Log.error("Failed to fetch items from Database\n" + e);
             return Optional.empty();
         }
     }
 
+    // ids bound per lookup query, larger lists are fetched over several round trips
+    public void setLookupChunkSize(int lookupChunkSize) {
+        if (lookupChunkSize <= 0) throw new RuntimeException(Log.errorMsg("Lookup chunk size must be positive"));
+        this.lookupChunkSize = lookupChunkSize;
+    }
+
     public boolean deleteItemsById(int itemId) {
-        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM archive WHERE id=?");) {
+        try (PreparedStatement statement = statements.prepare("DELETE FROM archive WHERE id=?");) {
             statement.setInt(1, itemId);
             int rows = statement.executeUpdate();
             return rows == 1;
@@ -248,7 +256,7 @@ public class ArchiveRepository implements AutoCloseable{
     }
 
     public boolean contains(int itemId) {
-        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) as count FROM archive WHERE id=?")) {
+        try (PreparedStatement statement = statements.prepare("SELECT COUNT(*) as count FROM archive WHERE id=?")) {
             statement.setInt(1, itemId);
             ResultSet rs = statement.executeQuery();
             rs.next();
@@ -258,23 +266,80 @@ public class ArchiveRepository implements AutoCloseable{
         }
     }
 
-    public Optional<List<Item>> searchItemsByName(String query) {
-        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM archive WHERE LOWER(name) LIKE LOWER(?)")) {
-            List<Item> items = new ArrayList<>();
-            statement.setString(1,"%"+query+"%");
-            ResultSet rs = statement.executeQuery();
-            while (rs.next()) {
-                Item item = new Item(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("link"),
-                        Item.Pool.valueOf(rs.getString("pool")),
-                        rs.getDate("last_recall").toLocalDate(),
-                        rs.getInt("total_recalls")
-                );
-                items.add(item);
+    // case-insensitive substring search over names, best matches first, served by the name trigram index
+    public Optional<List<Item>> searchItemsByName(String query, int limit) {
+        try {
+            return Optional.of(TrigramIndex.search(connection, statements, "archive", query, limit));
+        } catch (SQLException e) {
+            Log.error(e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // moves every item except the excluded ids from items into the archive, copy and delete share one
+    // transaction so either every row moves or none does, returns how many rows moved
+    public Optional<Integer> archiveAllItemsExcept(Collection<Integer> excludedIds) {
+        return move("items", "archive", """
+                INSERT INTO archive (id, name, link, pool, last_recall, total_recalls)
+                SELECT id, name, link, pool, last_recall, total_recalls FROM items
+                WHERE NOT (id = ANY(?))
+                """, """
+                DELETE FROM items WHERE NOT (id = ANY(?))
+                """, excludedIds);
+    }
+
+    // moves every archived item except the excluded ids back into items in one transaction,
+    // the move is abandoned if any of them already exists in items, returns how many rows moved
+    public Optional<Integer> restoreAllItemsExcept(Collection<Integer> excludedIds) {
+        return move("archive", "items", """
+                INSERT INTO items (id, name, link, pool, last_recall, total_recalls)
+                SELECT id, name, link, pool, last_recall, total_recalls FROM archive
+                WHERE NOT (id = ANY(?))
+                """, """
+                DELETE FROM archive WHERE NOT (id = ANY(?))
+                """, excludedIds);
+    }
+
+    // archived ids that are also present in items, these cannot be restored without overwriting
+    public Optional<List<Integer>> getIdsAlsoInItems() {
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement ps = statements.prepare("SELECT a.id FROM archive a JOIN items i ON i.id = a.id ORDER BY a.id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) ids.add(rs.getInt(1));
+            return Optional.of(ids);
+        } catch (SQLException e) {
+            Log.error(e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // the name trigger is suspended for the move, the moved rows are indexed under to in one pass and their index
+    // rows under from go with the same filter the rows themselves are deleted by
+    private Optional<Integer> move(String from, String to, String copySql, String deleteSql, Collection<Integer> excludedIds) {
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             TrigramTrigger.Suspension quiet = TrigramTrigger.suspend();
+             PreparedStatement copy = statements.prepare(copySql);
+             PreparedStatement delete = statements.prepare(deleteSql);
+             PreparedStatement unindex = statements.prepare("DELETE FROM " + TrigramIndex.indexTable(from) + " WHERE NOT (id = ANY(?))")) {
+            Array excluded = connection.createArrayOf("INTEGER", excludedIds.toArray());
+            int copied, deleted;
+            try {
+                copy.setArray(1, excluded);
+                delete.setArray(1, excluded);
+                unindex.setArray(1, excluded);
+                copied = copy.executeUpdate();
+                TrigramIndex.reindex(connection, to, "SELECT id FROM " + from + " WHERE NOT (id = ANY(?))", excluded);
+                deleted = delete.executeUpdate();
+                unindex.executeUpdate();
+            } finally {
+                excluded.free();
+            }
+            if (copied != deleted) {
+                Log.error("Moved " + copied + " rows but removed " + deleted + ", aborted");
+                return Optional.empty();
             }
-            return Optional.of(items);
+            tx.commit();
+            return Optional.of(copied);
         } catch (SQLException e) {
             Log.error(e.getMessage());
             return Optional.empty();
@@ -282,8 +347,11 @@ public class ArchiveRepository implements AutoCloseable{
     }
 
     public boolean clearDatabase() {
-        try (PreparedStatement statement = connection.prepareStatement("TRUNCATE TABLE archive")) {
+        // TRUNCATE skips row triggers, so the name index is emptied alongside
+        try (PreparedStatement statement = statements.prepare("TRUNCATE TABLE archive");
+             PreparedStatement index = statements.prepare("TRUNCATE TABLE archive_name_trigrams")) {
             statement.execute();
+            index.execute();
             return true;
         } catch (SQLException e) {
             return false;
@@ -292,8 +360,34 @@ public class ArchiveRepository implements AutoCloseable{
 
 
 
+    // groups the calls that follow, on any repository sharing this connection, into one transaction
+    public UnitOfWork beginUnitOfWork() {
+        return UnitOfWork.begin(connection);
+    }
+
+    // runs the calls that follow, on any repository sharing this connection, under another storage profile
+    // until the returned scope is closed
+    public StorageProfile.Scope useStorageProfile(StorageProfile profile) {
+        try {
+            return profile.apply(connection, statements);
+        } catch (SQLException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to switch to storage profile " + profile.displayName() + "\n" + e.getMessage()));
+        }
+    }
+
+    // writes every archived item to file with H2's CSVWRITE, in the import format
+    public Optional<Long> bulkExport(Path file) {
+        try {
+            return Optional.of(CsvBulk.exportCsv(statements, "archive", file));
+        } catch (SQLException e) {
+            Log.error("Failed to bulk export archive\n" + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
     @Override
     public void close() throws Exception {
+        statements.close();
         if (connection != null && !connection.isClosed()) connection.close();
     }
 }
@@ -0,0 +1,161 @@
+package ansrs.db;
+
+import ansrs.service.RecordValidator.Outcome;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.Consumer;
+
+// csv import and export run by H2 itself, for trusted files too large for the row by row path
+// CSVREAD stages the whole file in a session temporary table, every rule of RecordValidator is applied to it
+// as one UPDATE that writes a reject reason per row, and the good rows move over with a single MERGE or INSERT
+// CSVWRITE streams a query straight to a file without the rows passing through Java
+public final class CsvBulk {
+
+    // result of a bulk import, rows counts every csv line read, the header included
+    public record Result(long rows, long written, long duplicates, long rejected) {}
+
+    private static final String STAGE = "import_stage";
+    // reasons of rows that are skipped without being rejected
+    private static final String HEADER = "header";
+    private static final String DUPLICATE = "duplicate";
+
+    private CsvBulk() {
+    }
+
+    // the field as RecordValidator sanitizes it, quotes dropped and every char up to a space trimmed as String.trim
+    // does, empty for a missing field
+    private static String clean(String column) {
+        return "REGEXP_REPLACE(REPLACE(REPLACE(COALESCE(" + column + ", ''), '\"', ''), '''', ''), '^[\\x00-\\x20]+|[\\x00-\\x20]+$', '')";
+    }
+
+    private static String literal(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+    private static String reason(Outcome outcome) {
+        return literal(outcome.reason());
+    }
+
+    // the rules RecordValidator applies, the first one a row breaks is its reason, a row that breaks none stays null
+    // a date is checked by rebuilding it from its first of the month, a day past the month's end rolls into the next
+    private static final String INT = "'^[+-]?0*[0-9]{1,10}$'";
+    private static final String DATE_SQL = "DATEADD(DAY, CAST(SUBSTRING(recall_text, 9, 2) AS INT) - 1, CAST(SUBSTRING(recall_text, 1, 8) || '01' AS DATE))";
+    private static final String VALIDATE_SQL = "UPDATE " + STAGE + " SET reason = CASE"
+            + " WHEN NOT REGEXP_LIKE(id_text, " + INT + ") THEN " + reason(Outcome.BAD_ID)
+            + " WHEN CAST(id_text AS BIGINT) NOT BETWEEN 1 AND 2147483647 THEN " + reason(Outcome.BAD_ID)
+            + " WHEN UPPER(pool_text) NOT IN ('H', 'M', 'L') THEN " + reason(Outcome.BAD_POOL)
+            + " WHEN recall_text <> '' AND NOT REGEXP_LIKE(recall_text, '^[0-9]{4}-(0[1-9]|1[0-2])-[0-9]{2}$') THEN " + reason(Outcome.BAD_DATE)
+            + " WHEN recall_text <> '' AND EXTRACT(MONTH FROM " + DATE_SQL + ") <> CAST(SUBSTRING(recall_text, 6, 2) AS INT) THEN " + reason(Outcome.BAD_DATE)
+            + " WHEN recall_text <> '' AND " + DATE_SQL + " > CURRENT_DATE THEN " + reason(Outcome.FUTURE_DATE)
+            + " WHEN total_text <> '' AND NOT REGEXP_LIKE(total_text, " + INT + ") THEN " + reason(Outcome.BAD_RECALLS)
+            + " WHEN total_text <> '' AND CAST(total_text AS BIGINT) NOT BETWEEN 0 AND 2147483647 THEN " + reason(Outcome.BAD_RECALLS)
+            + " WHEN name_text = '' THEN " + reason(Outcome.BAD_NAME)
+            + " WHEN link_text NOT LIKE 'https://%' THEN " + reason(Outcome.BAD_LINK)
+            + " END";
+
+    private static final String GOOD_ROWS = """
+            SELECT item_id, name_text, link_text, UPPER(pool_text),
+                CASE WHEN recall_text = '' THEN CURRENT_DATE ELSE CAST(recall_text AS DATE) END,
+                CASE WHEN total_text = '' THEN 0 ELSE CAST(total_text AS INT) END
+            FROM import_stage s WHERE reason IS NULL
+            """;
+
+    // header skips the first line, as CSVImporter decided it, rejected rows go to rejects in file order, as the
+    // line number, its fields and the rule it broke
+    static Result importCsv(Connection connection, Path csv, boolean header, boolean preserveDb, String recallScoreSql,
+                            Consumer<String> rejects) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + STAGE);
+            st.execute("CREATE LOCAL TEMPORARY TABLE " + STAGE + " AS SELECT ROWNUM() AS line, "
+                    + clean("C1") + " AS id_text, " + clean("C2") + " AS name_text, " + clean("C3") + " AS link_text, "
+                    + clean("C4") + " AS pool_text, " + clean("C5") + " AS recall_text, " + clean("C6") + " AS total_text, "
+                    + "CAST(NULL AS VARCHAR(64)) AS reason, CAST(NULL AS INTEGER) AS item_id, FALSE AS renamed "
+                    + "FROM CSVREAD(" + literal(csv.toString()) + ", 'C1,C2,C3,C4,C5,C6', 'charset=UTF-8')");
+            try {
+                st.executeUpdate(VALIDATE_SQL);
+                if (header) st.executeUpdate("UPDATE " + STAGE + " SET reason = " + literal(HEADER) + " WHERE line = 1");
+                st.executeUpdate("UPDATE " + STAGE + " SET item_id = CAST(id_text AS INT) WHERE reason IS NULL");
+                st.execute("CREATE INDEX " + STAGE + "_item_id ON " + STAGE + "(item_id)");
+                // statements on the stage are not cached, the table is dropped at the end of every import
+                // the first row of an id wins when the database is preserved, later ones count as duplicates of it
+                // as they would of the row it inserted
+                if (preserveDb) st.executeUpdate("UPDATE " + STAGE + " s SET reason = " + literal(DUPLICATE) + " "
+                        + "WHERE reason IS NULL AND EXISTS (SELECT 1 FROM " + STAGE + " t WHERE t.item_id = s.item_id AND t.reason IS NULL AND t.line < s.line)");
+
+                long rows = count(st, "SELECT COUNT(*) FROM " + STAGE);
+                long duplicates = preserveDb
+                        ? count(st, "SELECT COUNT(*) FROM " + STAGE + " s WHERE reason = " + literal(DUPLICATE)
+                                + " OR reason IS NULL AND EXISTS (SELECT 1 FROM items i WHERE i.id = s.item_id)")
+                        : 0;
+                long rejected = 0;
+                try (ResultSet rs = st.executeQuery("SELECT line, id_text, name_text, link_text, pool_text, recall_text, total_text, reason FROM "
+                        + STAGE + " WHERE reason IS NOT NULL AND reason NOT IN (" + literal(HEADER) + ", " + literal(DUPLICATE) + ") ORDER BY line")) {
+                    while (rs.next()) {
+                        rejected++;
+                        rejects.accept("line " + rs.getLong(1) + " [" + rs.getString(2) + ", " + rs.getString(3) + ", " + rs.getString(4) + ", "
+                                + rs.getString(5) + ", " + rs.getString(6) + ", " + rs.getString(7) + "], " + rs.getString(8));
+                    }
+                }
+
+                // the name trigger is suspended for the move, ids the file gives a new name, or adds, are marked first
+                // and indexed afterwards in one pass, unchanged names keep their index rows as the trigger would leave them
+                st.executeUpdate("UPDATE " + STAGE + " s SET renamed = TRUE WHERE reason IS NULL "
+                        + "AND NOT EXISTS (SELECT 1 FROM items i WHERE i.id = s.item_id AND i.name = s.name_text)");
+
+                long written;
+                try (LocalTransaction tx = LocalTransaction.begin(connection);
+                     TrigramTrigger.Suspension quiet = TrigramTrigger.suspend();
+                     PreparedStatement move = connection.prepareStatement(preserveDb
+                             ? "INSERT INTO items (id, name, link, pool, last_recall, total_recalls) " + GOOD_ROWS
+                               + " AND NOT EXISTS (SELECT 1 FROM items i WHERE i.id = s.item_id)"
+                             : "MERGE INTO items (id, name, link, pool, last_recall, total_recalls) KEY(id) " + GOOD_ROWS + " ORDER BY line");
+                     PreparedStatement scores = connection.prepareStatement("UPDATE items SET recall_score = " + recallScoreSql
+                             + " WHERE id IN (SELECT item_id FROM " + STAGE + " WHERE reason IS NULL)")) {
+                    written = move.executeUpdate();
+                    TrigramIndex.reindex(connection, "items", "SELECT DISTINCT item_id FROM " + STAGE + " WHERE renamed", null);
+                    scores.executeUpdate();
+                    tx.commit();
+                }
+                return new Result(rows, written, duplicates, rejected);
+            } finally {
+                st.execute("DROP TABLE IF EXISTS " + STAGE);
+            }
+        }
+    }
+
+    private static long count(Statement st, String sql) throws SQLException {
+        try (ResultSet rs = st.executeQuery(sql)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    // the columns of a table as the export writes them, item tables in the import's format
+    static String exportQuery(String table) {
+        return switch (table) {
+            case "items", "archive" -> "SELECT id AS ITEM_ID, name AS ITEM_NAME, link AS ITEM_LINK, pool AS ITEM_POOL, "
+                    + "last_recall AS ITEM_LAST_RECALL, total_recalls AS \"totalRecalls\" FROM " + table + " ORDER BY id";
+            case "groups" -> "SELECT id AS GROUP_ID, name AS GROUP_NAME, link AS GROUP_LINK, created_at AS CREATED_AT, "
+                    + "updated_at AS UPDATED_AT FROM groups ORDER BY id";
+            case "group_items" -> "SELECT group_id AS GROUP_ID, item_id AS ITEM_ID FROM group_items ORDER BY group_id, item_id";
+            default -> throw new IllegalArgumentException(table);
+        };
+    }
+
+    // writes the table to file with CSVWRITE and returns the rows written
+    static long exportCsv(StatementCache statements, String table, Path file) throws SQLException {
+        try (PreparedStatement ps = statements.prepare("CALL CSVWRITE(?, ?, 'charset=UTF-8 lineSeparator=' || CHAR(10))")) {
+            ps.setString(1, file.toString());
+            ps.setString(2, exportQuery(table));
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ansrs.db;
+
+import ansrs.util.Log;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// a lazily read query as a stream, only the current row is held in memory however large the result
+// the result set is closed once the rows run out or the stream is closed, whichever comes first
+final class Cursor {
+
+    // rows pulled per round trip
+    static final int FETCH_SIZE = 256;
+
+    @FunctionalInterface
+    interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    private Cursor() {
+    }
+
+    // what names the rows in the error raised when reading one fails
+    static <T> Stream<T> open(StatementCache statements, String sql, String what, RowMapper<T> mapper) throws SQLException {
+        PreparedStatement ps = statements.prepare(sql);
+        ResultSet rs;
+        try {
+            ps.setFetchSize(FETCH_SIZE);
+            rs = lazily(statements, ps);
+        } catch (SQLException e) {
+            ps.close();
+            throw e;
+        }
+        Runnable close = () -> {
+            try {
+                rs.close();
+                ps.close();
+            } catch (SQLException ignore) {
+            }
+        };
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (rs.isClosed() || !rs.next()) {
+                        close.run();
+                        return false;
+                    }
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    close.run();
+                    throw new RuntimeException(Log.errorMsg("Failed to read " + what + " rows\n" + e.getMessage()));
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(close);
+    }
+
+    // H2 materialises whole results unless lazy execution is on for the session, so it is switched on
+    // just for this query, the flag is read when the query starts and the cursor stays lazy afterwards
+    private static ResultSet lazily(StatementCache statements, PreparedStatement ps) throws SQLException {
+        try (PreparedStatement on = statements.prepare("SET LAZY_QUERY_EXECUTION TRUE")) {
+            on.execute();
+        }
+        try {
+            return ps.executeQuery();
+        } finally {
+            try (PreparedStatement off = statements.prepare("SET LAZY_QUERY_EXECUTION FALSE")) {
+                off.execute();
+            }
+        }
+    }
+}
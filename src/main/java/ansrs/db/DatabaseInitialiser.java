@@ -1,7 +1,8 @@
 package ansrs.db;
 
 import ansrs.util.Log;
-import org.flywaydb.core.Flyway;
+import ansrs.util.StartupTimer;
+import org.h2.api.ErrorCode;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -9,19 +10,28 @@ import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 
 public class DatabaseInitialiser {
 
+    // how long to wait for another ansrs process to release the database before giving up
+    public static final long OPEN_TIMEOUT_MILLIS = 10_000;
+    private static final long MAX_BACKOFF_MILLIS = 100;
+
     public static Connection initEmbeddedDb(Path dbPath){
+        return initEmbeddedDb(dbPath, StorageProfile.BALANCED);
+    }
+
+    public static Connection initEmbeddedDb(Path dbPath, StorageProfile profile){
         try {
             if (!Files.exists(dbPath.getParent())) {
                 Files.createDirectories(dbPath.getParent());
             }
-            String url = "jdbc:h2:file:" + dbPath.toAbsolutePath() + ";MODE=PostgreSQL";
-            Connection connection = DriverManager.getConnection(url, "sa", "");
-            runMigrations(url);
+            // FS locks through the OS like the set locks do, so a crashed process never leaves a stale lock
+            // behind and a waiting process gets in as soon as the holder exits, without the watchdog's delay
+            String url = "jdbc:h2:file:" + dbPath.toAbsolutePath() + ";MODE=PostgreSQL;FILE_LOCK=FS" + profile.urlOptions();
+            Connection connection = connectWhenFree(url);
+            StartupTimer.mark("database open");
+            runMigrations(url, connection);
             return connection;
         } catch (SQLException e) {
             throw new RuntimeException(Log.errorMsg("Failed to connect to database"), e);
@@ -30,20 +40,47 @@ public class DatabaseInitialiser {
         }
     }
 
+    // an embedded database is held by one process at a time, so wait a bounded time for the current holder
+    private static Connection connectWhenFree(String url) throws SQLException {
+        long deadline = System.currentTimeMillis() + OPEN_TIMEOUT_MILLIS;
+        long backoff = 5;
+        while (true) {
+            try {
+                return DriverManager.getConnection(url, "sa", "");
+            } catch (SQLException e) {
+                if (e.getErrorCode() != ErrorCode.DATABASE_ALREADY_OPEN_1) throw e;
+                if (System.currentTimeMillis() >= deadline)
+                    throw new RuntimeException(Log.errorMsg("Timed out after " + OPEN_TIMEOUT_MILLIS + "ms waiting for the database, another ansrs process is using it"), e);
+            }
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(Log.errorMsg("Interrupted waiting for the database"), e);
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+
     public static Connection initInMemoryDb(String name){
         try {
             String url = "jdbc:h2:mem:" + name + ";MODE=PostgreSQL";
             Connection connection = DriverManager.getConnection(url, "sa", "");
-            runMigrations(url);
+            runMigrations(url, connection);
             return connection;
         } catch (SQLException e) {
             throw new RuntimeException(Log.errorMsg("Failed to connect to database"), e);
         }
     }
 
-    private static void runMigrations(String url){
-        Logger.getLogger("org.flywaydb").setLevel(Level.SEVERE);
-        Flyway flyway = Flyway.configure().dataSource(url, "sa", "").load();
-        flyway.migrate();
+    // Flyway only runs when the bundled scripts differ from the ones the database was last migrated with
+    private static void runMigrations(String url, Connection connection) throws SQLException {
+        String fingerprint = SchemaFingerprint.compute();
+        boolean current = SchemaFingerprint.stored(connection).filter(fingerprint::equals).isPresent();
+        StartupTimer.mark("schema check");
+        if (current) return;
+        FlywayMigrator.migrate(url);
+        SchemaFingerprint.store(connection, fingerprint);
+        StartupTimer.mark("flyway migrate");
     }
 }
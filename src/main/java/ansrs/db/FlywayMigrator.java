@@ -0,0 +1,16 @@
+package ansrs.db;
+
+import org.flywaydb.core.Flyway;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// the only class referencing Flyway, kept apart so a warm start never loads or initialises it
+class FlywayMigrator {
+
+    static void migrate(String url) {
+        Logger.getLogger("org.flywaydb").setLevel(Level.SEVERE);
+        Flyway flyway = Flyway.configure().dataSource(url, "sa", "").load();
+        flyway.migrate();
+    }
+}
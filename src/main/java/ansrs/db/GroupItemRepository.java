@@ -3,20 +3,24 @@ package ansrs.db;
 import ansrs.util.Log;
 
 import java.sql.*;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.stream.Stream;
 
 public class GroupItemRepository implements AutoCloseable {
 
     private final Connection connection;
+    private final StatementCache statements;
+
+    // one row of the join table
+    public record Membership(int groupId, int itemId) {}
 
     public GroupItemRepository(Connection connection) {
         this.connection = connection;
+        this.statements = StatementCache.of(connection);
     }
 
     public boolean addItemToGroup(int groupId, int itemId) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 INSERT INTO group_items (group_id, item_id)
                 VALUES (?, ?)
         """)) {
@@ -35,11 +39,11 @@ public class GroupItemRepository implements AutoCloseable {
     public boolean addItemsToGroupBatch(int listId, List<Integer> itemIds) {
         if (itemIds == null || itemIds.isEmpty()) return true;
 
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             PreparedStatement ps = statements.prepare("""
                 INSERT INTO group_items (group_id, item_id)
                 VALUES (?, ?)
         """)) {
-            connection.setAutoCommit(false);
 
             for (Integer itemId : itemIds) {
                 ps.setInt(1, listId);
@@ -48,25 +52,16 @@ public class GroupItemRepository implements AutoCloseable {
             }
 
             ps.executeBatch();
-            connection.commit();
+            tx.commit();
             return true;
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ignore) {
-            }
             Log.error(e.getMessage());
             return false;
-        } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException ignore) {
-            }
         }
     }
 
     public boolean removeItemFromGroup(int listId, int itemId) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 DELETE FROM group_items
                 WHERE group_id=? AND item_id=?
         """)) {
@@ -80,7 +75,7 @@ public class GroupItemRepository implements AutoCloseable {
     }
 
     public boolean removeAllItemsFromGroup(int listId) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 DELETE FROM group_items WHERE group_id=?
         """)) {
             ps.setInt(1, listId);
@@ -93,7 +88,7 @@ public class GroupItemRepository implements AutoCloseable {
     }
 
     public boolean exists(int listId, int itemId) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 SELECT EXISTS (
                     SELECT 1 FROM group_items
                     WHERE group_id=? AND item_id=?
@@ -109,10 +104,41 @@ public class GroupItemRepository implements AutoCloseable {
         }
     }
 
+    // the given item ids already in the group, checked in one query however many are asked about
+    public Set<Integer> existingMembers(int listId, Collection<Integer> itemIds) {
+        Set<Integer> found = new HashSet<>();
+        if (itemIds == null || itemIds.isEmpty()) return found;
+        try (PreparedStatement ps = statements.prepare("""
+                SELECT item_id FROM group_items WHERE group_id=? AND item_id = ANY(?)
+        """)) {
+            Array array = connection.createArrayOf("INTEGER", itemIds.stream().filter(Objects::nonNull).distinct().toArray());
+            ps.setInt(1, listId);
+            ps.setArray(2, array);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) found.add(rs.getInt(1));
+            } finally {
+                array.free();
+            }
+        } catch (SQLException e) {
+            Log.error(e.getMessage());
+        }
+        return found;
+    }
+
+    // every membership as a lazily read cursor in group then item order, must be closed by the caller
+    public Stream<Membership> streamAll() {
+        try {
+            return Cursor.open(statements, "SELECT group_id, item_id FROM group_items ORDER BY group_id, item_id", "group_items",
+                    rs -> new Membership(rs.getInt(1), rs.getInt(2)));
+        } catch (SQLException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to fetch group items from DB\n" + e.getMessage()));
+        }
+    }
+
     public List<Integer> getItemIdsForGroup(int listId) {
         List<Integer> itemIds = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 SELECT item_id FROM group_items WHERE group_id=?
         """)) {
             ps.setInt(1, listId);
@@ -131,7 +157,7 @@ public class GroupItemRepository implements AutoCloseable {
     public List<Integer> getGroupIdsForItem(int itemId) {
         List<Integer> listIds = new ArrayList<>();
 
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 SELECT group_id FROM group_items WHERE item_id=?
         """)) {
             ps.setInt(1, itemId);
@@ -149,6 +175,7 @@ public class GroupItemRepository implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
+        statements.close();
         if (connection != null && !connection.isClosed()) connection.close();
     }
 }
@@ -3,25 +3,26 @@ package ansrs.db;
 import ansrs.data.Group;
 import ansrs.util.Log;
 
+import java.nio.file.Path;
 import java.sql.*;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Stream;
 
 public class GroupRepository implements AutoCloseable {
 
     private final Connection connection;
+    private final StatementCache statements;
     private final GroupItemRepository groupItemRepository;
 
     public GroupRepository(Connection connection) {
         this.connection = connection;
+        this.statements = StatementCache.of(connection);
         this.groupItemRepository = new GroupItemRepository(connection);
     }
 
     public boolean createGroup(int id, String name, String link) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 INSERT INTO groups (id, name, link, created_at, updated_at)
                 VALUES (?, ?, ?, ?, ?)
         """)) {
@@ -42,7 +43,7 @@ public class GroupRepository implements AutoCloseable {
     }
 
     public boolean updateGroup(int id, String name, String link) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 UPDATE groups
                 SET name=?, link=?, updated_at=?
                 WHERE id=?
@@ -59,7 +60,7 @@ public class GroupRepository implements AutoCloseable {
     }
 
     public boolean deleteGroupById(int id) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 DELETE FROM groups WHERE id=?
         """)) {
             ps.setInt(1, id);
@@ -71,7 +72,7 @@ public class GroupRepository implements AutoCloseable {
     }
 
     public boolean exists(int id) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 SELECT EXISTS(SELECT 1 FROM groups WHERE id=?)
         """)) {
             ps.setInt(1, id);
@@ -86,7 +87,7 @@ public class GroupRepository implements AutoCloseable {
 
 
     public Optional<Group> findById(int id) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 SELECT * FROM groups WHERE id=?
         """)) {
             ps.setInt(1, id);
@@ -102,7 +103,7 @@ public class GroupRepository implements AutoCloseable {
 
     public Optional<List<Group>> findAll() {
         List<Group> groups = new ArrayList<>();
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 SELECT * FROM groups
         """)) {
             ResultSet rs = ps.executeQuery();
@@ -116,6 +117,46 @@ public class GroupRepository implements AutoCloseable {
         }
     }
 
+    // every group as a lazily read cursor in id order, must be closed by the caller, preferably with try-with-resources
+    public Stream<Group> streamAll() {
+        try {
+            return Cursor.open(statements, "SELECT * FROM groups ORDER BY id", "groups", this::mapRow);
+        } catch (SQLException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to fetch groups from DB\n" + e.getMessage()));
+        }
+    }
+
+    // writes every group, or with memberships every row of group_items, to file with H2's CSVWRITE
+    public Optional<Long> bulkExport(Path file, boolean memberships) {
+        String table = memberships ? "group_items" : "groups";
+        try {
+            return Optional.of(CsvBulk.exportCsv(statements, table, file));
+        } catch (SQLException e) {
+            Log.error("Failed to bulk export " + table + "\n" + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // up to limit groups with ids above afterId in id order, pass the last id seen to read the next page
+    public Optional<List<Group>> findPage(int afterId, int limit) {
+        List<Group> groups = new ArrayList<>();
+        try (PreparedStatement ps = statements.prepare("""
+                SELECT * FROM groups WHERE id > ? ORDER BY id LIMIT ?
+        """)) {
+            ps.setInt(1, afterId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    groups.add(mapRow(rs));
+                }
+            }
+            return Optional.of(groups);
+        } catch (SQLException e) {
+            Log.error(e.getMessage());
+            return Optional.empty();
+        }
+    }
+
     // ================= JOIN TABLE PROXIES =================
 
     public boolean addItemToGroup(int groupId, int itemId) {
@@ -138,6 +179,14 @@ public class GroupRepository implements AutoCloseable {
         return groupItemRepository.exists(groupId, itemId);
     }
 
+    public Set<Integer> existingMembers(int groupId, Collection<Integer> itemIds) {
+        return groupItemRepository.existingMembers(groupId, itemIds);
+    }
+
+    public Stream<GroupItemRepository.Membership> streamMemberships() {
+        return groupItemRepository.streamAll();
+    }
+
     public List<Integer> getItemIdsForGroup(int groupId) {
         return groupItemRepository.getItemIdsForGroup(groupId);
     }
@@ -156,8 +205,14 @@ public class GroupRepository implements AutoCloseable {
         );
     }
 
+    // groups the calls that follow, on any repository sharing this connection, into one transaction
+    public UnitOfWork beginUnitOfWork() {
+        return UnitOfWork.begin(connection);
+    }
+
     @Override
     public void close() throws Exception {
+        statements.close();
         if (connection != null && !connection.isClosed()) connection.close();
     }
 
@@ -0,0 +1,80 @@
+package ansrs.db;
+
+import ansrs.data.Item;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+// id list lookups and full table cursors shared by the items and archive tables
+// ids are bound as one array parameter per chunk, so every call reuses the same SQL text and cached plan
+// no matter how many ids it carries, and rows come back in the order the caller asked for them
+final class ItemLookup {
+
+    static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private ItemLookup() {
+    }
+
+    static List<Item> byIds(Connection connection, StatementCache statements, String table, List<Integer> ids, int chunkSize) throws SQLException {
+        List<Integer> unique = new ArrayList<>(new LinkedHashSet<>(ids));
+        Map<Integer, Item> found = new HashMap<>(unique.size() * 2);
+        try (PreparedStatement ps = statements.prepare("SELECT * FROM " + table + " WHERE id = ANY(?)")) {
+            for (int from = 0; from < unique.size(); from += chunkSize) {
+                List<Integer> chunk = unique.subList(from, Math.min(unique.size(), from + chunkSize));
+                Array array = connection.createArrayOf("INTEGER", chunk.toArray());
+                ps.setArray(1, array);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        Item item = map(rs);
+                        found.put(item.getItemId(), item);
+                    }
+                } finally {
+                    array.free();
+                }
+            }
+        }
+        List<Item> res = new ArrayList<>(found.size());
+        for (int id : unique) {
+            Item item = found.get(id);
+            if (item != null) res.add(item);
+        }
+        return res;
+    }
+
+    // one keyset page, the rows after afterId in id order, walked from the primary key so the cost of
+    // a page depends on its size and not on how far into the table it starts
+    static List<Item> page(StatementCache statements, String table, int afterId, int limit) throws SQLException {
+        List<Item> res = new ArrayList<>(Math.min(limit, 1024));
+        try (PreparedStatement ps = statements.prepare("SELECT * FROM " + table + " WHERE id > ? ORDER BY id LIMIT ?")) {
+            ps.setInt(1, afterId);
+            ps.setInt(2, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) res.add(map(rs));
+            }
+        }
+        return res;
+    }
+
+    // a cursor over every row of the table in id order, rows are read lazily so only the current one is held in memory
+    // the order walks the primary key, so it costs no sort and in memory recall ties resolve as the database's do
+    static Stream<Item> stream(StatementCache statements, String table) throws SQLException {
+        return Cursor.open(statements, "SELECT * FROM " + table + " ORDER BY id", table, ItemLookup::map);
+    }
+
+    static Item map(ResultSet rs) throws SQLException {
+        return new Item(
+                rs.getInt("id"),
+                rs.getString("name"),
+                rs.getString("link"),
+                Item.Pool.valueOf(rs.getString("pool")),
+                rs.getObject("last_recall", LocalDate.class),
+                rs.getInt("total_recalls")
+        );
+    }
+}
@@ -3,19 +3,26 @@ package ansrs.db;
 import ansrs.data.Item;
 import ansrs.util.Log;
 
+import java.nio.file.Path;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 public class ItemRepository implements AutoCloseable {
     private final Connection connection;
+    private final StatementCache statements;
+    private int lookupChunkSize = ItemLookup.DEFAULT_CHUNK_SIZE;
 
     public ItemRepository(Connection connection) {
         this.connection=connection;
+        this.statements = StatementCache.of(connection);
     }
 
     public boolean insertItem(Item item) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             PreparedStatement ps = statements.prepare("""
                     INSERT INTO items
                     (id, name, link, pool, last_recall, total_recalls)
                     VALUES (?, ?, ?, ?, ?, ?)
@@ -24,9 +31,11 @@ public class ItemRepository implements AutoCloseable {
             ps.setString(2, item.getItemName());
             ps.setString(3, item.getItemLink());
             ps.setString(4, item.getItemPool().name());
-            ps.setString(5, item.getLastRecall().toString());
+            ps.setObject(5, item.getLastRecall());
             ps.setInt(6, item.getTotalRecalls());
             ps.executeUpdate();
+            refreshRecallScores(List.of(item));
+            tx.commit();
             return true;
         } catch (SQLException e) {
             return false;
@@ -34,75 +43,66 @@ public class ItemRepository implements AutoCloseable {
     }
 
     public boolean insertItemsBatch(List<Item> items) {
-        try (PreparedStatement statement = connection.prepareStatement("""
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             TrigramTrigger.Suspension quiet = TrigramTrigger.suspend();
+             PreparedStatement statement = statements.prepare("""
                 INSERT INTO items
                 (id, name, link, pool, last_recall, total_recalls)
                 VALUES (?, ?, ?, ?, ?, ?)
                 """)) {
-            connection.setAutoCommit(false);
             for (Item item : items) {
                 statement.setInt(1, item.getItemId());
                 statement.setString(2, item.getItemName());
                 statement.setString(3, item.getItemLink());
                 statement.setString(4, item.getItemPool().name());
-                statement.setString(5, item.getLastRecall().toString());
+                statement.setObject(5, item.getLastRecall());
                 statement.setInt(6, item.getTotalRecalls());
                 statement.addBatch();
             }
+            List<Item> renamed = TrigramIndex.renamed(connection, "items", items);
             statement.executeBatch();
-            connection.commit();
+            TrigramIndex.reindex(connection, "items", renamed);
+            refreshRecallScores(items);
+            tx.commit();
             return true;
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ignore) {
-            }
             if (Objects.equals(e.getSQLState(), "23505"))
                 throw new RuntimeException(Log.errorMsg("Duplicate ITEM_ID found."));
             return false;
-        } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException ignore) {
-            }
         }
     }
 
     public boolean upsertItemsBatch(List<Item> items) {
-        try (PreparedStatement statement = connection.prepareStatement("""
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             TrigramTrigger.Suspension quiet = TrigramTrigger.suspend();
+             PreparedStatement statement = statements.prepare("""
                 MERGE INTO items
                 (id, name, link, pool, last_recall, total_recalls)
                 VALUES (?, ?, ?, ?, ?, ?)
                 """)) {
-            connection.setAutoCommit(false);
             for (Item item : items) {
                 statement.setInt(1, item.getItemId());
                 statement.setString(2, item.getItemName());
                 statement.setString(3, item.getItemLink());
                 statement.setString(4, item.getItemPool().name());
-                statement.setString(5, item.getLastRecall().toString());
+                statement.setObject(5, item.getLastRecall());
                 statement.setInt(6, item.getTotalRecalls());
                 statement.addBatch();
             }
+            List<Item> renamed = TrigramIndex.renamed(connection, "items", items);
             statement.executeBatch();
-            connection.commit();
+            TrigramIndex.reindex(connection, "items", renamed);
+            refreshRecallScores(items);
+            tx.commit();
             return true;
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ignore) {
-            }
             return false;
-        } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException ignore) {
-            }
         }
     }
 
     public boolean updateItem(Item item) {
-        try (PreparedStatement ps = connection.prepareStatement(
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             PreparedStatement ps = statements.prepare(
                 """
                             MERGE INTO items
                             (id, name, link, pool, last_recall, total_recalls)
@@ -113,9 +113,11 @@ public class ItemRepository implements AutoCloseable {
             ps.setString(2, item.getItemName());
             ps.setString(3, item.getItemLink());
             ps.setString(4, item.getItemPool().name());
-            ps.setString(5, item.getLastRecall().toString());
+            ps.setObject(5, item.getLastRecall());
             ps.setInt(6, item.getTotalRecalls());
             ps.executeUpdate();
+            refreshRecallScores(List.of(item));
+            tx.commit();
             return true;
         } catch (SQLException e) {
             return false;
@@ -123,52 +125,44 @@ public class ItemRepository implements AutoCloseable {
     }
 
     public boolean updateItemsBatch(List<Item> items) {
-        try (PreparedStatement ps = connection.prepareStatement(
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             PreparedStatement ps = statements.prepare(
                 """
                         UPDATE items
                         SET name=?, link=?, pool=?, last_recall=?, total_recalls=?
                         WHERE id=?
                         """)
         ) {
-            connection.setAutoCommit(false);
             for (Item item : items) {
                 ps.setString(1, item.getItemName());
                 ps.setString(2, item.getItemLink());
                 ps.setString(3, item.getItemPool().name());
-                ps.setString(4, item.getLastRecall().toString());
+                ps.setObject(4, item.getLastRecall());
                 ps.setInt(5, item.getTotalRecalls());
                 ps.setInt(6, item.getItemId());
                 ps.addBatch();
             }
             ps.executeBatch();
-            connection.commit();
+            refreshRecallScores(items);
+            tx.commit();
             return true;
         } catch (SQLException e) {
-            try {
-                connection.rollback();
-            } catch (SQLException ignore) {
-            }
             return false;
-        } finally {
-            try {
-                connection.setAutoCommit(true);
-            } catch (SQLException ignore) {
-            }
         }
     }
 
 
     public Optional<Item> getItemById(int itemId) {
-        try (
-                ResultSet rs = connection.createStatement().executeQuery("SELECT * FROM items WHERE id=" + itemId);
-        ) {
+        try (PreparedStatement ps = statements.prepare("SELECT * FROM items WHERE id=?")) {
+            ps.setInt(1, itemId);
+            ResultSet rs = ps.executeQuery();
             if (rs.next()) {
                 return Optional.of(new Item(
                         rs.getInt("id"),
                         rs.getString("name"),
                         rs.getString("link"),
                         Item.Pool.valueOf(rs.getString("pool")),
-                        rs.getDate("last_recall").toLocalDate(),
+                        rs.getObject("last_recall", LocalDate.class),
                         rs.getInt("total_recalls")
                 ));
             } else return Optional.empty();
@@ -179,7 +173,7 @@ public class ItemRepository implements AutoCloseable {
 
     public Optional<List<Item>> getAllItems() {
         List<Item> items = new ArrayList<>();
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM items");
+        try (PreparedStatement stmt = statements.prepare("SELECT * FROM items");
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 Item p = new Item(
@@ -187,7 +181,7 @@ public class ItemRepository implements AutoCloseable {
                         rs.getString("name"),
                         rs.getString("link"),
                         Item.Pool.valueOf(rs.getString("pool")),
-                        rs.getDate("last_recall").toLocalDate(),
+                        rs.getObject("last_recall", LocalDate.class),
                         rs.getInt("total_recalls")
                 );
                 items.add(p);
@@ -199,9 +193,39 @@ public class ItemRepository implements AutoCloseable {
         return Optional.of(items);
     }
 
+    // every row as a lazily read cursor, must be closed by the caller, preferably with try-with-resources
+    public Stream<Item> streamAllItems() {
+        try {
+            return ItemLookup.stream(statements, "items");
+        } catch (SQLException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to fetch items from DB\n" + e.getMessage()));
+        }
+    }
+
+    // up to limit items with ids above afterId in id order, pass the last id seen to read the next page
+    public Optional<List<Item>> getItemsPage(int afterId, int limit) {
+        try {
+            return Optional.of(ItemLookup.page(statements, "items", afterId, limit));
+        } catch (SQLException e) {
+            Log.error("Failed to fetch items from DB\n" + e);
+            return Optional.empty();
+        }
+    }
+
+    // visits every row without holding the table in memory, false if the rows could not be read
+    public boolean forEachItem(Consumer<Item> action) {
+        try (Stream<Item> items = ItemLookup.stream(statements, "items")) {
+            items.forEach(action);
+            return true;
+        } catch (SQLException e) {
+            Log.error("Failed to fetch items from DB\n" + e);
+            return false;
+        }
+    }
+
     public Optional<HashSet<Integer>> getAllItemsIds() {
         HashSet<Integer> items = new HashSet<>();
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT id FROM items");
+        try (PreparedStatement stmt = statements.prepare("SELECT id FROM items");
              ResultSet rs = stmt.executeQuery()) {
             while (rs.next()) {
                 items.add(rs.getInt(1));
@@ -213,32 +237,139 @@ public class ItemRepository implements AutoCloseable {
         return Optional.of(items);
     }
 
-    public Optional<List<Item>> getItemsFromList(List<Integer> ids) {
-        if (ids == null || ids.isEmpty()) return Optional.empty();
-        String inClause = ids.stream().map(k -> String.valueOf(k)).collect(Collectors.joining(",", "(", ")"));
-        List<Item> res = new ArrayList<>();
-        try (PreparedStatement stmt = connection.prepareStatement("SELECT * FROM items WHERE id IN " + inClause);
+    public long countItems() {
+        try (PreparedStatement stmt = statements.prepare("SELECT COUNT(*) FROM items");
              ResultSet rs = stmt.executeQuery()) {
-            while (rs.next()) {
-                Item p = new Item(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("link"),
-                        Item.Pool.valueOf(rs.getString("pool")),
-                        rs.getDate("last_recall").toLocalDate(),
-                        rs.getInt("total_recalls")
-                );
-                res.add(p);
+            rs.next();
+            return rs.getLong(1);
+        } catch (SQLException e) {
+            Log.error("Failed to count items in DB\n" + e);
+            return 0;
+        }
+    }
+
+    // RecallService.getRating in SQL, evaluated in DOUBLE against the parameters stored in recall_score_state,
+    // so stored scores rank exactly like the in-memory ones
+    private static final String RECALL_SCORE_SQL = """
+            (SELECT ((CASE pool WHEN 'H' THEN s.weight_h WHEN 'M' THEN s.weight_m WHEN 'L' THEN s.weight_l END * s.alpha)
+                * POWER(CAST(GREATEST(1, DATEDIFF('DAY', last_recall, s.score_date) + 1) AS DOUBLE PRECISION), s.beta))
+                / (total_recalls + s.gamma)
+            FROM recall_score_state s WHERE s.id = 1)
+            """;
+
+    public Optional<List<Integer>> getRecallRanking(Map<Item.Pool, Double> poolWeights, double alpha, double beta, double gamma,
+                                                    LocalDate date, boolean highestIdFirst, int offset, int limit) {
+        if (!prepareRecallScores(poolWeights, alpha, beta, gamma, date)) return Optional.empty();
+        List<Integer> ids = new ArrayList<>();
+        try (PreparedStatement stmt = statements.prepare("""
+                SELECT id FROM items
+                ORDER BY recall_score DESC, id %s
+                LIMIT ? OFFSET ?
+                """.formatted(highestIdFirst ? "DESC" : "ASC"))) {
+            stmt.setInt(1, limit);
+            stmt.setInt(2, offset);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) ids.add(rs.getInt(1));
             }
-            return Optional.of(res);
+        } catch (SQLException e) {
+            Log.error("Failed to rank items in DB\n" + e);
+            return Optional.empty();
+        }
+        return Optional.of(ids);
+    }
+
+    // rebuilds every stored score on a date rollover or a parameter change, otherwise only fills in missing ones
+    public boolean prepareRecallScores(Map<Item.Pool, Double> poolWeights, double alpha, double beta, double gamma, LocalDate date) {
+        try (PreparedStatement stmt = statements.prepare("""
+                SELECT EXISTS(
+                    SELECT 1 FROM recall_score_state
+                    WHERE id = 1 AND score_date = ? AND weight_h = ? AND weight_m = ? AND weight_l = ?
+                    AND alpha = ? AND beta = ? AND gamma = ?
+                )
+                """)) {
+            stmt.setObject(1, date);
+            stmt.setDouble(2, poolWeights.get(Item.Pool.H));
+            stmt.setDouble(3, poolWeights.get(Item.Pool.M));
+            stmt.setDouble(4, poolWeights.get(Item.Pool.L));
+            stmt.setDouble(5, alpha);
+            stmt.setDouble(6, beta);
+            stmt.setDouble(7, gamma);
+            boolean current;
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                current = rs.getBoolean(1);
+            }
+            if (!current) return rebuildRecallScores(poolWeights, alpha, beta, gamma, date);
+        } catch (SQLException e) {
+            Log.error("Failed to read recall score state\n" + e);
+            return false;
+        }
+        try (PreparedStatement stmt = statements.prepare(
+                "UPDATE items SET recall_score = " + RECALL_SCORE_SQL + " WHERE recall_score IS NULL")) {
+            stmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            Log.error("Failed to fill in recall scores\n" + e);
+            return false;
+        }
+    }
+
+    public boolean rebuildRecallScores(Map<Item.Pool, Double> poolWeights, double alpha, double beta, double gamma, LocalDate date) {
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             PreparedStatement state = statements.prepare("""
+                MERGE INTO recall_score_state
+                (id, score_date, weight_h, weight_m, weight_l, alpha, beta, gamma)
+                VALUES (1, ?, ?, ?, ?, ?, ?, ?)
+                """);
+             PreparedStatement scores = statements.prepare("UPDATE items SET recall_score = " + RECALL_SCORE_SQL)) {
+            state.setObject(1, date);
+            state.setDouble(2, poolWeights.get(Item.Pool.H));
+            state.setDouble(3, poolWeights.get(Item.Pool.M));
+            state.setDouble(4, poolWeights.get(Item.Pool.L));
+            state.setDouble(5, alpha);
+            state.setDouble(6, beta);
+            state.setDouble(7, gamma);
+            state.executeUpdate();
+            scores.executeUpdate();
+            tx.commit();
+            return true;
+        } catch (SQLException e) {
+            Log.error("Failed to rebuild recall scores\n" + e);
+            return false;
+        }
+    }
+
+    // keeps the stored scores of freshly written rows in step, runs inside the caller's transaction
+    private void refreshRecallScores(List<Item> items) throws SQLException {
+        try (PreparedStatement ps = statements.prepare(
+                "UPDATE items SET recall_score = " + RECALL_SCORE_SQL + " WHERE id = ?")) {
+            for (Item item : items) {
+                ps.setInt(1, item.getItemId());
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    // items for the given ids in the order they were asked for, ids with no row are skipped
+    public Optional<List<Item>> getItemsFromList(List<Integer> ids) {
+        if (ids == null || ids.isEmpty()) return Optional.empty();
+        try {
+            return Optional.of(ItemLookup.byIds(connection, statements, "items", ids, lookupChunkSize));
         } catch (SQLException e) {
             Log.error("Failed to fetch items from Database\n" + e);
             return Optional.empty();
         }
     }
 
+    // ids bound per lookup query, larger lists are fetched over several round trips
+    public void setLookupChunkSize(int lookupChunkSize) {
+        if (lookupChunkSize <= 0) throw new RuntimeException(Log.errorMsg("Lookup chunk size must be positive"));
+        this.lookupChunkSize = lookupChunkSize;
+    }
+
     public boolean deleteItemsById(int itemId) {
-        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM items WHERE id=?");) {
+        try (PreparedStatement statement = statements.prepare("DELETE FROM items WHERE id=?");) {
             statement.setInt(1, itemId);
             int rows = statement.executeUpdate();
             return rows == 1;
@@ -247,8 +378,26 @@ public class ItemRepository implements AutoCloseable {
         }
     }
 
+    // the given ids that have a row, checked in one query however many are asked about
+    public Set<Integer> existingIds(Collection<Integer> ids) {
+        Set<Integer> found = new HashSet<>();
+        if (ids == null || ids.isEmpty()) return found;
+        try (PreparedStatement ps = statements.prepare("SELECT id FROM items WHERE id = ANY(?)")) {
+            Array array = connection.createArrayOf("INTEGER", ids.stream().filter(Objects::nonNull).distinct().toArray());
+            ps.setArray(1, array);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) found.add(rs.getInt(1));
+            } finally {
+                array.free();
+            }
+        } catch (SQLException e) {
+            Log.error(e.getMessage());
+        }
+        return found;
+    }
+
     public boolean exists(int id) {
-        try (PreparedStatement ps = connection.prepareStatement("""
+        try (PreparedStatement ps = statements.prepare("""
                 SELECT EXISTS(SELECT 1 FROM items WHERE id=?)
         """)) {
             ps.setInt(1, id);
@@ -260,21 +409,38 @@ public class ItemRepository implements AutoCloseable {
         }
     }
 
-    public Optional<List<Item>> searchItemsByName(String query) {
-        try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM items WHERE LOWER(name) LIKE LOWER(?)")) {
+    // case-insensitive substring search over names, best matches first, served by the name trigram index
+    public Optional<List<Item>> searchItemsByName(String query, int limit) {
+        try {
+            return Optional.of(TrigramIndex.search(connection, statements, "items", query, limit));
+        } catch (SQLException e) {
+            Log.error(e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // items not recalled since before the cutoff, oldest first, a null pool matches every pool
+    // served by idx_items_last_recall / idx_items_pool_last_recall instead of a full scan
+    public Optional<List<Item>> getItemsLastRecalledBefore(LocalDate cutoff, Item.Pool pool) {
+        String sql = pool == null
+                ? "SELECT * FROM items WHERE last_recall < ? ORDER BY last_recall, id"
+                : "SELECT * FROM items WHERE pool = ? AND last_recall < ? ORDER BY last_recall, id";
+        try (PreparedStatement statement = statements.prepare(sql)) {
+            int i = 1;
+            if (pool != null) statement.setString(i++, pool.name());
+            statement.setObject(i, cutoff);
             List<Item> items = new ArrayList<>();
-            statement.setString(1,"%"+query+"%");
-            ResultSet rs = statement.executeQuery();
-            while (rs.next()) {
-                Item item = new Item(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("link"),
-                        Item.Pool.valueOf(rs.getString("pool")),
-                        rs.getDate("last_recall").toLocalDate(),
-                        rs.getInt("total_recalls")
-                );
-                items.add(item);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    items.add(new Item(
+                            rs.getInt("id"),
+                            rs.getString("name"),
+                            rs.getString("link"),
+                            Item.Pool.valueOf(rs.getString("pool")),
+                            rs.getObject("last_recall", LocalDate.class),
+                            rs.getInt("total_recalls")
+                    ));
+                }
             }
             return Optional.of(items);
         } catch (SQLException e) {
@@ -283,17 +449,60 @@ public class ItemRepository implements AutoCloseable {
         }
     }
 
+    // the name index is emptied alongside in one statement rather than by the trigger row by row
     public boolean clearItems() {
-        try (Statement statement = connection.createStatement()) {
-            statement.execute("DELETE FROM items");
+        try (LocalTransaction tx = LocalTransaction.begin(connection);
+             TrigramTrigger.Suspension quiet = TrigramTrigger.suspend();
+             PreparedStatement statement = statements.prepare("DELETE FROM items");
+             PreparedStatement index = statements.prepare("DELETE FROM item_name_trigrams")) {
+            statement.execute();
+            index.execute();
+            tx.commit();
             return true;
         } catch (SQLException e) {
             return false;
         }
     }
 
+    // groups the calls that follow, on any repository sharing this connection, into one transaction
+    public UnitOfWork beginUnitOfWork() {
+        return UnitOfWork.begin(connection);
+    }
+
+    // runs the calls that follow, on any repository sharing this connection, under another storage profile
+    // until the returned scope is closed
+    public StorageProfile.Scope useStorageProfile(StorageProfile profile) {
+        try {
+            return profile.apply(connection, statements);
+        } catch (SQLException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to switch to storage profile " + profile.displayName() + "\n" + e.getMessage()));
+        }
+    }
+
+    // imports a trusted csv through H2's own CSVREAD, header skips its first line, rejected rows are handed to
+    // rejects in file order
+    public Optional<CsvBulk.Result> bulkImport(Path csv, boolean header, boolean preserveDb, Consumer<String> rejects) {
+        try {
+            return Optional.of(CsvBulk.importCsv(connection, csv, header, preserveDb, RECALL_SCORE_SQL, rejects));
+        } catch (SQLException e) {
+            Log.error("Failed to bulk import " + csv + "\n" + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // writes every item to file with H2's CSVWRITE, in the import format
+    public Optional<Long> bulkExport(Path file) {
+        try {
+            return Optional.of(CsvBulk.exportCsv(statements, "items", file));
+        } catch (SQLException e) {
+            Log.error("Failed to bulk export items\n" + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
     @Override
     public void close() throws Exception {
+        statements.close();
         if (connection != null && !connection.isClosed()) connection.close();
     }
 }
@@ -0,0 +1,48 @@
+package ansrs.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+
+// the transaction a single repository call runs its statements in, closing it without a commit rolls back
+// inside an open UnitOfWork it is a savepoint, so a failed call is undone without ending the unit's transaction
+final class LocalTransaction implements AutoCloseable {
+
+    private final Connection connection;
+    private final Savepoint savepoint;
+    private boolean finished = false;
+
+    private LocalTransaction(Connection connection, Savepoint savepoint) {
+        this.connection = connection;
+        this.savepoint = savepoint;
+    }
+
+    static LocalTransaction begin(Connection connection) throws SQLException {
+        if (UnitOfWork.isOpen(connection)) return new LocalTransaction(connection, connection.setSavepoint());
+        connection.setAutoCommit(false);
+        return new LocalTransaction(connection, null);
+    }
+
+    void commit() throws SQLException {
+        if (savepoint != null) connection.releaseSavepoint(savepoint);
+        else connection.commit();
+        finished = true;
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (!finished) {
+                if (savepoint != null) connection.rollback(savepoint);
+                else connection.rollback();
+            }
+        } catch (SQLException ignore) {
+        }
+        if (savepoint == null) {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignore) {
+            }
+        }
+    }
+}
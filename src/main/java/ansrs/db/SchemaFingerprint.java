@@ -0,0 +1,108 @@
+package ansrs.db;
+
+import ansrs.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// SHA-256 over the bundled migration scripts, stored in the database after a successful migration,
+// a database holding the current fingerprint is already migrated and Flyway does not need to be loaded at all
+public class SchemaFingerprint {
+
+    // where Flyway looks for scripts by default, the fingerprint reads the same directory
+    static final String LOCATION = "db/migration";
+    private static final Pattern SCRIPT = Pattern.compile("V(\\d+)__.+\\.sql");
+
+    private static final String TABLE = "schema_fingerprint";
+
+    public static String compute() {
+        ClassLoader loader = SchemaFingerprint.class.getClassLoader();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String migration : migrations(loader)) {
+                try (InputStream in = loader.getResourceAsStream(LOCATION + "/" + migration)) {
+                    if (in == null) throw new RuntimeException(Log.errorMsg("Missing migration script " + migration));
+                    digest.update(migration.getBytes(StandardCharsets.UTF_8));
+                    digest.update(in.readAllBytes());
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to fingerprint migrations"), e);
+        }
+    }
+
+    // every V<version>__*.sql script on the classpath under LOCATION, in version order, listed from the directory
+    // itself so a new script always changes the fingerprint, whether it sits in a folder, a jar or a native image
+    static List<String> migrations(ClassLoader loader) {
+        URL url = loader.getResource(LOCATION);
+        if (url == null) throw new RuntimeException(Log.errorMsg("Missing migration scripts in " + LOCATION));
+        try {
+            URI uri = url.toURI();
+            if (uri.getScheme().equals("file")) return scripts(Path.of(uri));
+            FileSystem fs;
+            boolean opened = false;
+            try {
+                fs = FileSystems.newFileSystem(uri, Map.of());
+                opened = true;
+            } catch (FileSystemAlreadyExistsException e) {
+                fs = FileSystems.getFileSystem(uri);
+            }
+            try {
+                return scripts(fs.provider().getPath(uri));
+            } finally {
+                if (opened) fs.close();
+            }
+        } catch (URISyntaxException | IOException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to list migration scripts\n" + e.getMessage()), e);
+        }
+    }
+
+    private static List<String> scripts(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(name -> SCRIPT.matcher(name).matches())
+                    .sorted(Comparator.comparingLong((String name) -> Long.parseLong(name.substring(1, name.indexOf("__")))))
+                    .toList();
+        }
+    }
+
+    // empty for a fresh database, or one migrated before fingerprints were stored
+    public static Optional<String> stored(Connection connection) {
+        try (Statement st = connection.createStatement();
+             ResultSet rs = st.executeQuery("SELECT fingerprint FROM " + TABLE + " WHERE id = 1")) {
+            return rs.next() ? Optional.of(rs.getString(1)) : Optional.empty();
+        } catch (SQLException e) {
+            return Optional.empty();
+        }
+    }
+
+    public static void store(Connection connection, String fingerprint) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " (id INT PRIMARY KEY, fingerprint VARCHAR(64) NOT NULL)");
+        }
+        try (PreparedStatement ps = connection.prepareStatement("MERGE INTO " + TABLE + " (id, fingerprint) KEY (id) VALUES (1, ?)")) {
+            ps.setString(1, fingerprint);
+            ps.executeUpdate();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package ansrs.db;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// prepared statements shared by every repository on a connection, keyed by their SQL text
+// prepare() hands out a view whose close() only returns the statement to the cache, so callers keep
+// the usual try-with-resources shape, the least recently used statement is closed once CAPACITY is exceeded
+// each cached statement has one view for its lifetime, so a cache hit allocates nothing
+public class StatementCache implements AutoCloseable {
+
+    static final int CAPACITY = 64;
+
+    private static final Map<Connection, StatementCache> CACHES = new IdentityHashMap<>();
+
+    private final Connection connection;
+    private final int capacity;
+    private final LinkedHashMap<String, Entry> statements = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits = 0;
+    private long misses = 0;
+
+    private static final class Entry {
+        final PreparedStatement statement;
+        PreparedStatement view;
+        boolean inUse = false;
+        boolean evicted = false;
+
+        Entry(PreparedStatement statement) {
+            this.statement = statement;
+        }
+    }
+
+    StatementCache(Connection connection, int capacity) {
+        this.connection = connection;
+        this.capacity = capacity;
+    }
+
+    // the cache shared by all repositories built on this connection
+    public static StatementCache of(Connection connection) {
+        synchronized (CACHES) {
+            return CACHES.computeIfAbsent(connection, c -> new StatementCache(c, CAPACITY));
+        }
+    }
+
+    public synchronized PreparedStatement prepare(String sql) throws SQLException {
+        Entry entry = statements.get(sql);
+        if (entry != null && entry.statement.isClosed()) {
+            statements.remove(sql);
+            entry = null;
+        }
+        // a statement still held by an outer caller is not shared, the nested caller gets its own
+        if (entry != null && entry.inUse) return connection.prepareStatement(sql);
+        if (entry == null) {
+            misses++;
+            entry = new Entry(connection.prepareStatement(sql));
+            entry.view = view(entry);
+            statements.put(sql, entry);
+            evict();
+        } else hits++;
+        entry.inUse = true;
+        return entry.view;
+    }
+
+    private void evict() throws SQLException {
+        var it = statements.values().iterator();
+        while (statements.size() > capacity && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            eldest.evicted = true;
+            if (!eldest.inUse) eldest.statement.close();
+        }
+    }
+
+    private synchronized void release(Entry entry) throws SQLException {
+        if (!entry.inUse) return;
+        entry.inUse = false;
+        if (entry.evicted) {
+            entry.statement.close();
+            return;
+        }
+        if (entry.statement.isClosed()) return;
+        ResultSet rs = entry.statement.getResultSet();
+        if (rs != null) rs.close();
+        entry.statement.clearParameters();
+        entry.statement.clearBatch();
+    }
+
+    // the view is closed between leases, a caller must not keep it past its own close() as the next prepare() of
+    // the same SQL hands the same view out again
+    private PreparedStatement view(Entry entry) {
+        return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close" -> {
+                            release(entry);
+                            return null;
+                        }
+                        case "isClosed" -> {
+                            return !entry.inUse || entry.statement.isClosed();
+                        }
+                        case "equals" -> {
+                            return proxy == args[0];
+                        }
+                        case "hashCode" -> {
+                            return System.identityHashCode(proxy);
+                        }
+                        default -> {
+                            if (!entry.inUse) throw new SQLException("Statement has been returned to the cache");
+                            try {
+                                return method.invoke(entry.statement, args);
+                            } catch (InvocationTargetException e) {
+                                throw e.getCause();
+                            }
+                        }
+                    }
+                });
+    }
+
+    synchronized int size() {
+        return statements.size();
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    // closes every cached statement, called by the repositories before they close the connection
+    @Override
+    public synchronized void close() {
+        for (Entry entry : statements.values()) {
+            try {
+                entry.statement.close();
+            } catch (SQLException ignore) {
+            }
+        }
+        statements.clear();
+        synchronized (CACHES) {
+            CACHES.remove(connection, this);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package ansrs.db;
+
+import ansrs.util.Log;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Locale;
+import java.util.Optional;
+
+// H2 storage tuning, the database is opened with ANSRS_STORAGE_PROFILE (balanced when unset) and commands
+// that write in bulk can switch an open connection to another profile for their own duration
+// cache size and write delay change on a live database, compression and the compaction time on close are
+// only read when the file is opened, so those follow the profile the database was opened with
+public enum StorageProfile {
+    // a large page cache, commits are flushed in the background every two seconds and closing skips
+    // compaction, a crash can lose the last moments of work, which a re-run import simply redoes
+    FAST_BULK(65536, 2000, 0, false),
+    // H2's own defaults
+    BALANCED(16384, 500, 200, false),
+    // every commit is on disk before it returns and the file is compacted on close
+    DURABLE(16384, 0, 2000, false),
+    // compressed pages and a long compaction on close, the smallest file for large collections
+    COMPACT(16384, 500, 5000, true);
+
+    private final int cacheSizeKb;
+    private final int writeDelayMillis;
+    private final int maxCompactTimeMillis;
+    private final boolean compress;
+
+    StorageProfile(int cacheSizeKb, int writeDelayMillis, int maxCompactTimeMillis, boolean compress) {
+        this.cacheSizeKb = cacheSizeKb;
+        this.writeDelayMillis = writeDelayMillis;
+        this.maxCompactTimeMillis = maxCompactTimeMillis;
+        this.compress = compress;
+    }
+
+    // "fast-bulk", "FAST_BULK" and "fast_bulk" all name the same profile
+    public static Optional<StorageProfile> fromName(String name) {
+        if (name == null || name.isBlank()) return Optional.empty();
+        try {
+            return Optional.of(valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_')));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    public String displayName() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    // appended to the JDBC URL of a file database
+    public String urlOptions() {
+        return ";CACHE_SIZE=" + cacheSizeKb + ";WRITE_DELAY=" + writeDelayMillis
+                + ";MAX_COMPACT_TIME=" + maxCompactTimeMillis + ";COMPRESS=" + (compress ? "TRUE" : "FALSE");
+    }
+
+    // switches the live settings of the connection's database, closing the scope puts the previous ones back
+    // SET ends any open transaction, so this belongs at the start of a command, outside a unit of work
+    // the settings are read through the connection's statement cache, a daemon switches profiles on every command
+    public Scope apply(Connection connection, StatementCache statements) throws SQLException {
+        int previousCache = setting(statements, "CACHE_SIZE", BALANCED.cacheSizeKb);
+        int previousDelay = setting(statements, "WRITE_DELAY", BALANCED.writeDelayMillis);
+        set(connection, cacheSizeKb, writeDelayMillis);
+        return new Scope(connection, previousCache, previousDelay, writeDelayMillis > previousDelay);
+    }
+
+    private static int setting(StatementCache statements, String name, int fallback) throws SQLException {
+        try (PreparedStatement ps = statements.prepare("SELECT SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE SETTING_NAME = ?")) {
+            ps.setString(1, name);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? Integer.parseInt(rs.getString(1)) : fallback;
+            }
+        }
+    }
+
+    private static void set(Connection connection, int cacheSizeKb, int writeDelayMillis) throws SQLException {
+        try (Statement st = connection.createStatement()) {
+            st.execute("SET CACHE_SIZE " + cacheSizeKb);
+            st.execute("SET WRITE_DELAY " + writeDelayMillis);
+        }
+    }
+
+    public static final class Scope implements AutoCloseable {
+        private final Connection connection;
+        private final int cacheSizeKb;
+        private final int writeDelayMillis;
+        private final boolean flush;
+
+        private Scope(Connection connection, int cacheSizeKb, int writeDelayMillis, boolean flush) {
+            this.connection = connection;
+            this.cacheSizeKb = cacheSizeKb;
+            this.writeDelayMillis = writeDelayMillis;
+            this.flush = flush;
+        }
+
+        // work done under a longer write delay is checkpointed, so the command only reports success once it is on disk
+        @Override
+        public void close() {
+            try {
+                if (flush) {
+                    try (Statement st = connection.createStatement()) {
+                        st.execute("CHECKPOINT");
+                    }
+                }
+                set(connection, cacheSizeKb, writeDelayMillis);
+            } catch (SQLException e) {
+                throw new RuntimeException(Log.errorMsg("Failed to restore storage settings\n" + e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package ansrs.db;
+
+import ansrs.data.Item;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+// name search over the trigram tables kept by TrigramTrigger
+// a name can only contain the query if it contains every trigram of it, so the index narrows the candidates
+// and the LIKE on those few rows confirms the match, queries under 3 characters fall back to scanning names
+// case is only ever folded by the database's LOWER, for names as they are indexed and for queries alike,
+// so a name and a query always fold the same way whatever the JVM's locale
+final class TrigramIndex {
+
+    // longest name a lower cased VARCHAR(255) can become, LOWER may turn one char into two
+    private static final int MAX_LOWERED = 510;
+    // index rows sent per batch by reindex
+    private static final int REINDEX_BATCH = 4096;
+
+    private TrigramIndex() {
+    }
+
+    static String indexTable(String table) {
+        return switch (table.toLowerCase(Locale.ROOT)) {
+            case "items" -> "item_name_trigrams";
+            case "archive" -> "archive_name_trigrams";
+            default -> throw new IllegalStateException("No trigram index for table " + table);
+        };
+    }
+
+    // the distinct 3 char windows of an already lower cased string, as SUBSTRING cuts them in trigramsOf
+    static Set<String> trigrams(String lowered) {
+        Set<String> res = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= lowered.length(); i++) res.add(lowered.substring(i, i + 3));
+        return res;
+    }
+
+    // a query yielding (trigram, id) for every window of the lower cased name of each (id, name) row of source
+    // the outer join pins the names as the outer loop, an inner join lets H2 rescan them once per window position
+    static String trigramsOf(String source) {
+        return "SELECT DISTINCT SUBSTRING(l.name, r.X, 3), l.id FROM (SELECT id, LOWER(name) AS name FROM " + source + ") l"
+                + " LEFT JOIN SYSTEM_RANGE(1, " + MAX_LOWERED + ") r ON r.X <= CHAR_LENGTH(l.name) - 2 WHERE r.X IS NOT NULL";
+    }
+
+    // rebuilds the index rows of every id the query idsSql yields from the table as it now stands, ids whose row is
+    // gone only lose theirs, idsSql may take ids as its one parameter
+    // bulk writes suspend the trigger and call this once for everything they touched, the names come back lowered by
+    // the database in one query and the index rows are deleted and inserted by id in batches
+    // ids are joined to the table rather than filtered with IN or = ANY, H2 checks those again for every row they match
+    static void reindex(Connection connection, String table, String idsSql, Array ids) throws SQLException {
+        String index = indexTable(table);
+        try (PreparedStatement names = connection.prepareStatement("SELECT u.id, LOWER(t.name) FROM (" + idsSql + ") u(id) "
+                + "LEFT JOIN " + table + " t ON t.id = u.id");
+             PreparedStatement delete = connection.prepareStatement("DELETE FROM " + index + " WHERE id = ?");
+             PreparedStatement insert = connection.prepareStatement("INSERT INTO " + index + " (trigram, id) VALUES (?, ?)")) {
+            if (ids != null) names.setArray(1, ids);
+            int pending = 0;
+            try (ResultSet rs = names.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt(1);
+                    delete.setInt(1, id);
+                    delete.addBatch();
+                    String name = rs.getString(2);
+                    if (name != null) {
+                        for (String trigram : trigrams(name)) {
+                            insert.setString(1, trigram);
+                            insert.setInt(2, id);
+                            insert.addBatch();
+                            pending++;
+                        }
+                    }
+                    if (pending >= REINDEX_BATCH) {
+                        delete.executeBatch();
+                        insert.executeBatch();
+                        pending = 0;
+                    }
+                }
+            }
+            delete.executeBatch();
+            insert.executeBatch();
+        }
+    }
+
+    // the items of a batch whose name differs from the one stored under their id, or that are not stored yet, read
+    // before the batch is written so that only these need reindexing after, as the trigger skips an unchanged name
+    static List<Item> renamed(Connection connection, String table, List<Item> items) throws SQLException {
+        Map<Integer, String> stored = new HashMap<>();
+        Array ids = connection.createArrayOf("INTEGER", items.stream().map(Item::getItemId).distinct().toArray());
+        try (PreparedStatement ps = connection.prepareStatement("SELECT t.id, t.name FROM (SELECT * FROM UNNEST(?)) u(id) "
+                + "JOIN " + table + " t ON t.id = u.id")) {
+            ps.setArray(1, ids);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) stored.put(rs.getInt(1), rs.getString(2));
+            }
+        } finally {
+            ids.free();
+        }
+        return items.stream()
+                .filter(item -> !stored.containsKey(item.getItemId()) || !Objects.equals(stored.get(item.getItemId()), item.getItemName()))
+                .toList();
+    }
+
+    // reindexes the items of a batch written with the trigger suspended
+    static void reindex(Connection connection, String table, List<Item> items) throws SQLException {
+        if (items.isEmpty()) return;
+        Array ids = connection.createArrayOf("INTEGER", items.stream().map(Item::getItemId).distinct().toArray());
+        try {
+            reindex(connection, table, "SELECT * FROM UNNEST(?)", ids);
+        } finally {
+            ids.free();
+        }
+    }
+
+    private static String lower(StatementCache statements, String query) throws SQLException {
+        try (PreparedStatement ps = statements.prepare("SELECT LOWER(CAST(? AS VARCHAR))")) {
+            ps.setString(1, query);
+            try (ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getString(1);
+            }
+        }
+    }
+
+    // matches ranked exact name first, then names starting with the query, then by how early the query
+    // appears, shorter names and lower ids break the remaining ties
+    static List<Item> search(Connection connection, StatementCache statements, String table, String query, int limit) throws SQLException {
+        String q = lower(statements, query);
+        String pattern = "%" + escapeLike(q) + "%";
+        String ranking = """
+                ORDER BY CASE WHEN LOWER(i.name) = ? THEN 0 WHEN LOWER(i.name) LIKE ? ESCAPE '\\' THEN 1 ELSE 2 END,
+                LOCATE(?, LOWER(i.name)), CHAR_LENGTH(i.name), i.id
+                LIMIT ?
+                """;
+        Set<String> grams = trigrams(q);
+        String sql = grams.isEmpty()
+                ? "SELECT i.* FROM " + table + " i WHERE LOWER(i.name) LIKE ? ESCAPE '\\' " + ranking
+                : "SELECT i.* FROM " + table + " i JOIN (SELECT id FROM " + indexTable(table)
+                + " WHERE trigram = ANY(?) GROUP BY id HAVING COUNT(*) = ?) t ON t.id = i.id"
+                + " WHERE LOWER(i.name) LIKE ? ESCAPE '\\' " + ranking;
+        List<Item> res = new ArrayList<>();
+        try (PreparedStatement ps = statements.prepare(sql)) {
+            int n = 1;
+            Array array = null;
+            if (!grams.isEmpty()) {
+                array = connection.createArrayOf("VARCHAR", grams.toArray());
+                ps.setArray(n++, array);
+                ps.setInt(n++, grams.size());
+            }
+            ps.setString(n++, pattern);
+            ps.setString(n++, q);
+            ps.setString(n++, escapeLike(q) + "%");
+            ps.setString(n++, q);
+            ps.setInt(n, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) res.add(ItemLookup.map(rs));
+            } finally {
+                if (array != null) array.free();
+            }
+        }
+        return res;
+    }
+
+    private static String escapeLike(String s) {
+        return s.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+}
@@ -0,0 +1,78 @@
+package ansrs.db;
+
+import org.h2.api.Trigger;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Objects;
+
+// keeps <table>_name_trigrams in step with the name column of items and archive, installed by V5
+// H2 calls it inside the writing statement's transaction, so the index commits and rolls back with the row
+// an embedded database fires it on the writing thread, which is what lets a bulk write suspend it
+public class TrigramTrigger implements Trigger {
+
+    private static final int ID = 0;
+    private static final int NAME = 1;
+
+    // set while a bulk write on this thread reindexes the rows it writes itself, see TrigramIndex.reindex
+    private static final ThreadLocal<Boolean> SUSPENDED = ThreadLocal.withInitial(() -> false);
+
+    // the trigger stays quiet on this thread until the returned scope is closed, scopes nest
+    static Suspension suspend() {
+        boolean outer = SUSPENDED.get();
+        SUSPENDED.set(true);
+        return () -> SUSPENDED.set(outer);
+    }
+
+    interface Suspension extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private String indexTable;
+    private Connection prepared;
+    private PreparedStatement delete;
+    private PreparedStatement insert;
+
+    @Override
+    public void init(Connection conn, String schemaName, String triggerName, String tableName, boolean before, int type) {
+        indexTable = TrigramIndex.indexTable(tableName);
+    }
+
+    @Override
+    public void fire(Connection conn, Object[] oldRow, Object[] newRow) throws SQLException {
+        if (SUSPENDED.get()) return;
+        if (oldRow != null && newRow != null
+                && Objects.equals(oldRow[ID], newRow[ID]) && Objects.equals(oldRow[NAME], newRow[NAME])) return;
+        prepare(conn);
+        if (oldRow != null) {
+            delete.setInt(1, (Integer) oldRow[ID]);
+            delete.executeUpdate();
+        }
+        if (newRow != null && newRow[NAME] != null) {
+            insert.setInt(1, (Integer) newRow[ID]);
+            insert.setString(2, (String) newRow[NAME]);
+            insert.executeUpdate();
+        }
+    }
+
+    // statements are reused for as long as H2 hands the trigger the same session
+    private void prepare(Connection conn) throws SQLException {
+        if (conn == prepared) return;
+        close();
+        delete = conn.prepareStatement("DELETE FROM " + indexTable + " WHERE id = ?");
+        insert = conn.prepareStatement("INSERT INTO " + indexTable + " (trigram, id) "
+                + TrigramIndex.trigramsOf("(VALUES (CAST(? AS INTEGER), CAST(? AS VARCHAR))) v(id, name)"));
+        prepared = conn;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (delete != null) delete.close();
+        if (insert != null) insert.close();
+        delete = null;
+        insert = null;
+        prepared = null;
+    }
+}
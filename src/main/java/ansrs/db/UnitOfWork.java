@@ -0,0 +1,109 @@
+package ansrs.db;
+
+import ansrs.set.SetTransaction;
+import ansrs.util.Log;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// groups repository calls made on one connection into a single JDBC transaction, any repository built on the
+// connection joins it, their own batch transactions become savepoints inside it instead of committing
+// set transactions enlisted with it are flushed only after the database commit went through,
+// and closing without a commit rolls back the database and discards the enlisted set changes
+public class UnitOfWork implements AutoCloseable {
+
+    private static final Map<Connection, UnitOfWork> OPEN = new IdentityHashMap<>();
+
+    private final Connection connection;
+    private final UnitOfWork outer;
+    private final List<SetTransaction> sets = new ArrayList<>();
+    private boolean finished = false;
+    private boolean rollbackOnly = false;
+
+    private UnitOfWork(Connection connection, UnitOfWork outer) {
+        this.connection = connection;
+        this.outer = outer;
+    }
+
+    // a unit begun while another is open on the connection joins it, the outermost unit decides the outcome
+    public static UnitOfWork begin(Connection connection) {
+        synchronized (OPEN) {
+            UnitOfWork current = OPEN.get(connection);
+            if (current != null) return new UnitOfWork(connection, current);
+            try {
+                connection.setAutoCommit(false);
+            } catch (SQLException e) {
+                throw new RuntimeException(Log.errorMsg("Failed to begin transaction\n" + e.getMessage()));
+            }
+            UnitOfWork unit = new UnitOfWork(connection, null);
+            OPEN.put(connection, unit);
+            return unit;
+        }
+    }
+
+    static boolean isOpen(Connection connection) {
+        synchronized (OPEN) {
+            return OPEN.containsKey(connection);
+        }
+    }
+
+    // set transactions to flush once the database work is committed
+    public UnitOfWork enlist(SetTransaction... transactions) {
+        if (outer != null) {
+            outer.enlist(transactions);
+            return this;
+        }
+        sets.addAll(List.of(transactions));
+        return this;
+    }
+
+    public void commit() {
+        if (finished) return;
+        finished = true;
+        if (outer != null) return;
+        try {
+            if (rollbackOnly) throw new SQLException("a joined unit of work was abandoned");
+            connection.commit();
+        } catch (SQLException e) {
+            finished = false;
+            close();
+            throw new RuntimeException(Log.errorMsg("Transaction commit failed, rolled back\n" + e.getMessage()));
+        }
+        end();
+        for (SetTransaction set : sets) set.commit();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void close() {
+        if (finished) return;
+        finished = true;
+        if (outer != null) {
+            outer.rollbackOnly = true;
+            return;
+        }
+        try {
+            connection.rollback();
+        } catch (SQLException ignore) {
+        }
+        end();
+        for (SetTransaction set : sets) set.close();
+    }
+
+    private void end() {
+        synchronized (OPEN) {
+            OPEN.remove(connection, this);
+        }
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException ignore) {
+        }
+    }
+}
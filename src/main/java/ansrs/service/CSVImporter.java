@@ -5,15 +5,28 @@ import ansrs.util.Log;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVRecord;
 
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class CSVImporter {
 
+    // characters pulled from the file per read
+    private static final int READ_BUFFER_CHARS = 1 << 16;
+    // records validated by one task, large enough to outweigh handing the task over
+    private static final int VALIDATE_BATCH = 1024;
+
     private final Reader reader;
 
     Reader getReaderForTest() {
@@ -23,8 +36,8 @@ public class CSVImporter {
     public CSVImporter(String filePath) {
         try {
             Path path = Path.of(filePath).toAbsolutePath().normalize();
-            this.reader = new FileReader(String.valueOf(path));
-        } catch (FileNotFoundException e) {
+            this.reader = new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8), READ_BUFFER_CHARS);
+        } catch (IOException e) {
             throw new RuntimeException(Log.errorMsg(e.getMessage()));
         }
     }
@@ -34,68 +47,170 @@ public class CSVImporter {
         this.reader = mockTestReader;
     }
 
+    public interface ChunkHandler {
+        // gets every full chunk and then whatever is left, records counts the csv records read so far, header and
+        // invalid rows included, false stops the import
+        boolean accept(List<Item> chunk, long records);
+    }
+
+    // when the import was stopped, records only counts what the accepted chunks covered
+    public record Summary(long records, long valid, long invalid, boolean completed) {}
+
+    // every item of the file, for small files, large ones should go through stream
     public List<Item> parse() {
-        try {
-            Iterable<CSVRecord> records = CSVFormat.DEFAULT.parse(reader);
-            List<Item> items = new ArrayList<>();
-            StringBuilder sb = new StringBuilder();
-            int badRows=0;
-            boolean first = true;
-            for (CSVRecord record : records) {
-                if (first) {
-                    first = false;
-                    try {
-                        Integer.parseInt(record.get(0).trim());
-                    } catch (Exception e) {
-                        if (isValidHeader(record)) continue;
-                        else throw new RuntimeException(Log.errorMsg("Invalid CSV Header"));
-                    }
-                }
+        List<Item> items = new ArrayList<>();
+        stream(Integer.MAX_VALUE, 0, (chunk, records) -> {
+            items.addAll(chunk);
+            return true;
+        });
+        return items;
+    }
 
-                Optional<Item> itemOptional = validateRecord(record);
-                if (itemOptional.isEmpty()) {
-                    sb.append(Log.warnMsg("Invalid ")).append(record.toString()).append("\n");
-                    badRows++;
+    // whether the file opens with a header, a first row that is neither a record nor a full header fails the file
+    // as it does in stream, for callers that hand the rest of the file to something else
+    public boolean hasHeader() {
+        try (Reader in = reader) {
+            Iterator<CSVRecord> records = CSVFormat.DEFAULT.parse(in).iterator();
+            return records.hasNext() && isHeader(records.next());
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg(e.getMessage()));
+        }
+    }
+
+    public Summary stream(int chunkSize, long skipRecords, ChunkHandler handler) {
+        return stream(chunkSize, skipRecords, Runtime.getRuntime().availableProcessors(), handler);
+    }
+
+    // reads the file on its own thread, validates it VALIDATE_BATCH records at a time across workers threads and
+    // hands valid items to the handler on the calling thread in file order, chunkSize at a time, so the handler
+    // is the only writer and memory stays bounded by one chunk plus the batches in flight however long the file
+    // is, the first skipRecords records are read past unchecked
+    public Summary stream(int chunkSize, long skipRecords, int workers, ChunkHandler handler) {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, workers));
+        BlockingQueue<Future<Batch>> batches = new ArrayBlockingQueue<>(Math.max(1, workers) * 2);
+        Thread reading = null;
+        // the per-row warnings are held back so the count leads them, as it did before the import streamed
+        StringBuilder rejects = new StringBuilder();
+        long invalid = 0;
+        try (Reader in = reader) {
+            reading = Thread.ofPlatform().name("ansrs-csv-reader").daemon().start(() -> read(in, skipRecords, pool, batches));
+            int capacity = Math.min(chunkSize, 1 << 16);
+            List<Item> chunk = new ArrayList<>(capacity);
+            long read, valid = 0, handed = skipRecords;
+            while (true) {
+                Batch batch = await(batches.take());
+                if (batch.records() == null) {
+                    read = batch.lastRecord();
+                    break;
+                }
+                for (int i = 0; i < batch.records().length; i++) {
+                    Item item = batch.items()[i];
+                    if (item == null) {
+                        rejects.append(Log.warnMsg("Invalid ")).append(batch.records()[i]).append(", ").append(batch.outcomes()[i].reason()).append("\n");
+                        invalid++;
+                        continue;
+                    }
+                    chunk.add(item);
+                    valid++;
+                    if (chunk.size() == chunkSize) {
+                        long at = batch.records()[i].getRecordNumber();
+                        if (!handler.accept(chunk, at)) return new Summary(handed, valid, invalid, false);
+                        handed = at;
+                        chunk = new ArrayList<>(capacity);
+                    }
                 }
-                else items.add(itemOptional.get());
+                if (batch.failure() != null) throw batch.failure();
             }
-            if (!sb.isEmpty()) Log.warn(badRows + " invalid row(s)\n" + sb.toString());
-            return items;
+            // the trailing chunk also carries the count past any invalid rows at the end of the file
+            if ((!chunk.isEmpty() || read > handed) && !handler.accept(chunk, read))
+                return new Summary(handed, valid, invalid, false);
+            return new Summary(Math.max(read, skipRecords), valid, invalid, true);
         } catch (Exception e) {
             throw new RuntimeException(Log.errorMsg(e.getMessage()));
+        } finally {
+            if (invalid > 0) Log.warn(invalid + " invalid row(s)\n" + rejects);
+            // a handler that stopped early leaves the reader blocked on a full queue
+            if (reading != null) reading.interrupt();
+            pool.shutdownNow();
         }
     }
 
-    private boolean isValidHeader(CSVRecord record) {
-        if (record.size() != 6) return false;
-        for (int i = 0; i < 6; i++) {
-            if (record.get(i).trim().isEmpty()) return false;
+    // records of one validation task and what they validated to, a null item marks an invalid row, a malformed
+    // record cuts the batch short at itself so the rows ahead of it still go through first
+    // the batch with no records ends the file and carries the number of the last record read
+    private record Batch(long lastRecord, CSVRecord[] records, Item[] items, RecordValidator.Outcome[] outcomes, RuntimeException failure) {}
+
+    private void read(Reader in, long skipRecords, ForkJoinPool pool, BlockingQueue<Future<Batch>> batches) {
+        try {
+            long read = 0;
+            try {
+                List<CSVRecord> pending = new ArrayList<>(VALIDATE_BATCH);
+                for (CSVRecord record : CSVFormat.DEFAULT.parse(in)) {
+                    read = record.getRecordNumber();
+                    if (read <= skipRecords) continue;
+                    if (read == 1 && isHeader(record)) continue;
+                    pending.add(record);
+                    if (pending.size() == VALIDATE_BATCH) {
+                        batches.put(validate(pool, pending));
+                        pending = new ArrayList<>(VALIDATE_BATCH);
+                    }
+                }
+                if (!pending.isEmpty()) batches.put(validate(pool, pending));
+            } catch (InterruptedException e) {
+                return;
+            } catch (Exception e) {
+                // reported once the batches read before it have been handed over
+                batches.put(CompletableFuture.failedFuture(e));
+                return;
+            }
+            batches.put(CompletableFuture.completedFuture(new Batch(read, null, null, null, null)));
+        } catch (InterruptedException ignored) {
         }
-        return true;
     }
 
-    private Optional<Item> validateRecord(CSVRecord record) {
-        try {if (record.size()!=6) throw new ArrayIndexOutOfBoundsException();
-            int id = Integer.parseInt(sanitize(record.get(0)));
-            String name = sanitize(record.get(1));
-            String link = sanitize(record.get(2));
-            Item.Pool pool = Item.Pool.valueOf(sanitize(record.get(3)).toUpperCase());
-            LocalDate lastRecall = LocalDate.now();
-            if (!sanitize(record.get(4)).isEmpty()) lastRecall = LocalDate.parse(sanitize(record.get(4)));
-            int totalRecalls =0;
-            if (!sanitize(record.get(5)).isEmpty()) totalRecalls = Integer.parseInt(sanitize(record.get(5)));
-            if (id <= 0 || name.isEmpty() || !link.startsWith("https://") || totalRecalls < 0 || lastRecall.isAfter(LocalDate.now())) {
-                return Optional.empty();
+    private Future<Batch> validate(ForkJoinPool pool, List<CSVRecord> pending) {
+        CSVRecord[] records = pending.toArray(new CSVRecord[0]);
+        return pool.submit(() -> {
+            RecordValidator validator = new RecordValidator();
+            Item[] items = new Item[records.length];
+            RecordValidator.Outcome[] outcomes = new RecordValidator.Outcome[records.length];
+            for (int i = 0; i < records.length; i++) {
+                outcomes[i] = validator.check(records[i]);
+                if (outcomes[i] == RecordValidator.Outcome.MALFORMED) {
+                    RuntimeException malformed = new RuntimeException(Log.errorMsg("ERROR: CSV Malformed"));
+                    return new Batch(records[i].getRecordNumber(), Arrays.copyOf(records, i), items, outcomes, malformed);
+                }
+                if (outcomes[i] == RecordValidator.Outcome.VALID) items[i] = validator.item();
             }
-            return Optional.of(new Item(id, name, link, pool, lastRecall, totalRecalls));
-        } catch (ArrayIndexOutOfBoundsException e) {
-            throw new RuntimeException(Log.errorMsg("ERROR: CSV Malformed"));
+            return new Batch(records[records.length - 1].getRecordNumber(), records, items, outcomes, null);
+        });
+    }
+
+    private static Batch await(Future<Batch> batch) throws InterruptedException {
+        try {
+            return batch.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    // true for a header row to skip, a first row that is neither a header nor starts with an id fails the file
+    private boolean isHeader(CSVRecord record) {
+        try {
+            Integer.parseInt(record.get(0).trim());
+            return false;
         } catch (Exception e) {
-            return Optional.empty();
+            if (isValidHeader(record)) return true;
+            throw new RuntimeException(Log.errorMsg("Invalid CSV Header"));
         }
     }
 
-    private String sanitize(String input){
-        return input.replace("\"","").replace("'","").trim();
+    private boolean isValidHeader(CSVRecord record) {
+        if (record.size() != 6) return false;
+        for (int i = 0; i < 6; i++) {
+            if (record.get(i).trim().isEmpty()) return false;
+        }
+        return true;
     }
 }
@@ -0,0 +1,31 @@
+package ansrs.service;
+
+import ansrs.db.ItemRepository;
+import ansrs.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// ranks inside the database, only the recalled ITEM_IDs ever leave it
+public class DatabaseRecallStrategy implements RecallStrategy {
+
+    private final ItemRepository itemRepository;
+    private final RecallService service;
+    private int consumed = 0;
+
+    public DatabaseRecallStrategy(ItemRepository itemRepository, RecallService service) {
+        this.itemRepository = itemRepository;
+        this.service = service;
+    }
+
+    @Override
+    public List<Integer> recall(int count, RecallService.TieBreaker tieBreaker) {
+        if (count <= 0) return new ArrayList<>();
+        List<Integer> ids = itemRepository.getRecallRanking(
+                service.getMap(), service.getAlpha(), service.getBeta(), service.getGamma(), service.getDate(),
+                tieBreaker == RecallService.TieBreaker.HIGHEST_ID, consumed, count
+        ).orElseThrow(() -> new RuntimeException(Log.errorMsg("Invalid recall attempt")));
+        consumed += ids.size();
+        return ids;
+    }
+}
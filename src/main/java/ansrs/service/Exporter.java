@@ -0,0 +1,213 @@
+package ansrs.service;
+
+import ansrs.data.Group;
+import ansrs.data.Item;
+import ansrs.db.GroupItemRepository;
+import ansrs.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+// writes rows read from a cursor straight out as csv or json lines, nothing is collected on the way so memory
+// stays flat however many rows there are, item csv uses the import's six columns so it can be imported back
+// a file export is written beside its target as <file>.part and only moved into place by finish()
+public class Exporter implements AutoCloseable {
+
+    public enum Format {
+        CSV, JSONL;
+
+        public static Optional<Format> fromName(String name) {
+            if (name == null || name.isBlank()) return Optional.empty();
+            try {
+                return Optional.of(valueOf(name.trim().toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    // chars held before a write reaches the file or the compressor
+    private static final int WRITE_BUFFER_CHARS = 1 << 20;
+    private static final int GZIP_BUFFER_BYTES = 1 << 16;
+
+    private final Writer writer;
+    private final Format format;
+    private final Path target;
+    private final Path part;
+    // one row is built here and handed to the writer whole, through chars so no String is made per row
+    private final StringBuilder line = new StringBuilder(256);
+    private char[] chars = new char[256];
+    private boolean finished = false;
+
+    public Exporter(Path target, Format format, boolean gzip) {
+        this.target = target;
+        this.part = target.resolveSibling(target.getFileName() + ".part");
+        this.format = format;
+        try {
+            OutputStream out = Files.newOutputStream(part);
+            if (gzip) out = new GZIPOutputStream(out, GZIP_BUFFER_BYTES);
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_CHARS);
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to open " + part + "\n" + e.getMessage()));
+        }
+    }
+
+    //for tests only
+    public Exporter(Writer writer, Format format) {
+        this.target = null;
+        this.part = null;
+        this.format = format;
+        this.writer = writer;
+    }
+
+    public long writeItems(Stream<Item> items) {
+        try {
+            if (format == Format.CSV) writer.write("ITEM_ID,ITEM_NAME,ITEM_LINK,ITEM_POOL,ITEM_LAST_RECALL,totalRecalls\n");
+            long rows = 0;
+            for (Item i : (Iterable<Item>) items::iterator) {
+                line.setLength(0);
+                if (format == Format.CSV) {
+                    line.append(i.getItemId()).append(',');
+                    csv(i.getItemName()).append(',');
+                    csv(i.getItemLink()).append(',').append(i.getItemPool()).append(',').append(i.getLastRecall())
+                            .append(',').append(i.getTotalRecalls()).append('\n');
+                } else {
+                    line.append("{\"id\":").append(i.getItemId()).append(",\"name\":");
+                    json(i.getItemName()).append(",\"link\":");
+                    json(i.getItemLink()).append(",\"pool\":\"").append(i.getItemPool()).append("\",\"last_recall\":\"")
+                            .append(i.getLastRecall()).append("\",\"total_recalls\":").append(i.getTotalRecalls()).append("}\n");
+                }
+                emit();
+                rows++;
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to write items\n" + e.getMessage()));
+        }
+    }
+
+    public long writeGroups(Stream<Group> groups) {
+        try {
+            if (format == Format.CSV) writer.write("GROUP_ID,GROUP_NAME,GROUP_LINK,CREATED_AT,UPDATED_AT\n");
+            long rows = 0;
+            for (Group g : (Iterable<Group>) groups::iterator) {
+                line.setLength(0);
+                if (format == Format.CSV) {
+                    line.append(g.getId()).append(',');
+                    csv(g.getName()).append(',');
+                    csv(g.getLink()).append(',').append(g.getCreatedAt()).append(',').append(g.getUpdatedAt()).append('\n');
+                } else {
+                    line.append("{\"id\":").append(g.getId()).append(",\"name\":");
+                    json(g.getName()).append(",\"link\":");
+                    json(g.getLink()).append(",\"created_at\":");
+                    json(g.getCreatedAt() == null ? null : g.getCreatedAt().toString()).append(",\"updated_at\":");
+                    json(g.getUpdatedAt() == null ? null : g.getUpdatedAt().toString()).append("}\n");
+                }
+                emit();
+                rows++;
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to write groups\n" + e.getMessage()));
+        }
+    }
+
+    public long writeMemberships(Stream<GroupItemRepository.Membership> memberships) {
+        try {
+            if (format == Format.CSV) writer.write("GROUP_ID,ITEM_ID\n");
+            long rows = 0;
+            for (GroupItemRepository.Membership m : (Iterable<GroupItemRepository.Membership>) memberships::iterator) {
+                line.setLength(0);
+                if (format == Format.CSV) line.append(m.groupId()).append(',').append(m.itemId()).append('\n');
+                else line.append("{\"group_id\":").append(m.groupId()).append(",\"item_id\":").append(m.itemId()).append("}\n");
+                emit();
+                rows++;
+            }
+            return rows;
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to write group items\n" + e.getMessage()));
+        }
+    }
+
+    // flushes everything written and moves the finished file into place, replacing any file already there
+    public void finish() {
+        try {
+            writer.close();
+            if (part != null) Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to finish export to " + target + "\n" + e.getMessage()));
+        }
+    }
+
+    // an export that did not finish leaves nothing behind
+    @Override
+    public void close() {
+        if (finished) return;
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+        }
+        try {
+            if (part != null) Files.deleteIfExists(part);
+        } catch (IOException e) {
+            Log.warn("Failed to remove partial export " + part);
+        }
+    }
+
+    private void emit() throws IOException {
+        int length = line.length();
+        if (chars.length < length) chars = new char[Math.max(length, chars.length * 2)];
+        line.getChars(0, length, chars, 0);
+        writer.write(chars, 0, length);
+    }
+
+    // a csv field, quoted only when it holds a separator, a quote or a line break, null is left empty
+    private StringBuilder csv(String value) {
+        if (value == null) return line;
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) return line.append(value);
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') line.append('"');
+            line.append(c);
+        }
+        return line.append('"');
+    }
+
+    private StringBuilder json(String value) {
+        if (value == null) return line.append("null");
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> line.append("\\\"");
+                case '\\' -> line.append("\\\\");
+                case '\n' -> line.append("\\n");
+                case '\r' -> line.append("\\r");
+                case '\t' -> line.append("\\t");
+                default -> {
+                    if (c < 0x20) line.append(String.format("\\u%04x", (int) c));
+                    else line.append(c);
+                }
+            }
+        }
+        return line.append('"');
+    }
+}
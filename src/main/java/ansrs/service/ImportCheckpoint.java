@@ -0,0 +1,67 @@
+package ansrs.service;
+
+import ansrs.util.Log;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Optional;
+
+// how far a chunked import of a csv file got, kept beside the file as <csv>.import and moved forward after
+// every committed chunk, it only applies while the file keeps the size and modification time it was taken against
+// a chunk committed just before a crash may not be recorded yet, re-importing it is harmless since
+// --preserve=csv merges and --preserve=db skips rows already present
+public class ImportCheckpoint {
+
+    private final Path source;
+    private final Path path;
+
+    public ImportCheckpoint(Path source) {
+        this.source = source;
+        this.path = source.resolveSibling(source.getFileName() + ".import");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    // csv records already committed, header and invalid rows included, empty when there is no checkpoint
+    // or the file has changed since it was written
+    public Optional<Long> committedRecords() {
+        try {
+            if (!Files.exists(path)) return Optional.empty();
+            String[] parts = Files.readString(path, StandardCharsets.UTF_8).trim().split(" ");
+            if (parts.length != 3) return Optional.empty();
+            if (Long.parseLong(parts[1]) != Files.size(source) || Long.parseLong(parts[2]) != Files.getLastModifiedTime(source).toMillis())
+                return Optional.empty();
+            return Optional.of(Long.parseLong(parts[0]));
+        } catch (IOException | NumberFormatException e) {
+            return Optional.empty();
+        }
+    }
+
+    public void save(long records) {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            String line = records + " " + Files.size(source) + " " + Files.getLastModifiedTime(source).toMillis() + "\n";
+            Files.writeString(tmp, line, StandardCharsets.UTF_8);
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Failed to save import checkpoint " + path + "\n" + e.getMessage()));
+        }
+    }
+
+    public void clear() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            Log.warn("Failed to remove import checkpoint " + path);
+        }
+    }
+}
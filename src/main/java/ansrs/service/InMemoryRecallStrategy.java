@@ -0,0 +1,129 @@
+package ansrs.service;
+
+import ansrs.data.Item;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+// loads the whole table once, rating every item exactly once into scores[i] for itemIds[i]
+// only the score and id of an item are kept, so the items themselves can be streamed past
+public class InMemoryRecallStrategy implements RecallStrategy {
+
+    private double[] scores;
+    private int[] itemIds;
+    private int size;
+
+    public InMemoryRecallStrategy(List<Item> items, ToDoubleFunction<Item> rating) {
+        this(items.stream(), items.size(), rating);
+    }
+
+    public InMemoryRecallStrategy(Stream<Item> items, ToDoubleFunction<Item> rating) {
+        this(items, 64, rating);
+    }
+
+    private InMemoryRecallStrategy(Stream<Item> items, int expected, ToDoubleFunction<Item> rating) {
+        scores = new double[Math.max(expected, 1)];
+        itemIds = new int[scores.length];
+        size = 0;
+        items.forEachOrdered(p -> {
+            if (size == scores.length) {
+                scores = Arrays.copyOf(scores, size * 2);
+                itemIds = Arrays.copyOf(itemIds, size * 2);
+            }
+            scores[size] = rating.applyAsDouble(p);
+            itemIds[size] = p.getItemId();
+            size++;
+        });
+    }
+
+    @Override
+    public List<Integer> recall(int x, RecallService.TieBreaker tieBreaker) {
+        int k = Math.min(Math.max(x, 0), size);
+        if (k == 0) return new ArrayList<>();
+
+        // bounded min-heap of the best k indices seen so far, heap[0] is the weakest of them
+        int[] heap = new int[k];
+        int heapSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (heapSize < k) {
+                heap[heapSize] = i;
+                siftUp(heap, heapSize++, tieBreaker);
+            } else if (ranksBefore(i, heap[0], tieBreaker)) {
+                heap[0] = i;
+                siftDown(heap, heapSize, tieBreaker);
+            }
+        }
+
+        int[] picked = new int[k];
+        for (int n = k - 1; n >= 0; n--) {
+            picked[n] = heap[0];
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, tieBreaker);
+        }
+
+        List<Integer> res = new ArrayList<>(k);
+        for (int idx : picked) res.add(itemIds[idx]);
+        discard(picked);
+        return res;
+    }
+
+    public int getRemainingCount() {
+        return size;
+    }
+
+    private boolean ranksBefore(int a, int b, RecallService.TieBreaker tieBreaker) {
+        int cmp = Double.compare(scores[a], scores[b]);
+        if (cmp != 0) return cmp > 0;
+        return switch (tieBreaker) {
+            case LOWEST_ID -> itemIds[a] != itemIds[b] ? itemIds[a] < itemIds[b] : a < b;
+            case HIGHEST_ID -> itemIds[a] != itemIds[b] ? itemIds[a] > itemIds[b] : a < b;
+            case INSERTION_ORDER -> a < b;
+        };
+    }
+
+    private void siftUp(int[] heap, int pos, RecallService.TieBreaker tieBreaker) {
+        int node = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (!ranksBefore(heap[parent], node, tieBreaker)) break;
+            heap[pos] = heap[parent];
+            pos = parent;
+        }
+        heap[pos] = node;
+    }
+
+    private void siftDown(int[] heap, int heapSize, RecallService.TieBreaker tieBreaker) {
+        int pos = 0;
+        int node = heap[0];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && ranksBefore(heap[child], heap[child + 1], tieBreaker)) child++;
+            if (!ranksBefore(node, heap[child], tieBreaker)) break;
+            heap[pos] = heap[child];
+            pos = child;
+        }
+        heap[pos] = node;
+    }
+
+    // drops recalled items while keeping load order, so a later recall continues where this one stopped
+    private void discard(int[] picked) {
+        int[] sorted = picked.clone();
+        Arrays.sort(sorted);
+        int write = sorted[0];
+        int next = 0;
+        for (int read = sorted[0]; read < size; read++) {
+            if (next < sorted.length && sorted[next] == read) {
+                next++;
+                continue;
+            }
+            scores[write] = scores[read];
+            itemIds[write] = itemIds[read];
+            write++;
+        }
+        size = write;
+    }
+}
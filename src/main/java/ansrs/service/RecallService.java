@@ -2,43 +2,58 @@ package ansrs.service;
 
 import ansrs.data.Item;
 import ansrs.db.ItemRepository;
-import ansrs.util.Log;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.stream.Stream;
 
 public class RecallService {
 
+    // order in which equally rated items are recalled, INSERTION_ORDER follows the order items were loaded in
+    // items load from the database in id order, so there it means lowest ITEM_ID first in either strategy
+    public enum TieBreaker {INSERTION_ORDER, LOWEST_ID, HIGHEST_ID}
+
+    // AUTO ranks in memory for small collections and pushes ranking down to the database past PUSH_DOWN_THRESHOLD items
+    public enum Mode {AUTO, IN_MEMORY, DATABASE}
+
+    public static final long PUSH_DOWN_THRESHOLD = 50_000;
+
     private final Map<Item.Pool, Double> map = Map.of(Item.Pool.H,3.0, Item.Pool.M,2.0, Item.Pool.L,1.0);
-    private PriorityQueue<Item> itemQueue = new PriorityQueue<>((a, b)->{
-        double aRate=getRating(a);
-        double bRate=getRating(b);
-        if (aRate > bRate) return -1;
-        else if (bRate > aRate) return 1;
-        else return 0;
-    });;
+    private final ItemRepository itemRepository;
+    private final RecallStrategy strategy;
+    private TieBreaker tieBreaker = TieBreaker.INSERTION_ORDER;
 
     private Double alpha = 10.0;
     private Double beta = 1.2;
     private Double gamma = 1.0;
     private LocalDate date = LocalDate.now();
     public RecallService(ItemRepository itemRepository){
-        loadQueue(itemRepository);
+        this.itemRepository = itemRepository;
+        this.strategy = createStrategy(itemRepository, Mode.AUTO);
     }
 
     public RecallService(ItemRepository itemRepository, Double alpha, Double beta, Double gamma, LocalDate date){
+        this(itemRepository, alpha, beta, gamma, date, Mode.AUTO);
+    }
+
+    public RecallService(ItemRepository itemRepository, Double alpha, Double beta, Double gamma, LocalDate date, Mode mode){
         this.alpha = alpha;
         this.beta= beta;
         this.gamma = gamma;
         this.date = date;
-        loadQueue(itemRepository);
+        this.itemRepository = itemRepository;
+        this.strategy = createStrategy(itemRepository, mode);
     }
 
-    private void loadQueue(ItemRepository itemRepository){
-        Optional<List<Item>> list = itemRepository.getAllItems();
-        if (list.isEmpty()) throw new RuntimeException(Log.errorMsg("Invalid recall attempt"));
-        for (Item p: list.get()) itemQueue.add(p);
+    private RecallStrategy createStrategy(ItemRepository itemRepository, Mode mode){
+        if (mode == Mode.AUTO) {
+            mode = itemRepository.countItems() > PUSH_DOWN_THRESHOLD ? Mode.DATABASE : Mode.IN_MEMORY;
+        }
+        if (mode == Mode.DATABASE) return new DatabaseRecallStrategy(itemRepository, this);
+        try (Stream<Item> items = itemRepository.streamAllItems()) {
+            return new InMemoryRecallStrategy(items, this::getRating);
+        }
     }
 
     public double getRating(Item p){
@@ -48,21 +63,32 @@ public class RecallService {
     }
 
     public List<Integer> recall(int x){
-        List<Integer> res = new ArrayList<>();
-        while (x-- >0 && !itemQueue.isEmpty()) res.add(itemQueue.poll().getItemId());
-        return res;
+        return strategy.recall(x, tieBreaker);
+    }
+
+    // recomputes every stored recall score in the database, needed after alpha, beta or gamma change
+    public boolean rebuildScoreIndex(){
+        return itemRepository.rebuildRecallScores(map, alpha, beta, gamma, date);
     }
 
     public Map<Item.Pool, Double> getMap() {
         return map;
     }
 
-    public PriorityQueue<Item> getItemQueue() {
-        return itemQueue;
+    public RecallStrategy getStrategy() {
+        return strategy;
+    }
+
+    public TieBreaker getTieBreaker() {
+        return tieBreaker;
+    }
+
+    public void setTieBreaker(TieBreaker tieBreaker) {
+        this.tieBreaker = tieBreaker;
     }
 
-    public void setItemQueue(PriorityQueue<Item> itemQueue) {
-        this.itemQueue = itemQueue;
+    public LocalDate getDate() {
+        return date;
     }
 
     public Double getAlpha() {
@@ -0,0 +1,9 @@
+package ansrs.service;
+
+import java.util.List;
+
+public interface RecallStrategy {
+
+    // returns up to count ITEM_IDs, best rated first, continuing after whatever earlier calls returned
+    List<Integer> recall(int count, RecallService.TieBreaker tieBreaker);
+}
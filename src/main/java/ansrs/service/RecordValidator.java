@@ -0,0 +1,217 @@
+package ansrs.service;
+
+import ansrs.data.Item;
+import org.apache.commons.csv.CSVRecord;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+
+// checks one csv record by scanning its fields where they are, quotes are skipped and surrounding whitespace
+// ignored the way the import always sanitized them, without copying a field or throwing for a bad row
+// the fields of the last valid record are kept for item(), so an instance belongs to one thread
+public final class RecordValidator {
+
+    public enum Outcome {
+        VALID("valid"),
+        MALFORMED("not 6 fields"),
+        BAD_ID("ITEM_ID must be an integer > 0"),
+        BAD_NAME("ITEM_NAME is empty"),
+        BAD_LINK("ITEM_LINK must start with https://"),
+        BAD_POOL("ITEM_POOL must be one of H, M, L"),
+        BAD_DATE("ITEM_LAST_RECALL must be YYYY-MM-DD"),
+        FUTURE_DATE("ITEM_LAST_RECALL is in the future"),
+        BAD_RECALLS("ITEM_TOTAL_RECALLS must be an integer >= 0");
+
+        private final String reason;
+
+        Outcome(String reason) {
+            this.reason = reason;
+        }
+
+        public String reason() {
+            return reason;
+        }
+    }
+
+    private static final int FIELDS = 6;
+    private static final String HTTPS = "https://";
+    // indexed by the pool letter, either case
+    private static final Item.Pool[] POOLS = new Item.Pool[128];
+    // returned by the int scanner for anything that is not an int
+    private static final long NOT_INT = Long.MIN_VALUE;
+
+    static {
+        for (Item.Pool pool : Item.Pool.values()) {
+            char c = pool.name().charAt(0);
+            POOLS[c] = pool;
+            POOLS[Character.toLowerCase(c)] = pool;
+        }
+    }
+
+    private final LocalDate today;
+    private final int todayPacked;
+
+    private CSVRecord record;
+    private int id;
+    private Item.Pool pool;
+    // yyyymmdd, 0 for an empty date which means today
+    private int date;
+    private int recalls;
+
+    public RecordValidator() {
+        this(LocalDate.now());
+    }
+
+    public RecordValidator(LocalDate today) {
+        this.today = today;
+        this.todayPacked = pack(today.getYear(), today.getMonthValue(), today.getDayOfMonth());
+    }
+
+    public Outcome check(CSVRecord record) {
+        this.record = null;
+        if (record.size() != FIELDS) return Outcome.MALFORMED;
+
+        long id = parseInt(record.get(0));
+        if (id == NOT_INT || id <= 0) return Outcome.BAD_ID;
+        Item.Pool pool = parsePool(record.get(3));
+        if (pool == null) return Outcome.BAD_POOL;
+        int date = 0;
+        String recall = record.get(4);
+        if (start(recall) < end(recall)) {
+            date = parseDate(recall);
+            if (date < 0) return Outcome.BAD_DATE;
+            if (date > todayPacked) return Outcome.FUTURE_DATE;
+        }
+        long recalls = 0;
+        String total = record.get(5);
+        if (start(total) < end(total)) {
+            recalls = parseInt(total);
+            if (recalls == NOT_INT || recalls < 0) return Outcome.BAD_RECALLS;
+        }
+        String name = record.get(1);
+        if (start(name) >= end(name)) return Outcome.BAD_NAME;
+        if (!startsWithHttps(record.get(2))) return Outcome.BAD_LINK;
+
+        this.record = record;
+        this.id = (int) id;
+        this.pool = pool;
+        this.date = date;
+        this.recalls = (int) recalls;
+        return Outcome.VALID;
+    }
+
+    // the item of the record the last check passed, name and link are only copied when they need cleaning
+    public Item item() {
+        if (record == null) throw new IllegalStateException("No valid record checked");
+        LocalDate lastRecall = date == 0 ? today : LocalDate.of(date / 10000, date / 100 % 100, date % 100);
+        return new Item(id, clean(record.get(1)), clean(record.get(2)), pool, lastRecall, recalls);
+    }
+
+    private static boolean isQuote(char c) {
+        return c == '"' || c == '\'';
+    }
+
+    // first char that survives sanitizing, quotes dropped then whitespace trimmed
+    private static int start(CharSequence s) {
+        int i = 0;
+        while (i < s.length() && (isQuote(s.charAt(i)) || s.charAt(i) <= ' ')) i++;
+        return i;
+    }
+
+    // one past the last char that survives sanitizing
+    private static int end(CharSequence s) {
+        int i = s.length();
+        while (i > 0 && (isQuote(s.charAt(i - 1)) || s.charAt(i - 1) <= ' ')) i--;
+        return i;
+    }
+
+    // Integer.parseInt of the sanitized field, NOT_INT when it is not one
+    static long parseInt(CharSequence s) {
+        int i = start(s), end = end(s);
+        if (i >= end) return NOT_INT;
+        boolean negative = false;
+        char first = s.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (isQuote(c)) continue;
+            if (c < '0' || c > '9') return NOT_INT;
+            value = value * 10 + (c - '0');
+            digits++;
+            // past the int range either way, stop before the long could overflow
+            if (value > 1L << 31) return NOT_INT;
+        }
+        if (digits == 0) return NOT_INT;
+        value = negative ? -value : value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? NOT_INT : value;
+    }
+
+    static Item.Pool parsePool(CharSequence s) {
+        int i = start(s), end = end(s);
+        Item.Pool pool = null;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (isQuote(c)) continue;
+            if (pool != null || c >= POOLS.length || POOLS[c] == null) return null;
+            pool = POOLS[c];
+        }
+        return pool;
+    }
+
+    // a strict YYYY-MM-DD as yyyymmdd, -1 when it is not a real date
+    static int parseDate(CharSequence s) {
+        int i = start(s), end = end(s);
+        int year = 0, month = 0, day = 0, at = 0;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (isQuote(c)) continue;
+            if (at == 4 || at == 7) {
+                if (c != '-') return -1;
+            } else {
+                if (c < '0' || c > '9') return -1;
+                int d = c - '0';
+                if (at < 4) year = year * 10 + d;
+                else if (at < 7) month = month * 10 + d;
+                else if (at < 10) day = day * 10 + d;
+                else return -1;
+            }
+            at++;
+        }
+        if (at != 10 || month < 1 || month > 12 || day < 1) return -1;
+        if (day > Month.of(month).length(Year.isLeap(year))) return -1;
+        return pack(year, month, day);
+    }
+
+    private static int pack(int year, int month, int day) {
+        return year * 10000 + month * 100 + day;
+    }
+
+    private static boolean startsWithHttps(CharSequence s) {
+        int i = start(s), end = end(s), matched = 0;
+        for (; i < end && matched < HTTPS.length(); i++) {
+            char c = s.charAt(i);
+            if (isQuote(c)) continue;
+            if (c != HTTPS.charAt(matched++)) return false;
+        }
+        return matched == HTTPS.length();
+    }
+
+    // the sanitized field, the field itself when there is nothing to strip
+    private static String clean(String s) {
+        int start = start(s), end = end(s);
+        boolean quoted = false;
+        for (int i = start; i < end && !quoted; i++) quoted = isQuote(s.charAt(i));
+        if (!quoted) return s.substring(start, end);
+        StringBuilder out = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            if (!isQuote(s.charAt(i))) out.append(s.charAt(i));
+        }
+        return out.toString();
+    }
+}
@@ -3,49 +3,39 @@ package ansrs.set;
 import ansrs.data.Item;
 import ansrs.util.Log;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 
-public class CompletedSet {
-    private final Path setPath;
-    private LocalDate setDate;
-    private HashMap<Integer, Pair<Item.Pool, LocalDate>> items;
+public class CompletedSet extends JournaledSet {
+    private final CompletionMap items;
 
     public CompletedSet(Path path) {
-        this.setPath = path;
-        this.items = new HashMap<>();
-        if (!Files.exists(path)) {
-            initSet(setPath, LocalDate.now());
-        } else {
-            loadSet(setPath);
-        }
+        this(path, null);
     }
 
-    private void initSet(Path setPath, LocalDate date) {
-        try (BufferedWriter writer = Files.newBufferedWriter(setPath)) {
-            writer.write(date.toString());
-            writer.newLine();
-            setDate = date;
-            writer.write(String.valueOf(0));
-            writer.newLine();
-        } catch (IOException e) {
-            throw new RuntimeException(Log.errorMsg("Error: CompletedSet Creation Failed"));
-        }
+    // a null format keeps the format of an existing set file, and creates new ones as TEXT
+    public CompletedSet(Path path, SetFormat format) {
+        super(path, "CompletedSet");
+        this.items = new CompletionMap();
+        open(format);
     }
 
-    private void loadSet(Path setPath) {
+    @Override
+    void loadSet(Path setPath) {
+        if (SetFormat.detect(setPath) == SetFormat.BINARY) {
+            loadBinarySet(setPath);
+            return;
+        }
         try {
-            List<String> lines = Files.readAllLines(setPath);
+            List<String> lines = SetFiles.readTextLines(setPath);
             if (lines.size() < 2) throw new RuntimeException(Log.errorMsg("CompletedSet Malformed: Too few lines"));
-            setDate = LocalDate.parse(lines.getFirst());
+            loadSetDate(LocalDate.parse(lines.getFirst()));
             for (int i = 2; i < lines.size(); i++) {
                 String line = lines.get(i).trim();
                 if (!line.isEmpty()) {
@@ -68,49 +58,112 @@ public class CompletedSet {
         }
     }
 
-    public void reloadItem() {
-        try (BufferedWriter writer = Files.newBufferedWriter(setPath)) {
-            writer.write(setDate.toString());
+    private void loadBinarySet(Path setPath) {
+        try {
+            ByteBuffer buffer = SetFiles.mapBinary(setPath);
+            if (buffer.remaining() < SetFormat.HEADER_BYTES
+                    || buffer.getInt() != SetFormat.COMPLETED_MAGIC) throw new RuntimeException(Log.errorMsg("CompletedSet Malformed: Header invalid"));
+            int version = buffer.getInt();
+            if (version < 1 || version > SetFormat.VERSION) throw new RuntimeException(Log.errorMsg("CompletedSet Malformed: Header invalid"));
+            loadSetDate(LocalDate.ofEpochDay(buffer.getLong()));
+            int count = buffer.getInt();
+            if (count < 0 || buffer.remaining() != (long) count * SetFormat.COMPLETED_RECORD_BYTES)
+                throw new RuntimeException(Log.errorMsg("CompletedSet Item Malformed: Not enough data"));
+            for (int i = 0; i < count; i++) {
+                int id = buffer.getInt();
+                byte pool = buffer.get();
+                int epochDay = buffer.getInt();
+                if (pool < 0 || pool > Item.Pool.values().length) throw new RuntimeException(Log.errorMsg("CompletedSet Item Malformed: Pool Value Invalid"));
+                items.putPacked(id, CompletionMap.pack(pool, epochDay));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Error loading set"));
+        }
+    }
+
+    @Override
+    void writeSet(Path file) throws IOException {
+        if (getFormat() == SetFormat.BINARY) {
+            int[] ids = items.sortedIds();
+            ByteBuffer buffer = ByteBuffer.allocate(SetFormat.HEADER_BYTES + ids.length * SetFormat.COMPLETED_RECORD_BYTES);
+            buffer.putInt(SetFormat.COMPLETED_MAGIC).putInt(SetFormat.VERSION).putLong(getSetDate().toEpochDay()).putInt(ids.length);
+            for (int id : ids) {
+                long packed = items.getPacked(id);
+                buffer.putInt(id).put(CompletionMap.poolCode(packed)).putInt(CompletionMap.epochDay(packed));
+            }
+            buffer.flip();
+            SetFiles.write(file, buffer);
+            return;
+        }
+        SetFiles.write(file, writer -> {
+            writer.write(getSetDate().toString());
             writer.newLine();
             writer.write(String.valueOf(items.size()));
             writer.newLine();
             for (Map.Entry<Integer, Pair<Item.Pool, LocalDate>> e : items.entrySet()) {
-                if (e.getValue()==null || e.getValue().getLast_recall()==null) throw new RuntimeException(Log.errorMsg("CompletedSet Object Malformed"));
                 String pid = String.valueOf(e.getKey());
                 String pool = (e.getValue().getPool()==null) ? "null" :e.getValue().getPool().name();
                 String date = e.getValue().getLast_recall().toString();
                 writer.write(pid + " " + pool + " " + date);
                 writer.newLine();
             }
-        } catch (IOException e) {
-            throw new RuntimeException(Log.errorMsg(e.getMessage()));
+        });
+    }
+
+    @Override
+    void apply(String[] record) {
+        switch (record[0]) {
+            case "+" -> items.put(Integer.parseInt(record[1]),
+                    new Pair<>(record[2].equals("null") ? null : Item.Pool.valueOf(record[2]), LocalDate.parse(record[3])));
+            case "-" -> items.remove(Integer.parseInt(record[1]));
+            case "D" -> loadSetDate(LocalDate.parse(record[1]));
+            case "C" -> items.clear();
+            default -> throw new IllegalArgumentException();
         }
     }
 
+    @Override
+    void clearContents() {
+        items.clear();
+    }
+
+    private static String addRecord(Integer itemId, Pair<Item.Pool, LocalDate> value) {
+        return "+ " + itemId + " " + (value.getPool() == null ? "null" : value.getPool().name()) + " " + value.getLast_recall();
+    }
+
+    public void reloadItem() {
+        snapshot();
+    }
+
     public boolean addItem(Integer itemId, Item.Pool pool) {
+        refresh();
         if (items.containsKey(itemId)) {
             return false;
         } else {
-            items.put(itemId, new Pair<>(pool, LocalDate.now()));
-            reloadItem();
+            Pair<Item.Pool, LocalDate> value = new Pair<>(pool, LocalDate.now());
+            items.put(itemId, value);
+            record(addRecord(itemId, value));
             return true;
         }
     }
 
     public boolean addItem(Integer itemId, Item.Pool pool, LocalDate date) {
+        refresh();
         if (items.containsKey(itemId)) {
             return false;
         } else {
-            items.put(itemId, new Pair<>(pool, date));
-            reloadItem();
+            Pair<Item.Pool, LocalDate> value = new Pair<>(pool, date);
+            items.put(itemId, value);
+            record(addRecord(itemId, value));
             return true;
         }
     }
 
     public boolean removeItem(Integer itemID) {
+        refresh();
         if (!items.containsKey(itemID)) return false;
         items.remove(itemID);
-        reloadItem();
+        record("- " + itemID);
         return true;
     }
 
@@ -120,31 +173,19 @@ public class CompletedSet {
 
     public boolean clearSet(){
         items.clear();
+        stage("C");
         reloadItem();
         return items.isEmpty();
     }
 
-    public Path getSetPath() {
-        return setPath;
-    }
-
-    public LocalDate getSetDate() {
-        return setDate;
-    }
-
-    public HashMap<Integer, Pair<Item.Pool, LocalDate>> getItems() {
+    public Map<Integer, Pair<Item.Pool, LocalDate>> getItems() {
         return items;
     }
 
-    public void setSetDate(LocalDate setDate) {
-        this.setDate = setDate;
-        reloadItem();
-    }
-
     @Override
     public String toString() {
         return "CompletedSet{" +
-                "setDate=" + setDate +
+                "setDate=" + getSetDate() +
                 ", itemIds=" + items +
                 '}';
     }
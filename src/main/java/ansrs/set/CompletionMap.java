@@ -0,0 +1,132 @@
+package ansrs.set;
+
+import ansrs.data.Item;
+import ansrs.util.Log;
+
+import java.time.LocalDate;
+import java.util.*;
+
+// CompletedSet entries packed into a primitive table, pool ordinal + 1 (0 for null) in the high word, epoch day in the low word
+// Pair values are only materialised when read
+class CompletionMap extends AbstractMap<Integer, CompletedSet.Pair<Item.Pool, LocalDate>> {
+
+    private static final Item.Pool[] POOLS = Item.Pool.values();
+
+    private final IntTable table = new IntTable(16);
+
+    static long pack(Item.Pool pool, LocalDate date) {
+        return pack((byte) (pool == null ? 0 : pool.ordinal() + 1), (int) date.toEpochDay());
+    }
+
+    static long pack(byte poolCode, int epochDay) {
+        return ((long) poolCode << 32) | (epochDay & 0xFFFFFFFFL);
+    }
+
+    static byte poolCode(long packed) {
+        return (byte) (packed >>> 32);
+    }
+
+    static int epochDay(long packed) {
+        return (int) packed;
+    }
+
+    static Item.Pool poolOf(byte poolCode) {
+        return poolCode == 0 ? null : POOLS[poolCode - 1];
+    }
+
+    private static CompletedSet.Pair<Item.Pool, LocalDate> unpack(long packed) {
+        return new CompletedSet.Pair<>(poolOf(poolCode(packed)), LocalDate.ofEpochDay(epochDay(packed)));
+    }
+
+    void putPacked(int id, long packed) {
+        table.put(id, packed);
+    }
+
+    // ids in ascending order with their packed values, for the binary writer
+    int[] sortedIds() {
+        int[] ids = table.keysToArray();
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    long getPacked(int id) {
+        return table.get(id, 0L);
+    }
+
+    @Override
+    public CompletedSet.Pair<Item.Pool, LocalDate> get(Object key) {
+        if (!(key instanceof Integer id)) return null;
+        int slot = table.slotOf(id);
+        return slot < 0 ? null : unpack(table.valueAt(slot));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer id && table.containsKey(id);
+    }
+
+    @Override
+    public CompletedSet.Pair<Item.Pool, LocalDate> put(Integer key, CompletedSet.Pair<Item.Pool, LocalDate> value) {
+        if (value == null || value.getLast_recall() == null) throw new RuntimeException(Log.errorMsg("CompletedSet Object Malformed"));
+        CompletedSet.Pair<Item.Pool, LocalDate> previous = get(key);
+        table.put(key, pack(value.getPool(), value.getLast_recall()));
+        return previous;
+    }
+
+    @Override
+    public CompletedSet.Pair<Item.Pool, LocalDate> remove(Object key) {
+        if (!(key instanceof Integer id)) return null;
+        int slot = table.slotOf(id);
+        if (slot < 0) return null;
+        CompletedSet.Pair<Item.Pool, LocalDate> previous = unpack(table.valueAt(slot));
+        table.removeAt(slot);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        table.clear();
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public Set<Entry<Integer, CompletedSet.Pair<Item.Pool, LocalDate>>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public int size() {
+                return table.size();
+            }
+
+            @Override
+            public Iterator<Entry<Integer, CompletedSet.Pair<Item.Pool, LocalDate>>> iterator() {
+                return new Iterator<>() {
+                    private int next = table.nextSlot(0);
+                    private int last = -1;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < table.capacity();
+                    }
+
+                    @Override
+                    public Entry<Integer, CompletedSet.Pair<Item.Pool, LocalDate>> next() {
+                        if (!hasNext()) throw new NoSuchElementException();
+                        last = next;
+                        next = table.nextSlot(next + 1);
+                        return new SimpleImmutableEntry<>(table.keyAt(last), unpack(table.valueAt(last)));
+                    }
+
+                    @Override
+                    public void remove() {
+                        if (last < 0 || !table.isFull(last)) throw new IllegalStateException();
+                        table.removeAt(last);
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package ansrs.set;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Set<Integer> over primitive int storage, avoids an Integer and a HashMap node per member
+public class IntHashSet extends AbstractSet<Integer> {
+
+    private final IntTable table;
+
+    public IntHashSet() {
+        this(16);
+    }
+
+    public IntHashSet(int expected) {
+        this.table = new IntTable(expected);
+    }
+
+    public boolean containsInt(int id) {
+        return table.containsKey(id);
+    }
+
+    public boolean addInt(int id) {
+        return table.put(id, 0L);
+    }
+
+    public boolean removeInt(int id) {
+        return table.remove(id);
+    }
+
+    public int[] toIntArray() {
+        return table.keysToArray();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Integer i && table.containsKey(i);
+    }
+
+    @Override
+    public boolean add(Integer id) {
+        return table.put(id, 0L);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Integer i && table.remove(i);
+    }
+
+    @Override
+    public void clear() {
+        table.clear();
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<>() {
+            private int next = table.nextSlot(0);
+            private int last = -1;
+
+            @Override
+            public boolean hasNext() {
+                return next < table.capacity();
+            }
+
+            @Override
+            public Integer next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                last = next;
+                next = table.nextSlot(next + 1);
+                return table.keyAt(last);
+            }
+
+            @Override
+            public void remove() {
+                if (last < 0 || !table.isFull(last)) throw new IllegalStateException();
+                table.removeAt(last);
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package ansrs.set;
+
+import java.util.Arrays;
+
+// open addressing int -> long table with linear probing, the primitive storage behind IntHashSet and CompletionMap
+// removed slots are tombstoned rather than shifted so iterators stay valid across removals
+class IntTable {
+    private static final byte FREE = 0, FULL = 1, DELETED = 2;
+
+    private int[] keys;
+    private long[] values;
+    private byte[] states;
+    private int size = 0;
+    private int used = 0;
+
+    IntTable(int expected) {
+        allocate(capacityFor(expected));
+    }
+
+    private static int capacityFor(int expected) {
+        int cap = 16;
+        while (cap * 3L / 4 < expected) cap <<= 1;
+        return cap;
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new long[capacity];
+        states = new byte[capacity];
+        size = 0;
+        used = 0;
+    }
+
+    // same spread as HashMap, so small ids keep their natural iteration order
+    private int indexFor(int key) {
+        return (key ^ (key >>> 16)) & (keys.length - 1);
+    }
+
+    int slotOf(int key) {
+        int mask = keys.length - 1;
+        for (int i = indexFor(key); states[i] != FREE; i = (i + 1) & mask) {
+            if (states[i] == FULL && keys[i] == key) return i;
+        }
+        return -1;
+    }
+
+    boolean containsKey(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    long get(int key, long missing) {
+        int slot = slotOf(key);
+        return slot < 0 ? missing : values[slot];
+    }
+
+    // returns true when the key was not present before
+    boolean put(int key, long value) {
+        int slot = slotOf(key);
+        if (slot >= 0) {
+            values[slot] = value;
+            return false;
+        }
+        if ((used + 1) * 4L > keys.length * 3L) rehash(size + 1);
+        int mask = keys.length - 1;
+        int i = indexFor(key);
+        while (states[i] == FULL) i = (i + 1) & mask;
+        if (states[i] == FREE) used++;
+        keys[i] = key;
+        values[i] = value;
+        states[i] = FULL;
+        size++;
+        return true;
+    }
+
+    boolean remove(int key) {
+        int slot = slotOf(key);
+        if (slot < 0) return false;
+        removeAt(slot);
+        return true;
+    }
+
+    void removeAt(int slot) {
+        states[slot] = DELETED;
+        size--;
+    }
+
+    private void rehash(int expected) {
+        int[] oldKeys = keys;
+        long[] oldValues = values;
+        byte[] oldStates = states;
+        allocate(capacityFor(expected) * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldStates[i] == FULL) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(states, FREE);
+        size = 0;
+        used = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return keys.length;
+    }
+
+    boolean isFull(int slot) {
+        return states[slot] == FULL;
+    }
+
+    int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    long valueAt(int slot) {
+        return values[slot];
+    }
+
+    // next occupied slot at or after from, capacity() once exhausted
+    int nextSlot(int from) {
+        while (from < keys.length && states[from] != FULL) from++;
+        return from;
+    }
+
+    int[] keysToArray() {
+        int[] res = new int[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (states[i] == FULL) res[n++] = keys[i];
+        }
+        return res;
+    }
+}
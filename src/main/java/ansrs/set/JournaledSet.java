@@ -0,0 +1,197 @@
+package ansrs.set;
+
+import ansrs.util.Log;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// what WorkingSet and CompletedSet share, a set file with a journal of the records written since, both guarded by
+// SetLock and kept in step with other processes through SetFiles.Stamp, the subclasses hold the contents and
+// turn them into files and records
+abstract class JournaledSet implements AutoCloseable {
+    private final Path setPath;
+    private final String name;
+    private final SetJournal journal;
+    private final SetLock lock;
+    // records applied in memory but not yet persisted, re-applied on top of whatever another process wrote meanwhile
+    private final List<String> pending = new ArrayList<>();
+    private SetFiles.Stamp stamp;
+    private SetFormat format;
+    private LocalDate setDate;
+    private SetTransaction batch;
+
+    JournaledSet(Path path, String name) {
+        this.setPath = path;
+        this.name = name;
+        this.journal = new SetJournal(path);
+        this.lock = new SetLock(path);
+    }
+
+    // fills the set from disk, called by the subclass constructor once its contents are allocated,
+    // a null format keeps the format of an existing set file, and creates new ones as TEXT
+    final void open(SetFormat format) {
+        this.format = (format == null) ? SetFormat.TEXT : format;
+        if (!Files.exists(setPath) && !Files.exists(SetFiles.previous(setPath))) {
+            try (SetLock.Held held = lock.exclusive()) {
+                if (!Files.exists(setPath) && !Files.exists(SetFiles.previous(setPath))) initSet(LocalDate.now());
+            }
+        }
+        Path source;
+        SetFormat onDisk;
+        try (SetLock.Held held = lock.shared()) {
+            source = loadWithFallback();
+            onDisk = SetFormat.detect(source);
+            replayJournal(source);
+            stamp = SetFiles.stamp(setPath, journal.getJournalPath());
+        }
+        this.format = (format == null) ? onDisk : format;
+        if (this.format != onDisk || !source.equals(setPath)) sync(true);
+    }
+
+    // loads the contents of one set file over the current ones, setting the set date
+    abstract void loadSet(Path file);
+
+    // writes the contents and set date in the current format to file
+    abstract void writeSet(Path file) throws IOException;
+
+    // applies one journal record to the contents
+    abstract void apply(String[] record);
+
+    // empties the contents
+    abstract void clearContents();
+
+    // the file the set was loaded from, see SetFiles.loadWithFallback
+    private Path loadWithFallback() {
+        return SetFiles.loadWithFallback(setPath, name, this::loadSet, this::clearContents);
+    }
+
+    private void initSet(LocalDate date) {
+        setDate = date;
+        try {
+            journal.compact(setPath, this::writeSet);
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Error Creating " + name));
+        }
+    }
+
+    private void replayJournal(Path source) {
+        for (String[] record : journal.replay(source)) {
+            try {
+                apply(record);
+            } catch (RuntimeException e) {
+                throw new RuntimeException(Log.errorMsg(name + " Journal Malformed"));
+            }
+        }
+    }
+
+    // inside a batch nothing is written until the batch commits
+    final void record(String entry) {
+        pending.add(entry);
+        if (batch == null) sync(false);
+    }
+
+    // queues a record for the next snapshot without writing it
+    final void stage(String entry) {
+        pending.add(entry);
+    }
+
+    // persists pending records under the exclusive lock, appending them to the journal,
+    // or rewriting the set file when asked to or once the journal grows too long
+    private void sync(boolean snapshot) {
+        try (SetLock.Held held = lock.exclusive()) {
+            catchUp();
+            if (snapshot || journal.needsCompaction(pending.size())) {
+                journal.compact(setPath, this::writeSet);
+            } else {
+                journal.append(setPath, pending);
+            }
+            pending.clear();
+            stamp = SetFiles.stamp(setPath, journal.getJournalPath());
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Error Updating " + name));
+        }
+    }
+
+    // rewrites the set file with everything pending, outside a batch
+    final void snapshot() {
+        if (batch != null) return;
+        sync(true);
+    }
+
+    // picks up writes from other processes before a mutation decides anything from the in-memory state,
+    // inside a batch the state stays as it was when the batch began
+    public void refresh() {
+        if (batch != null || SetFiles.stamp(setPath, journal.getJournalPath()).equals(stamp)) return;
+        try (SetLock.Held held = lock.shared()) {
+            catchUp();
+            stamp = SetFiles.stamp(setPath, journal.getJournalPath());
+        }
+    }
+
+    private void catchUp() {
+        journal.catchUp(setPath, stamp, this::reload, pending, this::apply);
+    }
+
+    // the set as it is on disk, its file with the journal replayed over it
+    private void reload() {
+        clearContents();
+        replayJournal(loadWithFallback());
+    }
+
+    // mutations made through the returned transaction are flushed with a single write on commit,
+    // a batch begun while another is open joins the outer one
+    public SetTransaction beginBatch() {
+        if (batch != null) return SetTransaction.joined();
+        refresh();
+        batch = new SetTransaction(this::commitBatch, this::rollbackBatch);
+        return batch;
+    }
+
+    private void commitBatch() {
+        batch = null;
+        snapshot();
+    }
+
+    // nothing was written during the batch, so the set on disk is the state to return to
+    private void rollbackBatch() {
+        batch = null;
+        pending.clear();
+        try (SetLock.Held held = lock.shared()) {
+            reload();
+            stamp = SetFiles.stamp(setPath, journal.getJournalPath());
+        }
+    }
+
+    public Path getSetPath() {
+        return setPath;
+    }
+
+    public SetFormat getFormat() {
+        return format;
+    }
+
+    public LocalDate getSetDate() {
+        return setDate;
+    }
+
+    // for loadSet and apply, which read the date from disk, setSetDate records the change
+    final void loadSetDate(LocalDate setDate) {
+        this.setDate = setDate;
+    }
+
+    public void setSetDate(LocalDate setDate) {
+        this.setDate = setDate;
+        record("D " + setDate);
+    }
+
+    // folds any pending journal records into the set file, called on clean shutdown
+    @Override
+    public void close() {
+        if (batch != null) batch.close();
+        if (journal.size() > 0) snapshot();
+    }
+}
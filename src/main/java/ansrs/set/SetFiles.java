@@ -0,0 +1,160 @@
+package ansrs.set;
+
+import ansrs.util.Log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// every set write goes to <set>.tmp with a CRC32 trailer, is forced to disk, and then renamed over the set file,
+// the generation it replaces is kept as <set>.prev to recover from when the current one fails its checksum
+// the two steps are separate so SetJournal.compact can seal the journal between them
+class SetFiles {
+
+    static final String CRC_PREFIX = "#CRC32 ";
+
+    interface Content {
+        void write(BufferedWriter writer) throws IOException;
+    }
+
+    // identifies one state of a set file and its journal on disk, atomic renames change the file key and
+    // journal appends change the journal length, so a differing stamp means another process wrote the set
+    record Stamp(Object fileKey, long modifiedNanos, long size, long journalSize) {}
+
+    static Stamp stamp(Path path, Path journalPath) {
+        long journalSize;
+        try {
+            journalSize = Files.exists(journalPath) ? Files.size(journalPath) : -1;
+        } catch (IOException e) {
+            journalSize = -1;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            return new Stamp(attributes.fileKey(), attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.size(), journalSize);
+        } catch (IOException e) {
+            return new Stamp(null, -1, -1, journalSize);
+        }
+    }
+
+    // CRC32 of every byte of the file, the journal header binds a journal to the set file it was started on
+    static long checksum(Path path) throws IOException {
+        CRC32 crc = new CRC32();
+        try (CheckedInputStream in = new CheckedInputStream(Files.newInputStream(path), crc)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return crc.getValue();
+    }
+
+    static Path previous(Path path) {
+        return path.resolveSibling(path.getFileName() + ".prev");
+    }
+
+    // loads the set file, falling back to the previous generation when it is missing or fails its checksum,
+    // reset empties whatever the failed load left behind and the unreadable file is kept aside as <set>.corrupt,
+    // returns the file the set was loaded from
+    static Path loadWithFallback(Path path, String name, Consumer<Path> load, Runnable reset) {
+        try {
+            load.accept(path);
+            return path;
+        } catch (RuntimeException e) {
+            Path previous = previous(path);
+            if (!Files.exists(previous)) throw e;
+            Log.warn(name + " file unreadable, recovering from " + previous.getFileName());
+            reset.run();
+            load.accept(previous);
+            try {
+                if (Files.exists(path)) Files.move(path, path.resolveSibling(path.getFileName() + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+            } catch (NoSuchFileException ignored) {
+                // moved aside by another process recovering at the same time
+            } catch (IOException ex) {
+                throw new RuntimeException(Log.errorMsg("Error recovering set"));
+            }
+            return previous;
+        }
+    }
+
+    static Path temporary(Path path) {
+        return path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    // text sets end with a "#CRC32 <hex>" line covering every byte before it
+    static void write(Path file, Content content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file.toFile())) {
+            CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(checked, StandardCharsets.UTF_8));
+            content.write(writer);
+            writer.flush();
+            out.write((CRC_PREFIX + Long.toHexString(checked.getChecksum().getValue()) + "\n").getBytes(StandardCharsets.UTF_8));
+            out.getChannel().force(true);
+        }
+    }
+
+    // binary sets end with the 4 byte CRC32 of every byte before it
+    static void write(Path file, ByteBuffer content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content.duplicate());
+        ByteBuffer trailer = ByteBuffer.allocate(4).putInt((int) crc.getValue()).flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (content.hasRemaining()) channel.write(content);
+            while (trailer.hasRemaining()) channel.write(trailer);
+            channel.force(true);
+        }
+    }
+
+    // moves a new generation written to tmp over the set file, keeping the one it replaces as <set>.prev
+    static void replace(Path tmp, Path path) throws IOException {
+        if (Files.exists(path)) Files.move(path, previous(path), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // lines of a text set with the trailer verified and removed, sets written before checksums were added have none
+    static List<String> readTextLines(Path path) throws IOException {
+        byte[] bytes = Files.readAllBytes(path);
+        int end = bytes.length;
+        if (end > 0 && bytes[end - 1] == '\n') end--;
+        int start = end;
+        while (start > 0 && bytes[start - 1] != '\n') start--;
+        String last = new String(bytes, start, end - start, StandardCharsets.UTF_8).trim();
+        if (last.startsWith(CRC_PREFIX)) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, start);
+            long expected;
+            try {
+                expected = Long.parseLong(last.substring(CRC_PREFIX.length()).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new RuntimeException(Log.errorMsg("Set File Checksum Malformed"));
+            }
+            if (crc.getValue() != expected) throw new RuntimeException(Log.errorMsg("Set File Checksum Mismatch"));
+            bytes = Arrays.copyOf(bytes, start);
+        }
+        return new String(bytes, StandardCharsets.UTF_8).lines().toList();
+    }
+
+    // maps a binary set, verifying the trailer of version 2 files and leaving it out of the returned buffer
+    static ByteBuffer mapBinary(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < SetFormat.HEADER_BYTES || buffer.getInt(4) < SetFormat.CHECKSUM_VERSION) return buffer;
+            int length = buffer.limit() - 4;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(0, length));
+            if ((int) crc.getValue() != buffer.getInt(length)) throw new RuntimeException(Log.errorMsg("Set File Checksum Mismatch"));
+            return buffer.slice(0, length);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package ansrs.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// on-disk layout of a set file, the format of an existing file is detected from its first bytes
+// BINARY: int magic, int version, long setDate epoch day, int count, then
+//   WorkingSet:   count ascending int ids
+//   CompletedSet: count records of int id, byte pool (0 null, 1 H, 2 M, 3 L), int last recall epoch day, ascending by id
+// followed, from version 2, by the CRC32 of everything before it
+public enum SetFormat {
+    TEXT, BINARY;
+
+    static final int WORKING_MAGIC = 0x414E5357;   // "ANSW"
+    static final int COMPLETED_MAGIC = 0x414E5343; // "ANSC"
+    static final int VERSION = 2;
+    static final int CHECKSUM_VERSION = 2;
+    static final int HEADER_BYTES = 20;
+    static final int COMPLETED_RECORD_BYTES = 9;
+
+    static SetFormat detect(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) ;
+            if (magic.hasRemaining()) return TEXT;
+            int m = magic.flip().getInt();
+            return (m == WORKING_MAGIC || m == COMPLETED_MAGIC) ? BINARY : TEXT;
+        } catch (IOException e) {
+            return TEXT;
+        }
+    }
+}
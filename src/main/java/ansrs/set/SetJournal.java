@@ -0,0 +1,157 @@
+package ansrs.set;
+
+import ansrs.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+// append-only log of set mutations kept next to the set file, e.g. working.set.journal
+// records are single lines of space separated fields, after a "#BASE <hex>" header holding the checksum of the set
+// file the journal was started on, a journal whose base is not the file the set loaded from is skipped
+// compaction appends "#SEALED <hex>" with the checksum of the new set file before renaming it in and deleting the
+// journal, a crash in between leaves a journal sealed by the file on disk, which already holds its records
+class SetJournal {
+
+    // records past this count are folded back into the set file
+    static final int COMPACT_THRESHOLD = 1024;
+    static final String BASE_PREFIX = "#BASE ";
+    static final String SEALED_PREFIX = "#SEALED ";
+
+    interface Snapshot {
+        void write(Path file) throws IOException;
+    }
+
+    private final Path setPath;
+    private final Path journalPath;
+    private int records = 0;
+    // whether the journal on disk belongs to the loaded set file, appends start a new one with a header otherwise
+    private boolean bound = false;
+
+    SetJournal(Path setPath) {
+        this.setPath = setPath;
+        this.journalPath = setPath.resolveSibling(setPath.getFileName() + ".journal");
+    }
+
+    // records to apply over base, the set file just loaded, none when the journal was started on another one
+    // or compacted into it, journals written before the header was added have none and are replayed as they are
+    List<String[]> replay(Path base) {
+        List<String[]> res = new ArrayList<>();
+        records = 0;
+        bound = false;
+        if (!Files.exists(journalPath)) return res;
+        try {
+            String[] split = Files.readString(journalPath, StandardCharsets.UTF_8).split("\n", -1);
+            // the last element is either empty or a record torn by a crash mid-append, both are dropped
+            List<String> lines = Arrays.asList(split).subList(0, split.length - 1);
+            String checksum = Long.toHexString(SetFiles.checksum(base));
+            // a seal only counts as the last line, records after it mean the compaction it began never finished
+            if (!lines.isEmpty() && lines.getLast().equals(SEALED_PREFIX + checksum)) return res;
+            boolean based = !lines.isEmpty() && lines.getFirst().startsWith(BASE_PREFIX);
+            // a set recovered from <set>.prev keeps its journal only when it was started on that generation, one
+            // without a header cannot show it was, its records are set aside with the unreadable set file
+            if (!base.equals(setPath) && !(based && lines.getFirst().equals(BASE_PREFIX + checksum))) {
+                quarantine(base);
+                return res;
+            }
+            if (based && !lines.getFirst().equals(BASE_PREFIX + checksum)) {
+                Log.warn(journalPath.getFileName() + " was not written against " + base.getFileName() + ", skipping it");
+                return res;
+            }
+            for (String line : lines) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) res.add(line.split(" "));
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Error loading set journal"));
+        }
+        records = res.size();
+        bound = true;
+        return res;
+    }
+
+    private void quarantine(Path base) throws IOException {
+        Path aside = journalPath.resolveSibling(journalPath.getFileName() + ".corrupt");
+        try {
+            Files.move(journalPath, aside, StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException ignored) {
+            // moved aside by another process recovering at the same time
+        }
+        Log.warn(journalPath.getFileName() + " belongs to the unreadable " + setPath.getFileName() + ", its records are not applied over "
+                + base.getFileName() + " and are kept in " + aside.getFileName());
+    }
+
+    // another process wrote the set since stamp was taken, so reload brings it back to the set file with this
+    // journal replayed over it and the records not yet persisted are redone on top
+    void catchUp(Path setPath, SetFiles.Stamp stamp, Runnable reload, List<String> pending, Consumer<String[]> apply) {
+        if (SetFiles.stamp(setPath, journalPath).equals(stamp)) return;
+        reload.run();
+        for (String record : pending) apply.accept(record.split(" "));
+    }
+
+    // setPath is the set file the records apply over, a journal not bound to it is replaced by a new one
+    void append(Path setPath, List<String> newRecords) {
+        if (newRecords.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        try {
+            if (!bound) sb.append(BASE_PREFIX).append(Long.toHexString(SetFiles.checksum(setPath))).append('\n');
+            for (String record : newRecords) sb.append(record).append('\n');
+            if (bound) Files.writeString(journalPath, sb, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            else Files.writeString(journalPath, sb, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Error Updating Set Journal"));
+        }
+        if (!bound) records = 0;
+        records += newRecords.size();
+        bound = true;
+    }
+
+    boolean needsCompaction(int incoming) {
+        return records + incoming > COMPACT_THRESHOLD;
+    }
+
+    // writes a new generation of the set with snapshot and folds the journal into it, the journal is sealed with the
+    // new file's checksum while both are still on disk, so a crash before it is deleted is not replayed twice
+    void compact(Path setPath, Snapshot snapshot) throws IOException {
+        Path tmp = SetFiles.temporary(setPath);
+        snapshot.write(tmp);
+        if (Files.exists(journalPath)) {
+            byte[] seal = (SEALED_PREFIX + Long.toHexString(SetFiles.checksum(tmp)) + "\n").getBytes(StandardCharsets.UTF_8);
+            try (FileChannel channel = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                ByteBuffer buffer = ByteBuffer.wrap(seal);
+                while (buffer.hasRemaining()) channel.write(buffer);
+                channel.force(true);
+            }
+        }
+        SetFiles.replace(tmp, setPath);
+        clear();
+    }
+
+    void clear() {
+        try {
+            Files.deleteIfExists(journalPath);
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Error Clearing Set Journal"));
+        }
+        records = 0;
+        bound = false;
+    }
+
+    int size() {
+        return records;
+    }
+
+    Path getJournalPath() {
+        return journalPath;
+    }
+}
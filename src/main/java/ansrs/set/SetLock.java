@@ -0,0 +1,102 @@
+package ansrs.set;
+
+import ansrs.util.Log;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// cross-process lock on <set>.lock, shared while a set is read and exclusive while it is written,
+// held only for the duration of a single load or persist, never across a whole command
+class SetLock {
+
+    static final long TIMEOUT_MILLIS = 10_000;
+    private static final long MAX_BACKOFF_MILLIS = 50;
+
+    private final Path lockPath;
+    private final long timeoutMillis;
+
+    SetLock(Path setPath) {
+        this(setPath, TIMEOUT_MILLIS);
+    }
+
+    SetLock(Path setPath, long timeoutMillis) {
+        this.lockPath = setPath.resolveSibling(setPath.getFileName() + ".lock");
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    Held shared() {
+        return acquire(true);
+    }
+
+    Held exclusive() {
+        return acquire(false);
+    }
+
+    private Held acquire(boolean shared) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long backoff = 1;
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            while (true) {
+                try {
+                    FileLock lock = channel.tryLock(0, Long.MAX_VALUE, shared);
+                    if (lock != null) {
+                        Held held = new Held(channel, lock);
+                        channel = null;
+                        return held;
+                    }
+                } catch (OverlappingFileLockException ignored) {
+                    // held by another set object in this process, wait for it like any other holder
+                }
+                if (System.currentTimeMillis() >= deadline)
+                    throw new RuntimeException(Log.errorMsg("Timed out after " + timeoutMillis + "ms waiting for "
+                            + lockPath.getFileName() + ", another ansrs process is using the set"));
+                Thread.sleep(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Error locking " + lockPath.getFileName()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(Log.errorMsg("Interrupted waiting for " + lockPath.getFileName()));
+        } finally {
+            // every way out but a held lock gives the channel back
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // already failing, the error above is the one to report
+                }
+            }
+        }
+    }
+
+    Path getLockPath() {
+        return lockPath;
+    }
+
+    static final class Held implements AutoCloseable {
+        private final FileChannel channel;
+        private final FileLock lock;
+
+        private Held(FileChannel channel, FileLock lock) {
+            this.channel = channel;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() {
+            try {
+                lock.release();
+                channel.close();
+            } catch (IOException e) {
+                throw new RuntimeException(Log.errorMsg("Error releasing set lock"));
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package ansrs.set;
+
+// buffers set mutations in memory until commit(), which writes the set file once,
+// closing without a commit discards the buffered mutations by reloading the set from disk
+public class SetTransaction implements AutoCloseable {
+
+    private final Runnable flush;
+    private final Runnable discard;
+    private boolean finished = false;
+
+    SetTransaction(Runnable flush, Runnable discard) {
+        this.flush = flush;
+        this.discard = discard;
+    }
+
+    // handed out when a batch is already open on the set, the outer transaction decides the outcome
+    static SetTransaction joined() {
+        return new SetTransaction(() -> {}, () -> {});
+    }
+
+    public void commit() {
+        if (finished) return;
+        finished = true;
+        flush.run();
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    @Override
+    public void close() {
+        if (finished) return;
+        finished = true;
+        discard.run();
+    }
+}
@@ -2,48 +2,39 @@ package ansrs.set;
 
 import ansrs.util.Log;
 
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.time.LocalDate;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
 
-public class WorkingSet {
-    private final Path setPath;
-    private LocalDate setDate;
-    public Set<Integer> itemIds;
+public class WorkingSet extends JournaledSet {
+    public final IntHashSet itemIds;
 
     public WorkingSet(Path path) {
-        this.setPath = path;
-        this.itemIds = new HashSet<>();
-        if (!Files.exists(path)) {
-            initSet(setPath, LocalDate.now());
-        } else {
-            loadSet(setPath);
-        }
+        this(path, null);
     }
 
-    private void initSet(Path setPath, LocalDate date) {
-        try (BufferedWriter writer = Files.newBufferedWriter(setPath)) {
-            writer.write(date.toString());
-            setDate = date;
-            writer.newLine();
-            writer.write(String.valueOf(0));
-            writer.newLine();
-        } catch (IOException e) {
-            throw new RuntimeException(Log.errorMsg("Error Creating Set"));
-        }
+    // a null format keeps the format of an existing set file, and creates new ones as TEXT
+    public WorkingSet(Path path, SetFormat format) {
+        super(path, "Set");
+        this.itemIds = new IntHashSet();
+        open(format);
     }
 
-    private void loadSet(Path setPath) {
+    @Override
+    void loadSet(Path setPath) {
+        if (SetFormat.detect(setPath) == SetFormat.BINARY) {
+            loadBinarySet(setPath);
+            return;
+        }
         try {
-            List<String> lines = Files.readAllLines(setPath);
+            List<String> lines = SetFiles.readTextLines(setPath);
             if (lines.size() < 2) throw new RuntimeException(Log.errorMsg("Set File Contents Malformed"));
-            setDate = LocalDate.parse(lines.getFirst());
+            loadSetDate(LocalDate.parse(lines.getFirst()));
             for (int i = 2; i < lines.size(); i++) {
                 String line = lines.get(i).trim();
                 if (!line.isEmpty()) itemIds.add(Integer.parseInt(line));
@@ -53,59 +44,106 @@ public class WorkingSet {
         }
     }
 
+    private void loadBinarySet(Path setPath) {
+        try {
+            ByteBuffer buffer = SetFiles.mapBinary(setPath);
+            if (buffer.remaining() < SetFormat.HEADER_BYTES
+                    || buffer.getInt() != SetFormat.WORKING_MAGIC) throw new RuntimeException(Log.errorMsg("Set File Contents Malformed"));
+            int version = buffer.getInt();
+            if (version < 1 || version > SetFormat.VERSION) throw new RuntimeException(Log.errorMsg("Set File Contents Malformed"));
+            loadSetDate(LocalDate.ofEpochDay(buffer.getLong()));
+            int count = buffer.getInt();
+            if (count < 0 || buffer.remaining() != count * 4L) throw new RuntimeException(Log.errorMsg("Set File Contents Malformed"));
+            int[] ids = new int[count];
+            buffer.asIntBuffer().get(ids);
+            for (int id : ids) itemIds.addInt(id);
+        } catch (IOException e) {
+            throw new RuntimeException(Log.errorMsg("Error loading set"));
+        }
+    }
+
+    @Override
+    void writeSet(Path file) throws IOException {
+        if (getFormat() == SetFormat.BINARY) {
+            int[] ids = itemIds.toIntArray();
+            Arrays.sort(ids);
+            ByteBuffer buffer = ByteBuffer.allocate(SetFormat.HEADER_BYTES + ids.length * 4);
+            buffer.putInt(SetFormat.WORKING_MAGIC).putInt(SetFormat.VERSION).putLong(getSetDate().toEpochDay()).putInt(ids.length);
+            buffer.asIntBuffer().put(ids);
+            buffer.clear();
+            SetFiles.write(file, buffer);
+            return;
+        }
+        SetFiles.write(file, writer -> {
+            writer.write(getSetDate().toString());
+            writer.newLine();
+            writer.write(String.valueOf(itemIds.size()));
+            writer.newLine();
+            for (int i : itemIds) {
+                writer.write(String.valueOf(i));
+                writer.newLine();
+            }
+        });
+    }
+
+    @Override
+    void apply(String[] record) {
+        switch (record[0]) {
+            case "+" -> itemIds.add(Integer.parseInt(record[1]));
+            case "-" -> itemIds.remove(Integer.parseInt(record[1]));
+            case "D" -> loadSetDate(LocalDate.parse(record[1]));
+            case "C" -> itemIds.clear();
+            default -> throw new IllegalArgumentException();
+        }
+    }
+
+    @Override
+    void clearContents() {
+        itemIds.clear();
+    }
+
     public void fillSet(List<Integer> items){
-        itemIds.addAll(items);
+        refresh();
+        for (Integer id : items) {
+            if (itemIds.add(id)) stage("+ " + id);
+        }
         reloadSet();
     }
 
     public boolean fillSet(Set<Integer> items){
-        itemIds.addAll(items);
+        refresh();
+        for (Integer id : items) {
+            if (itemIds.add(id)) stage("+ " + id);
+        }
         reloadSet();
         return true;
     }
 
     public boolean clearSet(){
         itemIds.clear();
+        stage("C");
         reloadSet();
         return itemIds.isEmpty();
     }
 
     public boolean addItem(Integer itemId){
-        itemIds.add(itemId);
-        reloadSet();
+        refresh();
+        if (itemIds.add(itemId)) record("+ " + itemId);
         return itemIds.contains(itemId);
     }
 
     public boolean removeItem(Integer itemId) {
+        refresh();
         if (itemIds.contains(itemId)) {
             boolean stat = itemIds.remove(itemId);
-            reloadSet();
+            record("- " + itemId);
             return stat;
         }
         return false;
     }
 
     public void reloadSet() {
-        try (BufferedWriter writer = Files.newBufferedWriter(setPath)) {
-            writer.write(setDate.toString());
-            writer.newLine();
-            writer.write(String.valueOf(itemIds.size()));
-            writer.newLine();
-            for (int i : itemIds) {
-                writer.write(String.valueOf(i));
-                writer.newLine();
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(Log.errorMsg("Error Updating Set"));
-        }
-    }
-
-    public Path getSetPath() {
-        return setPath;
-    }
-
-    public LocalDate getSetDate() {
-        return setDate;
+        snapshot();
     }
 
     public List<Integer> getItemIdList() {
@@ -114,17 +152,14 @@ public class WorkingSet {
 
     public Set<Integer> getItemIdSet() {return itemIds;}
 
-    public void setSetDate(LocalDate setDate) {
-        this.setDate = setDate;
-        reloadSet();
+    public boolean containsItem(int itemId) {
+        return itemIds.containsInt(itemId);
     }
 
-
-
     @Override
     public String toString() {
         return "WorkingSet{" +
-                "setDate=" + setDate +
+                "setDate=" + getSetDate() +
                 ", itemIds=" + itemIds +
                 '}';
     }
@@ -0,0 +1,57 @@
+package ansrs.util;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// walks a table one keyset page at a time, the next page is only fetched once the current one is used up
+// so at most one page is held in memory however large the table is
+public final class Pager {
+
+    public static final int DEFAULT_PAGE_SIZE = 500;
+
+    // a page query as the repositories expose it, empty when the page could not be read
+    @FunctionalInterface
+    public interface PageQuery<T> {
+        Optional<List<T>> fetch(int afterId, int limit);
+    }
+
+    private Pager() {
+    }
+
+    public static <T> Stream<T> stream(PageQuery<T> query, ToIntFunction<T> id, int pageSize) {
+        if (pageSize <= 0) throw new RuntimeException(Log.errorMsg("Page size must be positive"));
+        Iterator<T> rows = new Iterator<>() {
+            private List<T> page = List.of();
+            private int next = 0;
+            private int afterId = 0;
+            private boolean last = false;
+
+            @Override
+            public boolean hasNext() {
+                if (next < page.size()) return true;
+                if (last) return false;
+                page = query.fetch(afterId, pageSize)
+                        .orElseThrow(() -> new RuntimeException(Log.errorMsg("Failed to read page after id " + afterId)));
+                next = 0;
+                // a short page means the table has run out, no need to ask again
+                last = page.size() < pageSize;
+                if (!page.isEmpty()) afterId = id.applyAsInt(page.get(page.size() - 1));
+                return !page.isEmpty();
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return page.get(next++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+}
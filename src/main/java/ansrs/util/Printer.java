@@ -14,30 +14,47 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
-import java.util.Optional;
+import java.util.stream.Stream;
 
 public class Printer {
     public static final String bold = "\u001B[1m";
     public static final String dim = "\u001B[2m";
     public static final String reset = "\u001B[22m";
     public static void statePrinter(WorkingSet workingSet, CompletedSet completedSet, ItemRepository ItemRepository) {
+        printStateHeader(workingSet, completedSet);
+        // rows are printed as the cursor reads them, the table is never held in memory
+        long[] count = {0};
+        boolean read = ItemRepository.forEachItem(item -> {
+            printItemRow(item);
+            count[0]++;
+        });
+        // false means the read failed, an empty table is reported by printItemsFooter
+        if (read) {
+            printItemsFooter(count[0]);
+        } else {
+            System.out.println(dim+"+---------------------------+");
+            System.out.println("|  "+reset+"Failed to read database"+dim+"  |");
+            System.out.println("+---------------------------+"+reset);
+        }
+
+    }
+    // same as statePrinter, but the database section shows only the page of rows after afterId
+    public static void statePrinter(WorkingSet workingSet, CompletedSet completedSet, ItemRepository ItemRepository, int afterId, int limit) {
+        printStateHeader(workingSet, completedSet);
+        printItemsPage(ItemRepository.getItemsPage(afterId, limit).orElse(new ArrayList<>()), limit);
+    }
+
+    // the set section both statePrinter overloads open with, each follows it with its own database section
+    private static void printStateHeader(WorkingSet workingSet, CompletedSet completedSet) {
         System.out.println("+------------SYSTEM STATUS-------------+");
 
         System.out.println("WorkingSet: "+ workingSet.getItemIdSet());
 
         System.out.println("CompletedSet: "+ completedSet.getItems());
 
-        Optional<List<Item>> itemsList = ItemRepository.getAllItems();
         System.out.println("Database:");
-        if (itemsList.isPresent()) {
-            printItemsList(itemsList.get());
-        } else {
-            System.out.println(dim+"+-----------------------+");
-            System.out.println("|   "+reset+"Database is empty"+dim+"   |");
-            System.out.println("+-----------------------+"+reset);
-        }
-
     }
+
     public static void setStatePrinter(WorkingSet workingSet, CompletedSet completedSet, ItemRepository db) {
         System.out.println("+------------SYSTEM STATUS-------------+");
         System.out.println("WorkingSet: ");
@@ -77,10 +94,36 @@ public class Printer {
         for (Item item : items) {
             printItemRow(item);
         }
+        printItemsFooter(items.size());
+    }
+
+    // prints rows as they arrive, for cursors too large to collect into a list first
+    public static void printItems(Stream<Item> items) {
+        long[] count = {0};
+        items.forEachOrdered(item -> {
+            printItemRow(item);
+            count[0]++;
+        });
+        printItemsFooter(count[0]);
+    }
+
+    // one keyset page, a full page ends with the --after-id that continues the listing
+    public static void printItemsPage(List<Item> items, int limit) {
+        printItemsList(items);
+        if (items != null && items.size() == limit)
+            printNextPage(items.get(items.size() - 1).getItemId(), "---------------------------------------------------------------");
+    }
+
+    private static void printItemsFooter(long count) {
+        if (count == 0) {
+            System.out.println(dim+"+-----------------------+");
+            System.out.println("|  "+reset+"No Items to display"+dim+"  |");
+            System.out.println("+-----------------------+"+reset);
+            return;
+        }
         System.out.println(dim + "---------------------------------------------------------------"+reset);
-        System.out.println(dim+"Total: "+reset+bold+items.size()+reset+dim+" item(s)"+reset);
+        System.out.println(dim+"Total: "+reset+bold+count+reset+dim+" item(s)"+reset);
         System.out.println(dim + "---------------------------------------------------------------"+reset);
-
     }
 
     public static void printItemRow(Item item) {
@@ -145,9 +188,38 @@ public class Printer {
         for (Group group: groups) {
             printGroupRow(group);
         }
+        printGroupsFooter(groups.size());
+    }
+
+    // prints groups as they arrive, for listings paged in from the database
+    public static void printGroups(Stream<Group> groups) {
+        long[] count = {0};
+        groups.forEachOrdered(group -> {
+            printGroupRow(group);
+            count[0]++;
+        });
+        if (count[0] == 0) {
+            printGroupsList(null);
+            return;
+        }
+        printGroupsFooter(count[0]);
+    }
+
+    // one keyset page, a full page ends with the --after-id that continues the listing
+    public static void printGroupsPage(List<Group> groups, int limit) {
+        printGroupsList(groups);
+        if (groups != null && groups.size() == limit)
+            printNextPage(groups.get(groups.size() - 1).id, "-------------------------------------------------------------");
+    }
+
+    private static void printGroupsFooter(long count) {
         System.out.println(dim + "-------------------------------------------------------------"+reset);
-        System.out.println(dim+"Total: "+reset+bold+groups.size()+reset+dim+" group(s)"+reset);
+        System.out.println(dim+"Total: "+reset+bold+count+reset+dim+" group(s)"+reset);
         System.out.println(dim + "-------------------------------------------------------------"+reset);
+    }
 
+    private static void printNextPage(int lastId, String separator) {
+        System.out.println(dim+"More available, next page: "+reset+bold+"--after-id="+lastId+reset);
+        System.out.println(dim + separator + reset);
     }
 }
\ No newline at end of file
@@ -0,0 +1,34 @@
+package ansrs.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// startup phase breakdown printed to stderr when ANSRS_STARTUP_TIMING is set, a no-op otherwise
+public class StartupTimer {
+
+    private static final boolean ENABLED = System.getenv("ANSRS_STARTUP_TIMING") != null;
+    private static final long START = System.nanoTime();
+    private static final List<String> phases = new ArrayList<>();
+    private static long last = START;
+
+    static {
+        // time spent before any ansrs class ran, jvm boot and class loading of main
+        if (ENABLED) ProcessHandle.current().info().startInstant().ifPresent(started ->
+                phases.add(String.format("%-20s %8.2f ms", "jvm boot", (System.currentTimeMillis() - started.toEpochMilli()) * 1.0)));
+        last = System.nanoTime();
+    }
+
+    public static void mark(String phase) {
+        if (!ENABLED) return;
+        long now = System.nanoTime();
+        phases.add(String.format("%-20s %8.2f ms", phase, (now - last) / 1_000_000.0));
+        last = now;
+    }
+
+    public static void report() {
+        if (!ENABLED) return;
+        System.err.println("Startup timing:");
+        for (String phase : phases) System.err.println("  " + phase);
+        System.err.println(String.format("  %-20s %8.2f ms", "total after boot", (System.nanoTime() - START) / 1_000_000.0));
+    }
+}
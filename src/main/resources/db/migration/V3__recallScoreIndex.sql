@@ -0,0 +1,14 @@
+ALTER TABLE items ADD COLUMN IF NOT EXISTS recall_score DOUBLE PRECISION;
+
+CREATE INDEX IF NOT EXISTS idx_items_recall_score ON items(recall_score DESC, id);
+
+CREATE TABLE IF NOT EXISTS recall_score_state(
+    id INTEGER PRIMARY KEY,
+    score_date DATE NOT NULL,
+    weight_h DOUBLE PRECISION NOT NULL,
+    weight_m DOUBLE PRECISION NOT NULL,
+    weight_l DOUBLE PRECISION NOT NULL,
+    alpha DOUBLE PRECISION NOT NULL,
+    beta DOUBLE PRECISION NOT NULL,
+    gamma DOUBLE PRECISION NOT NULL
+);
@@ -0,0 +1,9 @@
+ALTER TABLE items ALTER COLUMN last_recall SET DATA TYPE DATE;
+
+ALTER TABLE archive ALTER COLUMN last_recall SET DATA TYPE DATE;
+
+CREATE INDEX IF NOT EXISTS idx_items_last_recall ON items(last_recall);
+
+CREATE INDEX IF NOT EXISTS idx_items_pool_last_recall ON items(pool, last_recall);
+
+CREATE INDEX IF NOT EXISTS idx_archive_last_recall ON archive(last_recall);
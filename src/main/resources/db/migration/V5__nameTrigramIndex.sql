@@ -0,0 +1,27 @@
+CREATE TABLE IF NOT EXISTS item_name_trigrams(
+    trigram VARCHAR(3) NOT NULL,
+    id INTEGER NOT NULL,
+    PRIMARY KEY (trigram, id)
+);
+
+CREATE TABLE IF NOT EXISTS archive_name_trigrams(
+    trigram VARCHAR(3) NOT NULL,
+    id INTEGER NOT NULL,
+    PRIMARY KEY (trigram, id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_item_name_trigrams_id ON item_name_trigrams(id);
+CREATE INDEX IF NOT EXISTS idx_archive_name_trigrams_id ON archive_name_trigrams(id);
+
+-- every 3 character window of the lower cased name, the same split TrigramTrigger makes on later writes
+INSERT INTO item_name_trigrams (trigram, id)
+SELECT DISTINCT SUBSTRING(LOWER(name), r.X, 3), id FROM items JOIN SYSTEM_RANGE(1, 253) r ON r.X <= CHAR_LENGTH(name) - 2;
+
+INSERT INTO archive_name_trigrams (trigram, id)
+SELECT DISTINCT SUBSTRING(LOWER(name), r.X, 3), id FROM archive JOIN SYSTEM_RANGE(1, 253) r ON r.X <= CHAR_LENGTH(name) - 2;
+
+CREATE TRIGGER IF NOT EXISTS trg_item_name_trigrams AFTER INSERT, UPDATE, DELETE ON items
+    FOR EACH ROW CALL "ansrs.db.TrigramTrigger";
+
+CREATE TRIGGER IF NOT EXISTS trg_archive_name_trigrams AFTER INSERT, UPDATE, DELETE ON archive
+    FOR EACH ROW CALL "ansrs.db.TrigramTrigger";
@@ -0,0 +1,13 @@
+-- rows indexed by the trigger before V6 were lower cased in Java rather than by LOWER, rebuild both indexes with
+-- LOWER alone so every name folds as search folds its query, the same split TrigramIndex.trigramsOf makes
+-- the outer join keeps names as the outer loop, an inner join lets H2 rescan the table once per window position
+DELETE FROM item_name_trigrams;
+DELETE FROM archive_name_trigrams;
+
+INSERT INTO item_name_trigrams (trigram, id)
+SELECT DISTINCT SUBSTRING(l.name, r.X, 3), l.id FROM (SELECT id, LOWER(name) AS name FROM items) l
+LEFT JOIN SYSTEM_RANGE(1, 510) r ON r.X <= CHAR_LENGTH(l.name) - 2 WHERE r.X IS NOT NULL;
+
+INSERT INTO archive_name_trigrams (trigram, id)
+SELECT DISTINCT SUBSTRING(l.name, r.X, 3), l.id FROM (SELECT id, LOWER(name) AS name FROM archive) l
+LEFT JOIN SYSTEM_RANGE(1, 510) r ON r.X <= CHAR_LENGTH(l.name) - 2 WHERE r.X IS NOT NULL;
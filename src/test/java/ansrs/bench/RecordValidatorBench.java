@@ -0,0 +1,117 @@
+package ansrs.bench;
+
+import ansrs.data.Item;
+import ansrs.service.RecordValidator;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// records validated per second by RecordValidator against the sanitize and parse path it replaced, on a clean
+// file and on a dirty one where most rows are bad, not part of the test run
+//   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+//   java -cp target/test-classes:target/classes:$(cat target/cp.txt) ansrs.bench.RecordValidatorBench ROWS ROUNDS
+// records are parsed up front so only validation is timed
+public class RecordValidatorBench {
+
+    // keeps the JIT from dropping work whose result is never used
+    private static long sink;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        List<CSVRecord> clean = records(rows, false);
+        List<CSVRecord> dirty = records(rows, true);
+        // a throwaway pass over both inputs on both paths
+        for (int i = 0; i < 3; i++) {
+            legacy(clean);
+            legacy(dirty);
+            validator(clean);
+            validator(dirty);
+        }
+        System.out.printf("%-10s %-7s %14s%n", "path", "input", "best rows/s");
+        report("legacy", "clean", rows, rounds, () -> legacy(clean));
+        report("validator", "clean", rows, rounds, () -> validator(clean));
+        report("legacy", "dirty", rows, rounds, () -> legacy(dirty));
+        report("validator", "dirty", rows, rounds, () -> validator(dirty));
+        if (sink == 42) System.out.println();
+    }
+
+    private static void report(String path, String input, int rows, int rounds, Runnable run) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            run.run();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("%-10s %-7s %14d%n", path, input, rows * 1_000_000_000L / best);
+    }
+
+    // a dirty file has a bad id, pool, date, recall count or link in four rows out of five
+    private static List<CSVRecord> records(int rows, boolean dirty) throws Exception {
+        StringBuilder csv = new StringBuilder();
+        for (int id = 1; id <= rows; id++) {
+            String idField = String.valueOf(id), pool = "HML".substring(id % 3, id % 3 + 1), date = "2024-01-" + (10 + id % 19), recalls = String.valueOf(id % 9), link = "https://bench.example/" + id;
+            if (dirty) {
+                switch (id % 5) {
+                    case 1 -> idField = "x" + id;
+                    case 2 -> pool = "Q";
+                    case 3 -> date = "2024-02-30";
+                    case 4 -> recalls = "-" + id;
+                    default -> {
+                    }
+                }
+            }
+            csv.append(idField).append(",\"Bench item ").append(id).append("\",").append(link).append(',')
+                    .append(pool).append(',').append(date).append(',').append(recalls).append('\n');
+        }
+        List<CSVRecord> records = new ArrayList<>(rows);
+        CSVFormat.DEFAULT.parse(new StringReader(csv.toString())).forEach(records::add);
+        return records;
+    }
+
+    private static void validator(List<CSVRecord> records) {
+        RecordValidator validator = new RecordValidator();
+        for (CSVRecord record : records) {
+            if (validator.check(record) == RecordValidator.Outcome.VALID) sink += validator.item().getItemId();
+            else sink++;
+        }
+    }
+
+    private static void legacy(List<CSVRecord> records) {
+        for (CSVRecord record : records) {
+            Optional<Item> item = legacyValidate(record);
+            sink += item.isPresent() ? item.get().getItemId() : 1;
+        }
+    }
+
+    // CSVImporter.validateRecord as it was before RecordValidator
+    private static Optional<Item> legacyValidate(CSVRecord record) {
+        try {if (record.size()!=6) throw new ArrayIndexOutOfBoundsException();
+            int id = Integer.parseInt(sanitize(record.get(0)));
+            String name = sanitize(record.get(1));
+            String link = sanitize(record.get(2));
+            Item.Pool pool = Item.Pool.valueOf(sanitize(record.get(3)).toUpperCase());
+            LocalDate lastRecall = LocalDate.now();
+            if (!sanitize(record.get(4)).isEmpty()) lastRecall = LocalDate.parse(sanitize(record.get(4)));
+            int totalRecalls =0;
+            if (!sanitize(record.get(5)).isEmpty()) totalRecalls = Integer.parseInt(sanitize(record.get(5)));
+            if (id <= 0 || name.isEmpty() || !link.startsWith("https://") || totalRecalls < 0 || lastRecall.isAfter(LocalDate.now())) {
+                return Optional.empty();
+            }
+            return Optional.of(new Item(id, name, link, pool, lastRecall, totalRecalls));
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new RuntimeException("CSV Malformed");
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String sanitize(String input){
+        return input.replace("\"","").replace("'","").trim();
+    }
+}
@@ -0,0 +1,64 @@
+package ansrs.bench;
+
+import ansrs.data.Item;
+import ansrs.db.DatabaseInitialiser;
+import ansrs.db.ItemRepository;
+import ansrs.db.StorageProfile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+// insert throughput and file size of a fresh database under each storage profile, not part of the test run
+//   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+//   java -cp target/test-classes:target/classes:$(cat target/cp.txt) ansrs.bench.StorageProfileBench ROWS BATCH ROUNDS
+// every batch is its own commit, so the write delay shows up the way it does for a chunked import
+public class StorageProfileBench {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int batch = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        // a full throwaway round so class loading and JIT warm-up are not charged to the first profile
+        run(StorageProfile.BALANCED, rows, batch);
+        System.out.printf("%-10s %10s %12s %10s%n", "profile", "rows", "best rows/s", "file KB");
+        for (StorageProfile profile : StorageProfile.values()) {
+            long best = Long.MAX_VALUE, size = 0;
+            for (int i = 0; i < rounds; i++) {
+                long[] res = run(profile, rows, batch);
+                best = Math.min(best, res[0]);
+                size = res[1];
+            }
+            System.out.printf("%-10s %10d %12d %10d%n", profile.displayName(), rows, rows * 1_000_000_000L / best, size / 1024);
+        }
+    }
+
+    // returns the elapsed nanos and the database file size once closed
+    private static long[] run(StorageProfile profile, int rows, int batch) throws Exception {
+        Path dir = Files.createTempDirectory("ansrs-bench");
+        try {
+            Path db = dir.resolve("bench");
+            long elapsed;
+            try (ItemRepository items = new ItemRepository(DatabaseInitialiser.initEmbeddedDb(db, profile))) {
+                LocalDate today = LocalDate.now();
+                long start = System.nanoTime();
+                for (int from = 1; from <= rows; from += batch) {
+                    List<Item> chunk = new ArrayList<>(batch);
+                    for (int id = from; id < from + batch && id <= rows; id++)
+                        chunk.add(new Item(id, "Bench item " + id, "https://bench.example/" + id, Item.Pool.values()[id % 3], today, id % 7));
+                    if (!items.insertItemsBatch(chunk)) throw new IllegalStateException("insert failed under " + profile);
+                }
+                elapsed = System.nanoTime() - start;
+            }
+            return new long[]{elapsed, Files.size(dir.resolve("bench.mv.db"))};
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+}
@@ -4,15 +4,21 @@ import ansrs.data.Item;
 import ansrs.db.ArchiveRepository;
 import ansrs.db.GroupRepository;
 import ansrs.db.ItemRepository;
+import ansrs.db.UnitOfWork;
 import ansrs.set.CompletedSet;
 import ansrs.set.WorkingSet;
 import org.junit.jupiter.api.*;
 import picocli.CommandLine;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.Connection;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -35,6 +41,7 @@ class ArchiveCommandTest {
         workingSet = spy(new WorkingSet(tempDir.resolve("working.set")));
         completedSet = spy(new CompletedSet(tempDir.resolve("completed.set")));
         db = mock(ItemRepository.class);
+        when(db.beginUnitOfWork()).thenAnswer(i -> UnitOfWork.begin(mock(Connection.class)));
         am = mock(ArchiveRepository.class);
         parent = new SRSCommand(workingSet, completedSet, db, am, gr);
         cmd = new ArchiveCommand();
@@ -91,12 +98,25 @@ class ArchiveCommandTest {
 
     @Test
     void testListAll() {
-        when(am.getAllItems()).thenReturn(Optional.of(List.of(
+        when(am.streamAllItems()).thenAnswer(i -> Stream.of(
                 new Item(1, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1),
                 new Item(2, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1)
-        )));
+        ));
         assertEquals(0, cmdLine.execute("--list"));
-        verify(am).getAllItems();
+        verify(am).streamAllItems();
+    }
+
+    @Test
+    void testListPage() {
+        when(am.getItemsPage(10, 2)).thenReturn(Optional.of(List.of(
+                new Item(11, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1),
+                new Item(14, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1)
+        )));
+        assertEquals(0, cmdLine.execute("--list", "--limit", "2", "--after-id", "10"));
+        verify(am).getItemsPage(10, 2);
+        verify(am, never()).streamAllItems();
+        assertEquals(2, cmdLine.execute("--id", "1", "--limit", "2"));
+        assertEquals(2, cmdLine.execute("--list", "--after-id", "10"));
     }
 
     @Test
@@ -108,25 +128,28 @@ class ArchiveCommandTest {
 
     @Test
     void testSearchByName() {
-        when(am.searchItemsByName("test")).thenReturn(Optional.of(List.of(
+        when(am.searchItemsByName("test", 50)).thenReturn(Optional.of(List.of(
                 new Item(1, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1)
         )));
         assertEquals(0, cmdLine.execute("--name", "test"));
-        verify(am).searchItemsByName("test");
+        verify(am).searchItemsByName("test", 50);
+    }
+
+    @Test
+    void testSearchByNameTakesLimit() {
+        when(am.searchItemsByName("test", 3)).thenReturn(Optional.of(List.of()));
+        assertEquals(0, cmdLine.execute("--name", "test", "--limit", "3"));
+        verify(am).searchItemsByName("test", 3);
     }
 
     @Test
     void testArchiveAllSuccess() {
-        when(db.getAllItems()).thenReturn(Optional.of(List.of(
-                new Item(1,"Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1),
-                new Item(2, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1)
-        )));
-        when(am.insertItemsBatch(any())).thenReturn(true);
-        when(db.deleteItemsById(anyInt())).thenReturn(true);
+        when(db.countItems()).thenReturn(2L);
+        when(am.archiveAllItemsExcept(any())).thenReturn(Optional.of(2));
 
         assertEquals(0, cmdLine.execute("--all", "--sure"));
-        verify(am).insertItemsBatch(any());
-        verify(db, atLeastOnce()).deleteItemsById(anyInt());
+        verify(am).archiveAllItemsExcept(argThat(Collection::isEmpty));
+        verify(db, never()).deleteItemsById(anyInt());
     }
 
     // --- FAILURE CASES ---
@@ -199,14 +222,15 @@ class ArchiveCommandTest {
 
     @Test
     void testArchiveAllFailsWhenDbEmpty() {
-        when(db.getAllItems()).thenReturn(Optional.of(Collections.emptyList()));
+        when(db.countItems()).thenReturn(0L);
         assertEquals(1, cmdLine.execute("--all", "--sure"));
+        verify(am, never()).archiveAllItemsExcept(any());
     }
 
     @Test
     void testArchiveAllFailsOnInsertBatchError() {
-        when(db.getAllItems()).thenReturn(Optional.of(List.of(new Item(1, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1))));
-        when(am.insertItemsBatch(any())).thenReturn(false);
+        when(db.countItems()).thenReturn(1L);
+        when(am.archiveAllItemsExcept(any())).thenReturn(Optional.empty());
         assertEquals(1, cmdLine.execute("--all", "--sure"));
     }
 
@@ -226,34 +250,46 @@ class ArchiveCommandTest {
     void testArchiveAllSkipsItemsInSets() {
         workingSet.addItem(1);
         completedSet.addItem(2, null);
-        when(db.getAllItems()).thenReturn(Optional.of(List.of(
-                new Item(1, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1),
-                new Item(2, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1),
-                new Item(3, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1)
-        )));
-        when(am.insertItemsBatch(any())).thenReturn(true);
-        when(db.deleteItemsById(anyInt())).thenReturn(true);
+        workingSet.addItem(7);
+        when(db.countItems()).thenReturn(3L);
+        // 7 is only in the WorkingSet, it has no row to hold back
+        when(db.existingIds(any())).thenReturn(Set.of(1, 2));
+        when(am.archiveAllItemsExcept(any())).thenReturn(Optional.of(1));
+
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        try {
+            assertEquals(0, cmdLine.execute("--all", "--sure"));
+        } finally {
+            System.setOut(out);
+        }
+        String warnings = printed.toString(StandardCharsets.UTF_8);
+        assertTrue(warnings.contains("Skipping ITEM_ID[1]"));
+        assertTrue(warnings.contains("Skipping ITEM_ID[2]"));
+        assertFalse(warnings.contains("Skipping ITEM_ID[7]"));
+        verify(am).archiveAllItemsExcept(argThat(ids -> ids.size() == 3 && ids.containsAll(List.of(1, 2, 7))));
+    }
 
-        assertEquals(0, cmdLine.execute("--all", "--sure"));
-        verify(am).insertItemsBatch(argThat(list -> list.size() == 1));
+    @Test
+    void testArchiveAllFailsWhenEverythingIsInSets() {
+        workingSet.addItem(1);
+        when(db.countItems()).thenReturn(1L);
+        when(am.archiveAllItemsExcept(any())).thenReturn(Optional.of(0));
+        assertEquals(1, cmdLine.execute("--all", "--sure"));
     }
 
     // --- RESTORE-ALL TESTS ---
 
     @Test
     void testRestoreAllSuccess() {
-        List<Item> items = List.of(
-                new Item(100, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1),
-                new Item(101, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1)
-        );
-        when(am.getAllItems()).thenReturn(Optional.of(items));
-        when(db.exists(anyInt())).thenReturn(false);
-        when(db.insertItem(any())).thenReturn(true);
-        when(am.deleteItemsById(anyInt())).thenReturn(true);
+        when(am.getIdsAlsoInItems()).thenReturn(Optional.of(List.of()));
+        when(am.restoreAllItemsExcept(any())).thenReturn(Optional.of(2));
 
         assertEquals(0, cmdLine.execute("--restore-all", "--sure"));
-        verify(db, times(2)).insertItem(any());
-        verify(am, times(2)).deleteItemsById(anyInt());
+        verify(am).restoreAllItemsExcept(argThat(Collection::isEmpty));
+        verify(db, never()).insertItem(any());
+        verify(am, never()).deleteItemsById(anyInt());
     }
 
     @Test
@@ -263,39 +299,27 @@ class ArchiveCommandTest {
 
     @Test
     void testRestoreAllSkipsItemsAlreadyInDb() {
-        Item a = new Item(200, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1);
-        Item b = new Item(201, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1);
-        when(am.getAllItems()).thenReturn(Optional.of(List.of(a, b)));
-        when(db.exists(200)).thenReturn(true);
-        when(db.exists(201)).thenReturn(false);
-        when(db.insertItem(b)).thenReturn(true);
-        when(am.deleteItemsById(201)).thenReturn(true);
+        when(am.getIdsAlsoInItems()).thenReturn(Optional.of(List.of(200)));
+        when(am.restoreAllItemsExcept(any())).thenReturn(Optional.of(1));
 
         assertEquals(0, cmdLine.execute("--restore-all", "--sure"));
-        verify(db, times(1)).insertItem(b);
-        verify(am, times(1)).deleteItemsById(201);
+        verify(am).restoreAllItemsExcept(List.of(200));
     }
 
     @Test
     void testRestoreAllFailsIfArchiveEmpty() {
-        when(am.getAllItems()).thenReturn(Optional.of(Collections.emptyList()));
+        when(am.getIdsAlsoInItems()).thenReturn(Optional.of(List.of()));
+        when(am.restoreAllItemsExcept(any())).thenReturn(Optional.of(0));
         assertEquals(1, cmdLine.execute("--restore-all", "--sure"));
     }
 
     @Test
-    void testRestoreAllHandlesPartialFailure() {
-        Item a = new Item(300, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1);
-        Item b = new Item(301, "Old", "https://old.com", Item.Pool.H, LocalDate.now(), 1);
-        when(am.getAllItems()).thenReturn(Optional.of(List.of(a, b)));
-        when(db.exists(anyInt())).thenReturn(false);
-        when(db.insertItem(a)).thenReturn(false); // fail first insert
-        when(db.insertItem(b)).thenReturn(true);
-        when(am.deleteItemsById(b.getItemId())).thenReturn(true);
+    void testRestoreAllFailsAtomically() {
+        when(am.getIdsAlsoInItems()).thenReturn(Optional.of(List.of()));
+        when(am.restoreAllItemsExcept(any())).thenReturn(Optional.empty());
 
-        assertEquals(0, cmdLine.execute("--restore-all", "--sure"));
-        verify(db).insertItem(a);
-        verify(db).insertItem(b);
-        verify(am).deleteItemsById(b.getItemId());
+        assertEquals(1, cmdLine.execute("--restore-all", "--sure"));
+        verify(db, never()).deleteItemsById(anyInt());
     }
 
 }
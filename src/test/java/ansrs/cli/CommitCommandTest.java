@@ -4,6 +4,7 @@ import ansrs.data.Item;
 import ansrs.db.ArchiveRepository;
 import ansrs.db.GroupRepository;
 import ansrs.db.ItemRepository;
+import ansrs.db.UnitOfWork;
 import ansrs.set.CompletedSet;
 import ansrs.set.WorkingSet;
 import org.junit.jupiter.api.*;
@@ -11,6 +12,7 @@ import picocli.CommandLine;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.Connection;
 import java.time.LocalDate;
 import java.util.*;
 
@@ -36,6 +38,7 @@ class CommitCommandTest {
         workingSet = spy(new WorkingSet(tempDir.resolve("working.set")));
         completedSet = spy(new CompletedSet(tempDir.resolve("completed.set")));
         db = mock(ItemRepository.class);
+        when(db.beginUnitOfWork()).thenAnswer(i -> UnitOfWork.begin(mock(Connection.class)));
 //        am= mock(ArchiveRepository.class);
         parent = new SRSCommand(workingSet, completedSet, db, am, gr);
         cmd = new CommitCommand();
@@ -116,6 +119,8 @@ class CommitCommandTest {
 
         assertEquals(1, cmdLine.execute());
         verify(completedSet, atLeastOnce()).addItem(eq(40), any(), any());
+        assertEquals(Item.Pool.L, completedSet.getItems().get(40).getPool());
+        assertEquals(Item.Pool.L, new CompletedSet(completedSet.getSetPath()).getItems().get(40).getPool());
     }
 
     @Test
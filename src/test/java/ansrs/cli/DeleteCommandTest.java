@@ -3,6 +3,7 @@ package ansrs.cli;
 import ansrs.db.ArchiveRepository;
 import ansrs.db.GroupRepository;
 import ansrs.db.ItemRepository;
+import ansrs.db.UnitOfWork;
 import ansrs.set.CompletedSet;
 import ansrs.set.WorkingSet;
 import org.junit.jupiter.api.*;
@@ -10,6 +11,7 @@ import picocli.CommandLine;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.sql.Connection;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,6 +35,7 @@ class DeleteCommandTest {
         workingSet = spy(new WorkingSet(tempDir.resolve("working.set")));
         completedSet = spy(new CompletedSet(tempDir.resolve("completed.set")));
         db = mock(ItemRepository.class);
+        when(db.beginUnitOfWork()).thenAnswer(i -> UnitOfWork.begin(mock(Connection.class)));
         am= mock(ArchiveRepository.class);
         parent = new SRSCommand(workingSet, completedSet, db, am, gr);
         cmd = new DeleteCommand();
@@ -0,0 +1,138 @@
+package ansrs.cli;
+
+import ansrs.data.Item;
+import ansrs.db.ArchiveRepository;
+import ansrs.db.GroupItemRepository;
+import ansrs.db.GroupRepository;
+import ansrs.db.ItemRepository;
+import ansrs.set.CompletedSet;
+import ansrs.set.WorkingSet;
+import org.junit.jupiter.api.*;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ExportCommandTest {
+
+    private Path tempDir;
+    private ItemRepository db;
+    private ArchiveRepository am;
+    private GroupRepository gr;
+    private SRSCommand parent;
+
+    @BeforeEach
+    void setup() throws Exception {
+        tempDir = Files.createTempDirectory("ansrs-test");
+        db = mock(ItemRepository.class);
+        am = mock(ArchiveRepository.class);
+        gr = mock(GroupRepository.class);
+        parent = new SRSCommand(new WorkingSet(tempDir.resolve("working.set")), new CompletedSet(tempDir.resolve("completed.set")), db, am, gr);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private int execute(String... args) {
+        ExportCommand cmd = new ExportCommand();
+        cmd.parent = parent;
+        return new CommandLine(cmd).execute(args);
+    }
+
+    @Test
+    void testExportItemsCsv() throws Exception {
+        when(db.streamAllItems()).thenReturn(Stream.of(new Item(1, "One", "https://one.example", Item.Pool.H, LocalDate.of(2024, 1, 1), 2)));
+        Path out = tempDir.resolve("items.csv");
+
+        assertEquals(0, execute("--table", "items", "--path", out.toString()));
+        assertEquals(List.of("ITEM_ID,ITEM_NAME,ITEM_LINK,ITEM_POOL,ITEM_LAST_RECALL,totalRecalls", "1,One,https://one.example,H,2024-01-01,2"),
+                Files.readAllLines(out));
+        assertFalse(Files.exists(tempDir.resolve("items.csv.part")));
+
+        // an existing file is only replaced when asked to
+        when(db.streamAllItems()).thenReturn(Stream.empty());
+        assertEquals(2, execute("--table", "items", "--path", out.toString()));
+        assertEquals(2, Files.readAllLines(out).size());
+        assertEquals(0, execute("--table", "items", "--path", out.toString(), "--sure"));
+        assertEquals(1, Files.readAllLines(out).size());
+    }
+
+    @Test
+    void testExportMembershipsAsGzippedJsonLines() throws Exception {
+        when(gr.streamMemberships()).thenReturn(Stream.of(new GroupItemRepository.Membership(1, 5), new GroupItemRepository.Membership(2, 6)));
+        Path out = tempDir.resolve("group_items.jsonl.gz");
+
+        assertEquals(0, execute("--table", "group_items", "--path", out.toString(), "--format", "jsonl", "--gzip"));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(Files.newInputStream(out))) {
+            in.transferTo(bytes);
+        }
+        assertEquals("{\"group_id\":1,\"item_id\":5}\n{\"group_id\":2,\"item_id\":6}\n", bytes.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testFailedExportLeavesNoFile() {
+        when(am.streamAllItems()).thenThrow(new RuntimeException("boom"));
+        Path out = tempDir.resolve("archive.csv");
+
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        try {
+            assertEquals(1, execute("--table", "archive", "--path", out.toString()));
+        } finally {
+            System.setErr(err);
+        }
+        // the cause is printed, not only that the export failed
+        assertTrue(printed.toString(StandardCharsets.UTF_8).contains("boom"));
+        assertFalse(Files.exists(out));
+        assertFalse(Files.exists(tempDir.resolve("archive.csv.part")));
+    }
+
+    @Test
+    void testFastExportMovesTheDatabaseWrittenFileIntoPlace() throws Exception {
+        Path out = tempDir.resolve("groups.csv");
+        Path part = tempDir.resolve("groups.csv.part");
+        when(gr.bulkExport(part, false)).thenAnswer(inv -> {
+            Files.writeString(part, "\"GROUP_ID\"\n\"1\"\n");
+            return Optional.of(1L);
+        });
+
+        assertEquals(0, execute("--table", "groups", "--path", out.toString(), "--fast"));
+        assertEquals(List.of("\"GROUP_ID\"", "\"1\""), Files.readAllLines(out));
+        assertFalse(Files.exists(part));
+        verify(gr, never()).streamAll();
+
+        when(db.bulkExport(tempDir.resolve("items.csv.part"))).thenReturn(Optional.empty());
+        assertEquals(1, execute("--table", "items", "--path", tempDir.resolve("items.csv").toString(), "--fast"));
+        assertFalse(Files.exists(tempDir.resolve("items.csv")));
+    }
+
+    @Test
+    void testValidation() {
+        Path out = tempDir.resolve("x.csv");
+        assertEquals(2, execute("--table", "users", "--path", out.toString()));
+        assertEquals(2, execute("--table", "items", "--path", out.toString(), "--format", "xml"));
+        assertEquals(2, execute("--table", "items", "--path", tempDir.resolve("missing/x.csv").toString()));
+        assertEquals(2, execute("--table", "items", "--path", tempDir.toString()));
+        assertEquals(2, execute("--table", "items", "--path", out.toString(), "--fast", "--gzip"));
+        assertEquals(2, execute("--table", "items", "--path", out.toString(), "--fast", "--format", "jsonl"));
+        verifyNoInteractions(db);
+    }
+}
@@ -12,6 +12,7 @@ import picocli.CommandLine;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -100,9 +101,28 @@ class GroupCommandTest {
 
     @Test
     void testShowAllSuccess() {
-        when(gr.findAll()).thenReturn(Optional.of(List.of(new Group(4, "G", null), new Group(5, "Group link", "https://group.com"), new Group(6, "G name", null))));
+        when(gr.findPage(0, 500)).thenReturn(Optional.of(List.of(new Group(4, "G", null), new Group(5, "Group link", "https://group.com"), new Group(6, "G name", null))));
 
         assertEquals(0, cmdLine.execute("--show-all"));
+        // a short first page ends the listing without another query
+        verify(gr, times(1)).findPage(anyInt(), anyInt());
+    }
+
+    @Test
+    void testShowAllWithLimitReadsOnePage() {
+        when(gr.findPage(5, 2)).thenReturn(Optional.of(List.of(new Group(6, "G", null), new Group(7, "H", null))));
+
+        assertEquals(0, cmdLine.execute("--show-all", "--limit", "2", "--after-id", "5"));
+        verify(gr).findPage(5, 2);
+        verify(gr, never()).findAll();
+    }
+
+    @Test
+    void testPagingFlagsValidation() {
+        assertEquals(2, cmdLine.execute("--show-all", "--limit", "0"));
+        assertEquals(2, cmdLine.execute("--show-all", "--after-id", "3"));
+        assertEquals(2, cmdLine.execute("--show", "--id", "4", "--limit", "3"));
+        verify(gr, never()).findPage(anyInt(), anyInt());
     }
 
     @Test
@@ -162,7 +182,7 @@ class GroupCommandTest {
     @Test
     void testAddBatchSuccess() {
         when(gr.exists(8)).thenReturn(true);
-        when(ir.exists(anyInt())).thenReturn(true);
+        when(ir.existingIds(anyCollection())).thenReturn(Set.of(1, 2, 3));
         when(gr.addItemsToGroupBatch(eq(8), anyList())).thenReturn(true);
 
         assertEquals(0, cmdLine.execute("--id", "8", "--add-batch", "1,2,3"));
@@ -172,21 +192,19 @@ class GroupCommandTest {
     @Test
     void testAddBatchFailsOnInvalidItem() {
         when(gr.exists(8)).thenReturn(true);
-        when(ir.exists(1)).thenReturn(true);
-        when(ir.exists(2)).thenReturn(false);
+        when(ir.existingIds(anyCollection())).thenReturn(Set.of(1));
 
         assertEquals(2, cmdLine.execute("--id", "8", "--add-batch", "1,2"));
+        verify(ir, never()).exists(anyInt());
     }
 
     @Test
     void testAddBatchWithDuplicates() {
         when(gr.exists(8)).thenReturn(true);
-        when(ir.exists(anyInt())).thenReturn(true);
+        when(ir.existingIds(anyCollection())).thenReturn(Set.of(1, 2, 3));
 
         // Simulate duplicate check
-        when(gr.itemExistsInGroup(eq(8), eq(2))).thenReturn(true); // item 2 is already in group
-        when(gr.itemExistsInGroup(eq(8), eq(1))).thenReturn(false);
-        when(gr.itemExistsInGroup(eq(8), eq(3))).thenReturn(false);
+        when(gr.existingMembers(eq(8), anyCollection())).thenReturn(Set.of(2)); // item 2 is already in group
 
         when(gr.addItemsToGroupBatch(eq(8), argThat(list -> list.size() == 2 && list.contains(1) && list.contains(3))))
                 .thenReturn(true);
@@ -196,6 +214,8 @@ class GroupCommandTest {
 
         // verify batch add called with duplicates removed
         verify(gr).addItemsToGroupBatch(eq(8), argThat(list -> list.size() == 2 && list.contains(1) && list.contains(3)));
+        verify(gr, times(1)).existingMembers(8, List.of(1, 2, 3));
+        verify(gr, never()).itemExistsInGroup(anyInt(), anyInt());
     }
     // ---------- REMOVE ITEM ----------
 
@@ -1,19 +1,30 @@
 package ansrs.cli;
 
+import ansrs.data.Item;
 import ansrs.db.ArchiveRepository;
+import ansrs.db.CsvBulk;
 import ansrs.db.GroupRepository;
 import ansrs.db.ItemRepository;
+import ansrs.db.StorageProfile;
+import ansrs.service.ImportCheckpoint;
 import ansrs.set.CompletedSet;
 import ansrs.set.WorkingSet;
 import org.junit.jupiter.api.*;
+import org.mockito.ArgumentCaptor;
 import picocli.CommandLine;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
@@ -55,6 +66,13 @@ class ImportCommandTest {
                 });
     }
 
+    // a fresh command, picocli takes the field values it finds as the defaults of the next parse
+    private CommandLine freshCommandLine() {
+        ImportCommand next = new ImportCommand();
+        next.parent = parent;
+        return new CommandLine(next);
+    }
+
     // helper to create a minimal valid CSV (no header)
     private Path createCsv(String name, List<String> rows) throws Exception {
         Path csv = tempDir.resolve(name);
@@ -64,6 +82,23 @@ class ImportCommandTest {
 
     // --- VALID CASES ---
 
+    @Test
+    void testImportRunsUnderRequestedStorageProfile() throws Exception {
+        Path csv = createCsv("items.csv", List.of("1,Item One,https://one.example,H," + LocalDate.now() + ",0"));
+        when(db.upsertItemsBatch(anyList())).thenReturn(true);
+        StorageProfile.Scope scope = mock(StorageProfile.Scope.class);
+        when(db.useStorageProfile(StorageProfile.FAST_BULK)).thenReturn(scope);
+
+        assertEquals(0, cmdLine.execute("--path", csv.toString(), "--preserve", "csv", "--storage-profile", "fast-bulk"));
+        // the previous settings are back once the import is done
+        var order = inOrder(db, scope);
+        order.verify(db).useStorageProfile(StorageProfile.FAST_BULK);
+        order.verify(db).upsertItemsBatch(anyList());
+        order.verify(scope).close();
+
+        assertEquals(2, cmdLine.execute("--path", csv.toString(), "--preserve", "csv", "--storage-profile", "turbo"));
+    }
+
     @Test
     void testImportUpsertSucceeds_whenOverwriteCsv() throws Exception {
         // prepare csv with two valid rows
@@ -90,19 +125,19 @@ class ImportCommandTest {
         );
         Path csv = createCsv("items2.csv", rows);
 
-        Set<Integer> existing = new HashSet<>();
-        existing.add(3);
-        when(db.getAllItemsIds()).thenReturn(Optional.of(new HashSet<>()));
+        when(db.existingIds(List.of(3, 4))).thenReturn(Set.of(3));
         // simulate inserting uniques succeeds
         when(db.insertItemsBatch(anyList())).thenReturn(true);
 
         int exit = cmdLine.execute("--path", csv.toString(), "--preserve", "db");
         assertEquals(0, exit);
 
-        // insertItemsBatch called once (for uniques)
-        verify(db, times(1)).insertItemsBatch(anyList());
-        // getAllItemsIds should be invoked to detect duplicates
-        verify(db, atLeastOnce()).getAllItemsIds();
+        // insertItemsBatch called once, with the unique row only
+        ArgumentCaptor<List<Item>> captor = ArgumentCaptor.forClass(List.class);
+        verify(db, times(1)).insertItemsBatch(captor.capture());
+        assertEquals(List.of(4), captor.getValue().stream().map(Item::getItemId).toList());
+        // duplicates are looked up per chunk, the whole id set is never loaded
+        verify(db, never()).getAllItemsIds();
     }
 
     @Test
@@ -120,6 +155,91 @@ class ImportCommandTest {
         verify(db, times(1)).upsertItemsBatch(anyList());
     }
 
+    @Test
+    void testImportCommitsOneChunkAtATime() throws Exception {
+        List<String> rows = new ArrayList<>();
+        rows.add("ITEM_ID,ITEM_NAME,ITEM_LINK,ITEM_POOL,ITEM_LAST_RECALL,totalRecalls");
+        for (int i = 1; i <= 5; i++) rows.add(i + ",Item " + i + ",https://" + i + ".example,H," + LocalDate.now() + ",0");
+        Path csv = createCsv("chunks.csv", rows);
+        when(db.upsertItemsBatch(anyList())).thenReturn(true);
+
+        assertEquals(0, cmdLine.execute("--path", csv.toString(), "--preserve", "csv", "--chunk-size", "2"));
+        ArgumentCaptor<List<Item>> captor = ArgumentCaptor.forClass(List.class);
+        verify(db, times(3)).upsertItemsBatch(captor.capture());
+        assertEquals(List.of(2, 2, 1), captor.getAllValues().stream().map(List::size).toList());
+        // a finished import leaves no checkpoint behind
+        assertFalse(Files.exists(new ImportCheckpoint(csv).getPath()));
+
+        assertEquals(2, cmdLine.execute("--path", csv.toString(), "--preserve", "csv", "--chunk-size", "0"));
+    }
+
+    @Test
+    void testResumeContinuesAfterLastCommittedChunk() throws Exception {
+        List<String> rows = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) rows.add(i + ",Item " + i + ",https://" + i + ".example,H," + LocalDate.now() + ",0");
+        Path csv = createCsv("resume.csv", rows);
+        // the second chunk fails, the first stays committed
+        when(db.upsertItemsBatch(anyList())).thenReturn(true, false);
+
+        assertEquals(1, cmdLine.execute("--path", csv.toString(), "--preserve", "csv", "--chunk-size", "2"));
+        ImportCheckpoint checkpoint = new ImportCheckpoint(csv);
+        assertEquals(2L, checkpoint.committedRecords().orElseThrow());
+
+        reset(db);
+        when(db.upsertItemsBatch(anyList())).thenReturn(true);
+        assertEquals(0, freshCommandLine().execute("--path", csv.toString(), "--preserve", "csv", "--chunk-size", "2", "--resume"));
+        ArgumentCaptor<List<Item>> captor = ArgumentCaptor.forClass(List.class);
+        verify(db, times(2)).upsertItemsBatch(captor.capture());
+        assertEquals(List.of(3, 4, 5), captor.getAllValues().stream().flatMap(List::stream).map(Item::getItemId).toList());
+        assertFalse(checkpoint.exists());
+
+        // nothing left to resume
+        assertEquals(2, freshCommandLine().execute("--path", csv.toString(), "--preserve", "csv", "--resume"));
+    }
+
+    @Test
+    void testResumeRejectsChangedFile() throws Exception {
+        Path csv = createCsv("changed.csv", List.of("1,Item One,https://one.example,H," + LocalDate.now() + ",0"));
+        new ImportCheckpoint(csv).save(1);
+        Files.writeString(csv, "1,Item One,https://one.example,H," + LocalDate.now() + ",0\n2,Item Two,https://two.example,M," + LocalDate.now() + ",0\n");
+
+        assertEquals(2, cmdLine.execute("--path", csv.toString(), "--preserve", "csv", "--resume"));
+        verify(db, never()).upsertItemsBatch(anyList());
+    }
+
+    @Test
+    void testFastImportHandsTheFileToTheDatabase() throws Exception {
+        Path csv = createCsv("fast.csv", List.of("1,Item One,https://one.example,H," + LocalDate.now() + ",0", "x,Bad,https://bad.example,H,,"));
+        when(db.bulkImport(eq(csv), eq(false), eq(true), any())).thenAnswer(inv -> {
+            Consumer<String> rejects = inv.getArgument(3);
+            rejects.accept("line 2 [x, Bad, https://bad.example, H, , ], ITEM_ID must be a positive integer");
+            return Optional.of(new CsvBulk.Result(2, 1, 0, 1));
+        });
+
+        assertEquals(0, cmdLine.execute("--path", csv.toString(), "--preserve", "db", "--fast"));
+        verify(db, never()).insertItemsBatch(anyList());
+        verify(db, never()).existingIds(anyCollection());
+
+        when(db.bulkImport(eq(csv), eq(false), eq(false), any())).thenReturn(Optional.of(new CsvBulk.Result(2, 0, 0, 2)));
+        assertEquals(2, freshCommandLine().execute("--path", csv.toString(), "--preserve", "csv", "--fast"));
+        when(db.bulkImport(eq(csv), eq(false), eq(false), any())).thenReturn(Optional.empty());
+        assertEquals(1, freshCommandLine().execute("--path", csv.toString(), "--preserve", "csv", "--fast"));
+        // a fast import runs as one statement, there is nothing to resume
+        assertEquals(2, freshCommandLine().execute("--path", csv.toString(), "--preserve", "csv", "--fast", "--resume"));
+        verify(db, times(3)).bulkImport(any(), anyBoolean(), anyBoolean(), any());
+    }
+
+    @Test
+    void testFastImportFailsOnABadFirstRowLikeTheStreamingImport() throws Exception {
+        Path csv = createCsv("badheader.csv", List.of("id,name", "1,Item One,https://one.example,H,,"));
+        assertEquals(1, cmdLine.execute("--path", csv.toString(), "--preserve", "csv", "--fast"));
+        verify(db, never()).bulkImport(any(), anyBoolean(), anyBoolean(), any());
+
+        Path headed = createCsv("headed.csv", List.of("ITEM_ID,ITEM_NAME,ITEM_LINK,ITEM_POOL,ITEM_LAST_RECALL,totalRecalls", "1,Item One,https://one.example,H,,"));
+        when(db.bulkImport(eq(headed), eq(true), eq(false), any())).thenReturn(Optional.of(new CsvBulk.Result(2, 1, 0, 0)));
+        assertEquals(0, freshCommandLine().execute("--path", headed.toString(), "--preserve", "csv", "--fast"));
+    }
+
     @Test
     void testImportFailureReturnsOne_whenInsertFails() throws Exception {
         List<String> rows = List.of(
@@ -127,7 +247,7 @@ class ImportCommandTest {
         );
         Path csv = createCsv("items4.csv", rows);
 
-        when(db.getAllItemsIds()).thenReturn(Optional.of(new HashSet<>()));
+        when(db.existingIds(anyCollection())).thenReturn(Set.of());
         when(db.insertItemsBatch(anyList())).thenReturn(false);
 
         int exit = cmdLine.execute("--path", csv.toString(), "--preserve", "db");
@@ -13,6 +13,7 @@ import picocli.CommandLine;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -93,6 +94,17 @@ class RecallCommandTest {
 
 
 
+    @Test
+    void testRecallRebuildsScoresWhenRequested() {
+        RecallService mockService = mock(RecallService.class);
+        doReturn(true).when(mockService).rebuildScoreIndex();
+        doReturn(List.of(1)).when(mockService).recall(1);
+        doReturn(mockService).when(cmd).createRecallService(any());
+
+        assertEquals(0, cmdLine.execute("1", "--rebuild-scores"));
+        verify(mockService).rebuildScoreIndex();
+    }
+
     // --- VALIDATION FAILURES ---
 
     @Test
@@ -104,8 +116,7 @@ class RecallCommandTest {
     @Test
     void testCustomRecallOnNonEmptyWorkingSetWithoutFlags() {
         workingSet.fillSet(Set.of(10,20));
-        when(db.exists(3)).thenReturn(true);
-        when(db.exists(4)).thenReturn(true);
+        when(db.existingIds(anyCollection())).thenReturn(Set.of(3, 4));
         assertEquals(2, cmdLine.execute("--custom","3","4"));
     }
         @Test
@@ -126,7 +137,7 @@ class RecallCommandTest {
     @Test
     void testNonEmptyWorkingSetWithoutForceFlag() {
         workingSet.fillSet(Set.of(1, 2));
-        when(db.getAllItems()).thenReturn(Optional.of(List.of(new Item())));
+        when(db.streamAllItems()).thenAnswer(i -> Stream.of(new Item()));
         assertEquals(2, cmdLine.execute("2"));
     }
 
@@ -173,17 +184,18 @@ class RecallCommandTest {
 
     @Test
     void testMultipleCustomIdsMixedValidity() {
-        when(db.exists(2)).thenReturn(true);
-        when(db.exists(3)).thenReturn(false);
-        when(db.exists(4)).thenReturn(true);
+        when(db.existingIds(anyCollection())).thenReturn(Set.of(2, 4));
 //        when(db.getItemsFromList(any())).thenReturn(Optional.of(List.of(new Item())));
         assertEquals(0, cmdLine.execute("--custom", "2,3,-5,4"));
         assertTrue(workingSet.getItemIdSet().containsAll(Set.of(2, 4)));
+        // every id is checked in a single lookup
+        verify(db, times(1)).existingIds(List.of(2, 3, -5, 4));
+        verify(db, never()).exists(anyInt());
     }
 
     @Test
     void testMultipleCustomIdsAllInvalid() {
-        when(db.exists(anyInt())).thenReturn(false);
+        when(db.existingIds(anyCollection())).thenReturn(Set.of());
         assertEquals(2, cmdLine.execute("--custom", "100,200"));
     }
 
@@ -50,15 +50,32 @@ class SRSCommandTest {
 
     @Test
     void testListFlagPrintsFullState() {
-        when(db.getAllItems()).thenReturn(Optional.empty());
+        when(db.forEachItem(any())).thenReturn(false);
         int exitCode = cmdLine.execute("--list");
         assertEquals(0, exitCode);
         verify(workingSet, atLeastOnce()).getItemIdSet();
         verify(completedSet, atLeastOnce()).getItems();
-        verify(db, atLeastOnce()).getAllItems();
+        verify(db, atLeastOnce()).forEachItem(any());
     }
 
 
+    @Test
+    void testListWithLimitPrintsOnePage() {
+        when(db.getItemsPage(0, 20)).thenReturn(Optional.of(new java.util.ArrayList<>()));
+        assertEquals(0, cmdLine.execute("--list", "--limit", "20"));
+        verify(db).getItemsPage(0, 20);
+        verify(db, never()).forEachItem(any());
+    }
+
+    @Test
+    void testPagingFlagsValidation() {
+        assertEquals(2, cmdLine.execute("--limit", "5"));
+        assertEquals(2, cmdLine.execute("--list", "--set", "--limit", "5"));
+        assertEquals(2, cmdLine.execute("--list", "--limit", "-1"));
+        assertEquals(2, cmdLine.execute("--list", "--after-id", "5"));
+        verify(db, never()).getItemsPage(anyInt(), anyInt());
+    }
+
     @Test
     void testListAndSetFlagPrintsSetState() {
         when(db.getItemsFromList(anyList())).thenReturn(Optional.of(new java.util.ArrayList<>()));
@@ -97,42 +114,51 @@ class SRSCommandTest {
 
     @Test
     void testNameFlagCallsSearchItemsByName() {
-        when(db.searchItemsByName("widget")).thenReturn(Optional.of(new java.util.ArrayList<>()));
+        when(db.searchItemsByName("widget", 50)).thenReturn(Optional.of(new java.util.ArrayList<>()));
         int exitCode = cmdLine.execute("--name", "widget");
         assertEquals(0, exitCode);
-        verify(db, times(1)).searchItemsByName("widget");
+        verify(db, times(1)).searchItemsByName("widget", 50);
     }
 
     @Test
     void testNameFlagTrimsWhitespace() {
-        when(db.searchItemsByName("widget")).thenReturn(Optional.of(new java.util.ArrayList<>()));
+        when(db.searchItemsByName("widget", 50)).thenReturn(Optional.of(new java.util.ArrayList<>()));
         int exitCode = cmdLine.execute("--name", "   widget   ");
         assertEquals(0, exitCode);
-        verify(db, times(1)).searchItemsByName("widget");
+        verify(db, times(1)).searchItemsByName("widget", 50);
+    }
+
+    @Test
+    void testNameSearchTakesLimit() {
+        when(db.searchItemsByName("widget", 5)).thenReturn(Optional.of(new java.util.ArrayList<>()));
+        assertEquals(0, cmdLine.execute("--name", "widget", "--limit", "5"));
+        verify(db, times(1)).searchItemsByName("widget", 5);
+        // --after-id pages --list only
+        assertEquals(2, cmdLine.execute("--name", "widget", "--limit", "5", "--after-id", "3"));
     }
 
     @Test
     void testBlankNameFailsValidation() {
         int exitCode = cmdLine.execute("--name", "   ");
         assertEquals(2, exitCode);
-        verify(db, never()).searchItemsByName(anyString());
+        verify(db, never()).searchItemsByName(anyString(), anyInt());
     }
 
     @Test
     void testSingleCharacterNameFailsValidation() {
         int exitCode = cmdLine.execute("--name", "a");
         assertEquals(2, exitCode);
-        verify(db, never()).searchItemsByName(anyString());
+        verify(db, never()).searchItemsByName(anyString(), anyInt());
     }
 
     @Test
     void testNameFlagWithListAlsoPrintsState() {
-        when(db.searchItemsByName("widget")).thenReturn(Optional.of(new java.util.ArrayList<>()));
-        when(db.getAllItems()).thenReturn(Optional.of(new java.util.ArrayList<>()));
+        when(db.searchItemsByName("widget", 50)).thenReturn(Optional.of(new java.util.ArrayList<>()));
+        when(db.forEachItem(any())).thenReturn(true);
         int exitCode = cmdLine.execute("--name", "widget", "--list");
         assertEquals(0, exitCode);
-        verify(db, atLeastOnce()).searchItemsByName("widget");
-        verify(db, atLeastOnce()).getAllItems();
+        verify(db, atLeastOnce()).searchItemsByName("widget", 50);
+        verify(db, atLeastOnce()).forEachItem(any());
     }
 
 }
@@ -0,0 +1,112 @@
+package ansrs.daemon;
+
+import ansrs.cli.SRSCommand;
+import ansrs.db.ArchiveRepository;
+import ansrs.db.DatabaseInitialiser;
+import ansrs.db.GroupRepository;
+import ansrs.db.ItemRepository;
+import ansrs.set.CompletedSet;
+import ansrs.set.WorkingSet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaemonServerTest {
+
+    private Path tempDir;
+    private Path socketPath;
+    private Connection connection;
+    private WorkingSet workingSet;
+    private Thread serverThread;
+
+    @BeforeEach
+    void setup() throws Exception {
+        tempDir = Files.createTempDirectory("ansrs-daemon");
+        socketPath = DaemonServer.socketPath(tempDir);
+        connection = DatabaseInitialiser.initInMemoryDb("daemon_test");
+        workingSet = new WorkingSet(tempDir.resolve("working.set"));
+        SRSCommand root = new SRSCommand(workingSet, new CompletedSet(tempDir.resolve("completed.set")),
+                new ItemRepository(connection), new ArchiveRepository(connection), new GroupRepository(connection));
+        DaemonServer server = new DaemonServer(root, socketPath);
+        serverThread = Thread.ofPlatform().start(() -> {
+            try {
+                server.serve();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!DaemonClient.isRunning(socketPath) && System.currentTimeMillis() < deadline) Thread.sleep(10);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (serverThread.isAlive()) run("daemon", "--stop");
+        serverThread.join(TimeUnit.SECONDS.toMillis(5));
+        connection.close();
+        Files.walk(tempDir)
+                .sorted(Comparator.reverseOrder())
+                .forEach(path -> {
+                    try {
+                        Files.deleteIfExists(path);
+                    } catch (Exception ignored) {}
+                });
+    }
+
+    private Result run(String... args) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        Optional<Integer> exit = DaemonClient.forward(socketPath, tempDir, args,
+                new PrintStream(out, true, StandardCharsets.UTF_8), new PrintStream(err, true, StandardCharsets.UTF_8));
+        assertTrue(exit.isPresent());
+        return new Result(exit.get(), out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8));
+    }
+
+    private record Result(int exit, String out, String err) {}
+
+    @Test
+    void commandsRunAgainstTheDaemonState() {
+        Result add = run("add", "1", "Alpha", "https://alpha.com", "H");
+        assertEquals(0, add.exit());
+        Result recall = run("recall", "--custom", "1");
+        assertEquals(0, recall.exit());
+        assertTrue(recall.out().contains("Alpha"));
+        assertTrue(workingSet.getItemIdSet().contains(1));
+    }
+
+    @Test
+    void parameterErrorsReachTheClient() {
+        Result rollback = run("rollback", "--all");
+        assertEquals(2, rollback.exit());
+        assertTrue(rollback.err().contains("Nothing to rollback"));
+    }
+
+    @Test
+    void relativePathsResolveAgainstTheClientDirectory() throws Exception {
+        Files.writeString(tempDir.resolve("items.csv"), "1,Alpha,https://alpha.com,H,2024-01-01,0\n");
+        Result imported = run("import", "--path", "items.csv", "--preserve", "csv");
+        assertEquals(0, imported.exit(), imported.err());
+    }
+
+    @Test
+    void stopShutsTheDaemonDown() throws Exception {
+        assertEquals(1, run("daemon").exit());
+        assertEquals(0, run("daemon", "--stop").exit());
+        serverThread.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(serverThread.isAlive());
+        assertFalse(Files.exists(socketPath));
+        assertTrue(DaemonClient.forward(socketPath, tempDir, new String[]{"--list"}, System.out, System.err).isEmpty());
+    }
+}
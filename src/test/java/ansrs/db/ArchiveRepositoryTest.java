@@ -11,18 +11,21 @@ import static org.junit.jupiter.api.Assertions.*;
 class ArchiveRepositoryTest {
 
     static ArchiveRepository am;
+    static ItemRepository items;
     static Item baseItem;
 
     @BeforeAll
     static void setup() {
         Connection connection = DatabaseInitialiser.initInMemoryDb("testdb");
         am = new ArchiveRepository(connection);
+        items = new ItemRepository(connection);
         baseItem = new Item(1, "Item1", "https://a.com", Item.Pool.H, LocalDate.now(), 2);
     }
 
     @AfterEach
     void clear() {
         am.clearDatabase();
+        items.clearItems();
     }
 
     @AfterAll
@@ -110,23 +113,48 @@ class ArchiveRepositoryTest {
         Item i3 = new Item(3, "GammaWidget", "https://c.com", Item.Pool.L, LocalDate.now(), 0);
         am.insertItemsBatch(List.of(i1, i2, i3));
 
-        Optional<List<Item>> result1 = am.searchItemsByName("widget");
+        Optional<List<Item>> result1 = am.searchItemsByName("widget", 10);
         assertTrue(result1.isPresent());
         List<Item> matches = result1.get();
         assertEquals(2, matches.size());
         assertTrue(matches.stream().anyMatch(i -> i.getItemName().equals("AlphaWidget")));
         assertTrue(matches.stream().anyMatch(i -> i.getItemName().equals("GammaWidget")));
 
-        Optional<List<Item>> result2 = am.searchItemsByName("beta");
+        Optional<List<Item>> result2 = am.searchItemsByName("beta", 10);
         assertTrue(result2.isPresent());
         assertEquals(1, result2.get().size());
         assertEquals("BetaTool", result2.get().get(0).getItemName());
 
-        Optional<List<Item>> result3 = am.searchItemsByName("nonexistent");
+        Optional<List<Item>> result3 = am.searchItemsByName("nonexistent", 10);
         assertTrue(result3.isPresent());
         assertTrue(result3.get().isEmpty());
     }
 
+    @Test
+    void testMovesCarryTheNameIndex() {
+        items.insertItemsBatch(List.of(
+                new Item(1, "Rotate Image", "https://a.com", Item.Pool.M, LocalDate.now(), 0),
+                new Item(2, "Rotate List", "https://b.com", Item.Pool.M, LocalDate.now(), 0)));
+        assertEquals(Optional.of(1), am.archiveAllItemsExcept(List.of(2)));
+        assertEquals(List.of(1), am.searchItemsByName("rotate", 10).orElseThrow().stream().map(Item::getItemId).toList());
+        assertEquals(List.of(2), items.searchItemsByName("rotate", 10).orElseThrow().stream().map(Item::getItemId).toList());
+
+        assertEquals(Optional.of(1), am.restoreAllItemsExcept(List.of()));
+        assertTrue(am.searchItemsByName("rotate", 10).orElseThrow().isEmpty());
+        assertEquals(2, items.searchItemsByName("rotate", 10).orElseThrow().size());
+    }
+
+    @Test
+    void testSearchAfterClearDatabase() {
+        am.insertItem(new Item(1, "Rotate Image", "https://a.com", Item.Pool.M, LocalDate.now(), 0));
+        assertEquals(1, am.searchItemsByName("rotate", 5).orElseThrow().size());
+        assertTrue(am.clearDatabase());
+        // the truncated index must not leave stale candidates for a reused id
+        am.insertItem(new Item(1, "Climbing Stairs", "https://a.com", Item.Pool.M, LocalDate.now(), 0));
+        assertTrue(am.searchItemsByName("rotate", 10).orElseThrow().isEmpty());
+        assertEquals(1, am.searchItemsByName("stairs", 10).orElseThrow().size());
+    }
+
 
     @Test
     void testClearDatabase() {
@@ -134,4 +162,28 @@ class ArchiveRepositoryTest {
         assertTrue(am.clearDatabase());
         assertEquals(0, am.getAllItems().get().size());
     }
+
+    @Test
+    void testArchiveAndRestoreMoveRowsAtomically() {
+        List<Item> batch = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) batch.add(new Item(i, "Item" + i, "https://a.com", Item.Pool.M, LocalDate.now().minusDays(i), i));
+        assertTrue(items.insertItemsBatch(batch));
+
+        assertEquals(3, am.archiveAllItemsExcept(List.of(2, 4)).orElseThrow());
+        assertEquals(Set.of(2, 4), items.getAllItemsIds().orElseThrow());
+        assertEquals(Set.of(1, 3, 5), am.getAllItemsIds().orElseThrow());
+        assertEquals(LocalDate.now().minusDays(3), am.getItemById(3).orElseThrow().getLastRecall());
+
+        // a clashing id aborts the whole restore and leaves both tables untouched
+        assertTrue(items.insertItem(new Item(3, "Again", "https://a.com", Item.Pool.H, LocalDate.now(), 0)));
+        assertEquals(List.of(3), am.getIdsAlsoInItems().orElseThrow());
+        assertTrue(am.restoreAllItemsExcept(List.of()).isEmpty());
+        assertEquals(Set.of(1, 3, 5), am.getAllItemsIds().orElseThrow());
+        assertEquals(Set.of(2, 3, 4), items.getAllItemsIds().orElseThrow());
+
+        assertEquals(2, am.restoreAllItemsExcept(List.of(3)).orElseThrow());
+        assertEquals(Set.of(3), am.getAllItemsIds().orElseThrow());
+        assertEquals(Set.of(1, 2, 3, 4, 5), items.getAllItemsIds().orElseThrow());
+        assertEquals("Again", items.getItemById(3).orElseThrow().getItemName());
+    }
 }
@@ -6,6 +6,8 @@ import org.junit.jupiter.api.*;
 import java.sql.Connection;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -95,6 +97,28 @@ class GroupItemRepositoryTest {
         assertTrue(ids.containsAll(List.of(1, 2)));
     }
 
+    @Test
+    void testExistingMembers() {
+        groupItemRepository.addItemToGroup(100, 1);
+        groupItemRepository.addItemToGroup(200, 2);
+
+        assertEquals(Set.of(1), groupItemRepository.existingMembers(100, List.of(1, 2, 3, 1)));
+        assertEquals(Set.of(2), groupItemRepository.existingMembers(200, List.of(2)));
+        assertTrue(groupItemRepository.existingMembers(100, List.of()).isEmpty());
+    }
+
+    @Test
+    void testStreamAllInKeyOrder() {
+        groupItemRepository.addItemToGroup(200, 1);
+        groupItemRepository.addItemToGroup(100, 2);
+        groupItemRepository.addItemToGroup(100, 1);
+
+        try (Stream<GroupItemRepository.Membership> memberships = groupItemRepository.streamAll()) {
+            assertEquals(List.of(new GroupItemRepository.Membership(100, 1), new GroupItemRepository.Membership(100, 2), new GroupItemRepository.Membership(200, 1)),
+                    memberships.filter(m -> m.groupId() == 100 || m.groupId() == 200).toList());
+        }
+    }
+
     @Test
     void testGetGroupIdsForItem() {
         groupItemRepository.addItemToGroup(100, 1);
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.*;
 import java.sql.Connection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -87,6 +88,28 @@ class GroupRepositoryTest {
         );
     }
 
+    @Test
+    void testFindPage() {
+        groupRepository.createGroup(3, "List C", null);
+        groupRepository.createGroup(1, "List A", null);
+        groupRepository.createGroup(2, "List B", null);
+
+        assertEquals(List.of(1, 2), groupRepository.findPage(0, 2).orElseThrow().stream().map(g -> g.id).toList());
+        assertEquals(List.of(3), groupRepository.findPage(2, 2).orElseThrow().stream().map(g -> g.id).toList());
+        assertTrue(groupRepository.findPage(3, 2).orElseThrow().isEmpty());
+    }
+
+    @Test
+    void testStreamAllInIdOrder() {
+        groupRepository.createGroup(3, "List C", null);
+        groupRepository.createGroup(1, "List A", "https://a");
+        groupRepository.createGroup(2, "List B", null);
+
+        try (Stream<Group> groups = groupRepository.streamAll()) {
+            assertEquals(List.of("List A", "List B", "List C"), groups.filter(g -> g.id <= 3).map(g -> g.name).toList());
+        }
+    }
+
     @Test
     void testDuplicatePrimaryKeyIsRejected() {
         assertTrue(groupRepository.createGroup(2, "List A", "https://a"));
@@ -1,21 +1,29 @@
 package ansrs.db;
 
 import ansrs.data.Item;
+import ansrs.service.CSVImporter;
+import ansrs.util.Pager;
 import org.junit.jupiter.api.*;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.stream.Stream;
 import static org.junit.jupiter.api.Assertions.*;
 
 class ItemRepositoryTest {
 
+    static Connection conn;
     static ItemRepository db;
     static Item baseItem;
 
     @BeforeAll
     static void setup() {
-        Connection conn = DatabaseInitialiser.initInMemoryDb("testdb");
+        conn = DatabaseInitialiser.initInMemoryDb("testdb");
         db = new ItemRepository(conn);
         baseItem = new Item(1, "Item1", "https://a.com", Item.Pool.H, LocalDate.now(), 2);
     }
@@ -85,6 +93,18 @@ class ItemRepositoryTest {
         assertFalse(db.exists(1));
     }
 
+    @Test
+    void testExistingIds() {
+        db.insertItem(baseItem);
+        db.insertItem(new Item(3, "Third", "https://c.com", Item.Pool.L, LocalDate.now(), 0));
+        assertEquals(Set.of(1, 3), db.existingIds(List.of(3, 2, 1, 3, -4)));
+        assertTrue(db.existingIds(List.of()).isEmpty());
+
+        List<Integer> many = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) many.add(i);
+        assertEquals(Set.of(1, 3), db.existingIds(many));
+    }
+
     @Test
     void testGetAllItemsIds() {
         db.insertItem(baseItem);
@@ -103,6 +123,78 @@ class ItemRepositoryTest {
         assertEquals(2, list.get().size());
     }
 
+    @Test
+    void testGetItemsFromListKeepsCallerOrderAcrossChunks() throws Exception {
+        List<Item> items = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) items.add(new Item(i, "Item" + i, "https://a.com", Item.Pool.M, LocalDate.now(), 0));
+        db.insertItemsBatch(items);
+        db.setLookupChunkSize(3);
+        try {
+            List<Integer> ids = List.of(17, 4, 99, 12, 1, 4, 20, 8, 5);
+            assertEquals(List.of(17, 4, 12, 1, 20, 8, 5), db.getItemsFromList(ids).orElseThrow()
+                    .stream().map(Item::getItemId).toList());
+        } finally {
+            db.setLookupChunkSize(500);
+        }
+
+        // the array parameter is resolved through the primary key rather than a scan
+        try (var ps = conn.prepareStatement("EXPLAIN SELECT * FROM items WHERE id = ANY(?)")) {
+            ps.setArray(1, conn.createArrayOf("INTEGER", new Integer[]{1, 2}));
+            var rs = ps.executeQuery();
+            rs.next();
+            assertTrue(rs.getString(1).contains("PRIMARY_KEY"), rs.getString(1));
+        }
+    }
+
+    @Test
+    void testStreamAndForEachItem() throws Exception {
+        List<Item> items = new ArrayList<>();
+        for (int i = 1; i <= 600; i++) items.add(new Item(i, "Item" + i, "https://a.com", Item.Pool.L, LocalDate.now(), 0));
+        db.insertItemsBatch(items);
+
+        try (Stream<Item> stream = db.streamAllItems()) {
+            assertEquals(600, stream.filter(p -> p.getItemPool() == Item.Pool.L).count());
+        }
+        int[] seen = {0};
+        assertTrue(db.forEachItem(p -> seen[0]++));
+        assertEquals(600, seen[0]);
+
+        // rows can be removed while the cursor is still walking the table
+        try (Stream<Item> stream = db.streamAllItems()) {
+            stream.limit(10).forEach(p -> assertTrue(db.deleteItemsById(p.getItemId())));
+        }
+        assertEquals(590, db.countItems());
+    }
+
+    @Test
+    void testItemsPageWalksTableInIdOrder() throws Exception {
+        List<Item> items = new ArrayList<>();
+        for (int i = 50; i >= 1; i--) items.add(new Item(i * 2, "Item" + i, "https://a.com", Item.Pool.M, LocalDate.now(), 0));
+        db.insertItemsBatch(items);
+
+        assertEquals(List.of(2, 4, 6), db.getItemsPage(0, 3).orElseThrow().stream().map(Item::getItemId).toList());
+        assertEquals(List.of(42, 44), db.getItemsPage(41, 2).orElseThrow().stream().map(Item::getItemId).toList());
+        assertTrue(db.getItemsPage(100, 10).orElseThrow().isEmpty());
+
+        // the pager stitches pages together, including a last page that is exactly full
+        try (Stream<Item> all = Pager.stream(db::getItemsPage, Item::getItemId, 10)) {
+            assertEquals(50, all.map(Item::getItemId).distinct().count());
+        }
+        try (Stream<Item> all = Pager.stream(db::getItemsPage, Item::getItemId, 7)) {
+            assertEquals(100, all.mapToInt(Item::getItemId).max().orElseThrow());
+        }
+
+        // pages are read off the primary key in order, nothing is sorted however deep the page starts
+        try (var ps = conn.prepareStatement("EXPLAIN SELECT * FROM items WHERE id > ? ORDER BY id LIMIT ?")) {
+            ps.setInt(1, 41);
+            ps.setInt(2, 2);
+            var rs = ps.executeQuery();
+            rs.next();
+            assertTrue(rs.getString(1).contains("PRIMARY_KEY"), rs.getString(1));
+            assertTrue(rs.getString(1).contains("index sorted"), rs.getString(1));
+        }
+    }
+
     @Test
     void testSearchItemsByName() {
         Item i1 = new Item(1, "AlphaWidget", "https://a.com", Item.Pool.H, LocalDate.now(), 2);
@@ -110,23 +202,132 @@ class ItemRepositoryTest {
         Item i3 = new Item(3, "GammaWidget", "https://c.com", Item.Pool.L, LocalDate.now(), 0);
         db.insertItemsBatch(List.of(i1, i2, i3));
 
-        Optional<List<Item>> result1 = db.searchItemsByName("widget");
+        Optional<List<Item>> result1 = db.searchItemsByName("widget", 10);
         assertTrue(result1.isPresent());
         List<Item> matches = result1.get();
         assertEquals(2, matches.size());
         assertTrue(matches.stream().anyMatch(i -> i.getItemName().equals("AlphaWidget")));
         assertTrue(matches.stream().anyMatch(i -> i.getItemName().equals("GammaWidget")));
 
-        Optional<List<Item>> result2 = db.searchItemsByName("beta");
+        Optional<List<Item>> result2 = db.searchItemsByName("beta", 10);
         assertTrue(result2.isPresent());
         assertEquals(1, result2.get().size());
         assertEquals("BetaTool", result2.get().get(0).getItemName());
 
-        Optional<List<Item>> result3 = db.searchItemsByName("nonexistent");
+        Optional<List<Item>> result3 = db.searchItemsByName("nonexistent", 10);
         assertTrue(result3.isPresent());
         assertTrue(result3.get().isEmpty());
     }
 
+    @Test
+    void testSearchItemsByNameRanksAndLimits() {
+        db.insertItemsBatch(List.of(
+                new Item(1, "Two Sum II", "https://a.com", Item.Pool.H, LocalDate.now(), 0),
+                new Item(2, "Sum of Two", "https://b.com", Item.Pool.H, LocalDate.now(), 0),
+                new Item(3, "Two Sum", "https://c.com", Item.Pool.H, LocalDate.now(), 0),
+                new Item(4, "Path Sum", "https://d.com", Item.Pool.H, LocalDate.now(), 0)
+        ));
+        // exact name, then prefix matches (shorter first), then by where the query appears
+        List<Item> ranked = db.searchItemsByName("two sum", 10).orElseThrow();
+        assertEquals(List.of(3, 1), ranked.stream().map(Item::getItemId).toList());
+        List<Item> sums = db.searchItemsByName("sum", 2).orElseThrow();
+        assertEquals(List.of(2, 3), sums.stream().map(Item::getItemId).toList());
+    }
+
+    @Test
+    void testSearchIndexFollowsUpdatesAndDeletes() {
+        db.insertItem(new Item(1, "Merge Intervals", "https://a.com", Item.Pool.H, LocalDate.now(), 0));
+        assertEquals(1, db.searchItemsByName("interval", 10).orElseThrow().size());
+
+        db.updateItem(new Item(1, "Insert Interval", "https://a.com", Item.Pool.H, LocalDate.now(), 0));
+        assertTrue(db.searchItemsByName("merge", 10).orElseThrow().isEmpty());
+        assertEquals(1, db.searchItemsByName("insert", 10).orElseThrow().size());
+
+        db.deleteItemsById(1);
+        assertTrue(db.searchItemsByName("insert", 10).orElseThrow().isEmpty());
+    }
+
+    @Test
+    void testSearchShortAndWildcardQueries() {
+        db.insertItemsBatch(List.of(
+                new Item(1, "3Sum", "https://a.com", Item.Pool.H, LocalDate.now(), 0),
+                new Item(2, "100%_done", "https://b.com", Item.Pool.H, LocalDate.now(), 0)
+        ));
+        // shorter than a trigram, answered by scanning names
+        assertEquals(List.of(1), db.searchItemsByName("3s", 10).orElseThrow().stream().map(Item::getItemId).toList());
+        // LIKE wildcards in the query are matched literally
+        assertEquals(List.of(2), db.searchItemsByName("%_", 10).orElseThrow().stream().map(Item::getItemId).toList());
+        assertTrue(db.searchItemsByName("3_u", 10).orElseThrow().isEmpty());
+    }
+
+    @Test
+    void testInsertFillsTrigramIndex() throws Exception {
+        db.insertItem(new Item(1, "Valid Anagram", "https://a.com", Item.Pool.H, LocalDate.now(), 0));
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM item_name_trigrams WHERE id = 1")) {
+            rs.next();
+            assertEquals(TrigramIndex.trigrams("valid anagram").size(), rs.getInt(1));
+        }
+        db.clearItems();
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM item_name_trigrams")) {
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    void testBulkWritesKeepTrigramIndex() throws Exception {
+        Path csv = Files.createTempFile("ansrs-bulk", ".csv");
+        try {
+            Files.write(csv, List.of("ITEM_ID,ITEM_NAME,ITEM_LINK,ITEM_POOL,ITEM_LAST_RECALL,totalRecalls",
+                    "1,Merge Intervals,https://a.com,H,,", "2,Two Sum,https://b.com,M,,"));
+            db.bulkImport(csv, true, false, r -> fail(r)).orElseThrow();
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+        assertEquals(List.of(1), db.searchItemsByName("interval", 10).orElseThrow().stream().map(Item::getItemId).toList());
+
+        db.upsertItemsBatch(List.of(new Item(1, "Insert Interval", "https://a.com", Item.Pool.H, LocalDate.now(), 0),
+                new Item(3, "Three Sum", "https://c.com", Item.Pool.L, LocalDate.now(), 0)));
+        assertTrue(db.searchItemsByName("merge", 10).orElseThrow().isEmpty());
+        assertEquals(List.of(2, 3), db.searchItemsByName("sum", 10).orElseThrow().stream().map(Item::getItemId).toList());
+        assertEquals(fullRebuildSize(), indexSize());
+
+        // the trigger is back on once a batch is done
+        db.insertItem(new Item(4, "Word Ladder", "https://d.com", Item.Pool.H, LocalDate.now(), 0));
+        assertEquals(1, db.searchItemsByName("ladder", 10).orElseThrow().size());
+        assertEquals(fullRebuildSize(), indexSize());
+    }
+
+    @Test
+    void testSearchFoldsCaseAsTheDatabaseDoes() {
+        Locale locale = Locale.getDefault();
+        // a locale where LOWER and Locale.ROOT disagree, dotted and dotless i
+        Locale.setDefault(Locale.forLanguageTag("tr"));
+        try {
+            db.insertItem(new Item(1, "LIST CYCLE", "https://a.com", Item.Pool.H, LocalDate.now(), 0));
+            assertEquals(1, db.searchItemsByName("LIST", 10).orElseThrow().size());
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    private long indexSize() throws Exception {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM item_name_trigrams")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    private long fullRebuildSize() throws Exception {
+        try (Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM (" + TrigramIndex.trigramsOf("items") + ")")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
 
     @Test
     void testClearItems() {
@@ -134,4 +335,142 @@ class ItemRepositoryTest {
         assertTrue(db.clearItems());
         assertEquals(0, (db.getAllItems().orElse(new ArrayList<>())).size());
     }
+
+    @Test
+    void testRecallRanking() {
+        LocalDate today = LocalDate.now();
+        db.insertItemsBatch(List.of(
+                new Item(1, "Fresh", "https://a.com", Item.Pool.L, today, 5),
+                new Item(2, "Stale", "https://b.com", Item.Pool.H, today.minusDays(20), 0),
+                new Item(3, "Middle", "https://c.com", Item.Pool.M, today.minusDays(5), 1)
+        ));
+        Map<Item.Pool, Double> weights = Map.of(Item.Pool.H, 3.0, Item.Pool.M, 2.0, Item.Pool.L, 1.0);
+
+        assertEquals(3, db.countItems());
+        assertEquals(List.of(2, 3), db.getRecallRanking(weights, 10.0, 1.2, 1.0, today, false, 0, 2).orElseThrow());
+        assertEquals(List.of(1), db.getRecallRanking(weights, 10.0, 1.2, 1.0, today, false, 2, 2).orElseThrow());
+    }
+
+    @Test
+    void testRecallScoresMaintainedIncrementally() {
+        LocalDate today = LocalDate.now();
+        Map<Item.Pool, Double> weights = Map.of(Item.Pool.H, 3.0, Item.Pool.M, 2.0, Item.Pool.L, 1.0);
+        db.insertItemsBatch(List.of(
+                new Item(1, "One", "https://a.com", Item.Pool.H, today.minusDays(10), 0),
+                new Item(2, "Two", "https://b.com", Item.Pool.M, today.minusDays(3), 0)
+        ));
+        assertEquals(List.of(1, 2), db.getRecallRanking(weights, 10.0, 1.2, 1.0, today, false, 0, 5).orElseThrow());
+
+        // recalling item 1 today drops it below item 2 without a rebuild
+        assertTrue(db.updateItemsBatch(List.of(new Item(1, "One", "https://a.com", Item.Pool.H, today, 1))));
+        assertTrue(db.insertItem(new Item(3, "Three", "https://c.com", Item.Pool.L, today.minusDays(40), 0)));
+        assertEquals(List.of(3, 2, 1), db.getRecallRanking(weights, 10.0, 1.2, 1.0, today, false, 0, 5).orElseThrow());
+
+        // a later date or changed parameters rebuild the stored scores
+        assertEquals(List.of(3, 2, 1), db.getRecallRanking(weights, 10.0, 1.2, 1.0, today.plusDays(30), false, 0, 5).orElseThrow());
+        assertEquals(List.of(2, 1, 3), db.getRecallRanking(weights, 10.0, 0.0, 1.0, today, false, 0, 5).orElseThrow());
+        assertTrue(db.rebuildRecallScores(weights, 10.0, 1.2, 1.0, today));
+    }
+
+    @Test
+    void testItemsLastRecalledBefore() throws Exception {
+        LocalDate today = LocalDate.now();
+        db.insertItemsBatch(List.of(
+                new Item(1, "Fresh", "https://a.com", Item.Pool.H, today, 0),
+                new Item(2, "Stale", "https://b.com", Item.Pool.H, today.minusDays(30), 0),
+                new Item(3, "Older", "https://c.com", Item.Pool.L, today.minusDays(60), 0),
+                new Item(4, "Week", "https://d.com", Item.Pool.M, today.minusDays(7), 0)
+        ));
+
+        assertEquals(List.of(3, 2, 4), db.getItemsLastRecalledBefore(today.minusDays(1), null).orElseThrow()
+                .stream().map(Item::getItemId).toList());
+        assertEquals(List.of(2), db.getItemsLastRecalledBefore(today.minusDays(1), Item.Pool.H).orElseThrow()
+                .stream().map(Item::getItemId).toList());
+        assertEquals(today.minusDays(60), db.getItemById(3).orElseThrow().getLastRecall());
+
+        // both window queries are answered from an index rather than a table scan
+        try (var rs = conn.createStatement().executeQuery(
+                "EXPLAIN SELECT * FROM items WHERE last_recall < DATE '2020-01-01' ORDER BY last_recall")) {
+            rs.next();
+            assertTrue(rs.getString(1).contains("IDX_ITEMS_LAST_RECALL"), rs.getString(1));
+        }
+        try (var rs = conn.createStatement().executeQuery(
+                "EXPLAIN SELECT * FROM items WHERE pool = 'H' AND last_recall < DATE '2020-01-01'")) {
+            rs.next();
+            assertTrue(rs.getString(1).contains("IDX_ITEMS_POOL_LAST_RECALL"), rs.getString(1));
+        }
+    }
+
+    @Test
+    void testBulkImportAppliesTheValidatorRules() throws Exception {
+        LocalDate today = LocalDate.now();
+        Path csv = Files.createTempFile("ansrs-bulk", ".csv");
+        try {
+            Files.write(csv, List.of(
+                    "ITEM_ID,ITEM_NAME,ITEM_LINK,ITEM_POOL,ITEM_LAST_RECALL,totalRecalls",
+                    "1,\"One, first\",https://one.example,h,2024-02-29,3",
+                    "2,'Two',https://two.example,M,,",
+                    "3,Three,https://three.example,L,2023-02-29,1",
+                    "4,Four,https://four.example,L," + today.plusDays(1) + ",1",
+                    "5,Five,http://five.example,H,,",
+                    "x6,Six,https://six.example,H,,",
+                    "7,Seven,https://seven.example,Q,,",
+                    "10,Ten,https://ten.example,\tl ,,",
+                    "8,,https://eight.example,H,,",
+                    "9,Nine,https://nine.example,H,,-2",
+                    "2,Two again,https://two.example,L,,5"));
+            List<String> rejects = new ArrayList<>();
+            CsvBulk.Result result = db.bulkImport(csv, true, false, rejects::add).orElseThrow();
+            assertEquals(new CsvBulk.Result(12, 4, 0, 7), result);
+            assertEquals(7, rejects.size());
+            assertTrue(rejects.get(0).startsWith("line 4 [3, Three"), rejects.get(0));
+            assertTrue(rejects.get(0).endsWith("ITEM_LAST_RECALL must be YYYY-MM-DD"), rejects.get(0));
+
+            Item one = db.getItemById(1).orElseThrow();
+            assertEquals("One, first", one.getItemName());
+            assertEquals(Item.Pool.H, one.getItemPool());
+            assertEquals(LocalDate.of(2024, 2, 29), one.getLastRecall());
+            // whitespace is trimmed as String.trim does it, tabs included
+            assertEquals(Item.Pool.L, db.getItemById(10).orElseThrow().getItemPool());
+            // merged in file order, so the later row of an id wins, empty fields fall back like the row by row path
+            Item two = db.getItemById(2).orElseThrow();
+            assertEquals("Two again", two.getItemName());
+            assertEquals(5, two.getTotalRecalls());
+            assertEquals(today, two.getLastRecall());
+
+            // preserving the database keeps existing rows and the first row of an id in the file, later rows of the
+            // id are duplicates of it rather than rejects
+            db.clearItems();
+            db.insertItem(new Item(1, "Kept", "https://kept.example", Item.Pool.M, today, 0));
+            rejects.clear();
+            result = db.bulkImport(csv, true, true, rejects::add).orElseThrow();
+            assertEquals(new CsvBulk.Result(12, 2, 2, 7), result);
+            assertEquals("Kept", db.getItemById(1).orElseThrow().getItemName());
+            assertEquals("Two", db.getItemById(2).orElseThrow().getItemName());
+            assertEquals(7, rejects.size());
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
+
+    @Test
+    void testBulkExportImportsBack() throws Exception {
+        db.insertItemsBatch(List.of(
+                new Item(2, "Two, with comma", "https://b.com", Item.Pool.M, LocalDate.of(2024, 3, 1), 3),
+                baseItem));
+        Path csv = Files.createTempFile("ansrs-bulk", ".csv");
+        try {
+            assertEquals(2L, db.bulkExport(csv).orElseThrow());
+            List<Item> back = new CSVImporter(csv.toString()).parse();
+            assertEquals(List.of(1, 2), back.stream().map(Item::getItemId).toList());
+            assertEquals("Two, with comma", back.get(1).getItemName());
+            assertEquals(LocalDate.of(2024, 3, 1), back.get(1).getLastRecall());
+
+            db.clearItems();
+            assertEquals(new CsvBulk.Result(3, 2, 0, 0), db.bulkImport(csv, true, false, r -> fail(r)).orElseThrow());
+            assertEquals("Two, with comma", db.getItemById(2).orElseThrow().getItemName());
+        } finally {
+            Files.deleteIfExists(csv);
+        }
+    }
 }
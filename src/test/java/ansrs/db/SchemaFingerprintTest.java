@@ -0,0 +1,97 @@
+package ansrs.db;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaFingerprintTest {
+
+    private Path tempDir;
+    private Path dbPath;
+
+    @BeforeEach
+    void setup() throws Exception {
+        tempDir = Files.createTempDirectory("ansrs-fingerprint");
+        dbPath = tempDir.resolve("ansrs.db");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void everyBundledMigrationIsFingerprinted() throws Exception {
+        try (Stream<Path> scripts = Files.list(Path.of("src/main/resources/db/migration"))) {
+            List<String> bundled = scripts.map(p -> p.getFileName().toString()).sorted(Comparator.comparingInt(
+                    (String name) -> Integer.parseInt(name.substring(1, name.indexOf("__"))))).toList();
+            assertEquals(bundled, SchemaFingerprint.migrations(SchemaFingerprint.class.getClassLoader()));
+        }
+    }
+
+    @Test
+    void migrationsListedFromJarInVersionOrder() throws Exception {
+        Path jar = tempDir.resolve("migrations.jar");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            // directory entries as the jar plugin writes them, the resource lookup needs one
+            out.putNextEntry(new JarEntry("db/"));
+            out.putNextEntry(new JarEntry(SchemaFingerprint.LOCATION + "/"));
+            for (String name : List.of("V10__later.sql", "V2__second.sql", "V1__first.sql", "README.txt")) {
+                out.putNextEntry(new JarEntry(SchemaFingerprint.LOCATION + "/" + name));
+                out.write("SELECT 1;".getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{jar.toUri().toURL()}, null)) {
+            assertEquals(List.of("V1__first.sql", "V2__second.sql", "V10__later.sql"), SchemaFingerprint.migrations(loader));
+        }
+    }
+
+    @Test
+    void fingerprintStoredAfterMigration() throws Exception {
+        try (Connection connection = DatabaseInitialiser.initEmbeddedDb(dbPath)) {
+            assertEquals(Optional.of(SchemaFingerprint.compute()), SchemaFingerprint.stored(connection));
+        }
+    }
+
+    @Test
+    void warmStartSkipsFlyway() throws Exception {
+        try (Connection connection = DatabaseInitialiser.initEmbeddedDb(dbPath);
+             Statement st = connection.createStatement()) {
+            // flyway refuses a non-empty schema without its history table, so reopening only succeeds if it never runs
+            st.execute("DROP TABLE \"flyway_schema_history\"");
+        }
+        try (Connection connection = DatabaseInitialiser.initEmbeddedDb(dbPath)) {
+            assertTrue(SchemaFingerprint.stored(connection).isPresent());
+        }
+    }
+
+    @Test
+    void changedFingerprintRunsFlyway() throws Exception {
+        try (Connection connection = DatabaseInitialiser.initEmbeddedDb(dbPath)) {
+            SchemaFingerprint.store(connection, "outdated");
+            try (Statement st = connection.createStatement()) {
+                st.execute("DROP TABLE \"flyway_schema_history\"");
+            }
+        }
+        assertThrows(Exception.class, () -> DatabaseInitialiser.initEmbeddedDb(dbPath).close());
+    }
+}
@@ -0,0 +1,108 @@
+package ansrs.db;
+
+import ansrs.data.Item;
+import org.junit.jupiter.api.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StatementCacheTest {
+
+    static Connection conn;
+
+    @BeforeAll
+    static void setup() {
+        conn = DatabaseInitialiser.initInMemoryDb("statement_cache_test");
+    }
+
+    @AfterAll
+    static void teardown() throws Exception {
+        conn.close();
+    }
+
+    @Test
+    void testStatementsAreReusedAndReset() throws Exception {
+        StatementCache cache = new StatementCache(conn, 4);
+        PreparedStatement first, view;
+        try (PreparedStatement ps = cache.prepare("SELECT ? + 1")) {
+            view = ps;
+            ps.setInt(1, 41);
+            ResultSet rs = ps.executeQuery();
+            rs.next();
+            assertEquals(42, rs.getInt(1));
+            first = ps.unwrap(PreparedStatement.class);
+        }
+        // a returned view reports closed and refuses work until it is handed out again
+        assertTrue(view.isClosed());
+        assertThrows(Exception.class, view::executeQuery);
+        try (PreparedStatement ps = cache.prepare("SELECT ? + 1")) {
+            // a hit hands out the same view, nothing is allocated per call
+            assertSame(view, ps);
+            assertSame(first, ps.unwrap(PreparedStatement.class));
+            // parameters from the previous caller are cleared on release
+            assertThrows(Exception.class, ps::executeQuery);
+        }
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        cache.close();
+        assertTrue(first.isClosed());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() throws Exception {
+        StatementCache cache = new StatementCache(conn, 2);
+        PreparedStatement a;
+        try (PreparedStatement ps = cache.prepare("SELECT 1")) {
+            a = ps.unwrap(PreparedStatement.class);
+        }
+        try (PreparedStatement ignored = cache.prepare("SELECT 2")) {}
+        try (PreparedStatement ignored = cache.prepare("SELECT 1")) {}
+        try (PreparedStatement ignored = cache.prepare("SELECT 3")) {}
+
+        // SELECT 2 was the least recently used and made room for SELECT 3
+        assertEquals(2, cache.size());
+        assertFalse(a.isClosed());
+        try (PreparedStatement ignored = cache.prepare("SELECT 2")) {}
+        assertTrue(a.isClosed());
+        cache.close();
+    }
+
+    @Test
+    void testNestedUseOfTheSameSqlGetsItsOwnStatement() throws Exception {
+        StatementCache cache = new StatementCache(conn, 4);
+        try (PreparedStatement outer = cache.prepare("SELECT ?")) {
+            outer.setInt(1, 1);
+            try (PreparedStatement inner = cache.prepare("SELECT ?")) {
+                assertNotSame(outer.unwrap(PreparedStatement.class), inner.unwrap(PreparedStatement.class));
+                inner.setInt(1, 2);
+                ResultSet rs = inner.executeQuery();
+                rs.next();
+                assertEquals(2, rs.getInt(1));
+            }
+            ResultSet rs = outer.executeQuery();
+            rs.next();
+            assertEquals(1, rs.getInt(1));
+        }
+        assertEquals(1, cache.size());
+        cache.close();
+    }
+
+    @Test
+    void testRepositoriesShareTheConnectionCache() {
+        ItemRepository items = new ItemRepository(conn);
+        StatementCache cache = StatementCache.of(conn);
+        assertSame(cache, StatementCache.of(conn));
+
+        long misses = cache.misses();
+        for (int i = 1; i <= 50; i++) {
+            assertTrue(items.insertItem(new Item(i, "Item" + i, "https://a.com", Item.Pool.M, LocalDate.now(), 0)));
+            assertTrue(items.getItemById(i).isPresent());
+        }
+        assertTrue(cache.misses() - misses <= 4, "statements were re-prepared per call");
+        assertTrue(items.clearItems());
+    }
+}
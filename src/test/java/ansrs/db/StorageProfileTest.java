@@ -0,0 +1,76 @@
+package ansrs.db;
+
+import org.junit.jupiter.api.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StorageProfileTest {
+
+    Path tempDir;
+
+    @BeforeEach
+    void createDir() throws Exception {
+        tempDir = Files.createTempDirectory("ansrs-profile-test");
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private static String setting(Connection conn, String name) throws Exception {
+        try (PreparedStatement ps = conn.prepareStatement("SELECT SETTING_VALUE FROM INFORMATION_SCHEMA.SETTINGS WHERE SETTING_NAME = ?")) {
+            ps.setString(1, name);
+            ResultSet rs = ps.executeQuery();
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+
+    @Test
+    void testFromName() {
+        assertEquals(StorageProfile.FAST_BULK, StorageProfile.fromName("fast-bulk").orElseThrow());
+        assertEquals(StorageProfile.FAST_BULK, StorageProfile.fromName(" FAST_BULK ").orElseThrow());
+        assertEquals(StorageProfile.DURABLE, StorageProfile.fromName("Durable").orElseThrow());
+        assertTrue(StorageProfile.fromName("turbo").isEmpty());
+        assertTrue(StorageProfile.fromName("").isEmpty());
+        assertEquals("fast-bulk", StorageProfile.FAST_BULK.displayName());
+    }
+
+    @Test
+    void testDatabaseOpensWithProfileSettings() throws Exception {
+        try (Connection conn = DatabaseInitialiser.initEmbeddedDb(tempDir.resolve("ansrs.db"), StorageProfile.COMPACT)) {
+            assertEquals("TRUE", setting(conn, "COMPRESS").toUpperCase());
+            assertEquals("5000", setting(conn, "MAX_COMPACT_TIME"));
+            assertEquals("500", setting(conn, "WRITE_DELAY"));
+        }
+        // the profile is a property of the open, not of the file
+        try (Connection conn = DatabaseInitialiser.initEmbeddedDb(tempDir.resolve("ansrs.db"), StorageProfile.FAST_BULK)) {
+            assertEquals("65536", setting(conn, "CACHE_SIZE"));
+            assertEquals("2000", setting(conn, "WRITE_DELAY"));
+            assertEquals("0", setting(conn, "MAX_COMPACT_TIME"));
+        }
+    }
+
+    @Test
+    void testScopeRestoresPreviousSettings() throws Exception {
+        try (Connection conn = DatabaseInitialiser.initEmbeddedDb(tempDir.resolve("ansrs.db"), StorageProfile.DURABLE)) {
+            ItemRepository items = new ItemRepository(conn);
+            try (StorageProfile.Scope scope = items.useStorageProfile(StorageProfile.FAST_BULK)) {
+                assertEquals("65536", setting(conn, "CACHE_SIZE"));
+                assertEquals("2000", setting(conn, "WRITE_DELAY"));
+            }
+            assertEquals("16384", setting(conn, "CACHE_SIZE"));
+            assertEquals("0", setting(conn, "WRITE_DELAY"));
+        }
+    }
+}
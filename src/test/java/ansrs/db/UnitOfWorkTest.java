@@ -0,0 +1,117 @@
+package ansrs.db;
+
+import ansrs.data.Item;
+import ansrs.set.SetTransaction;
+import ansrs.set.WorkingSet;
+import org.junit.jupiter.api.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UnitOfWorkTest {
+
+    static Connection conn;
+    static ItemRepository items;
+    static ArchiveRepository archive;
+    Path tempDir;
+
+    @BeforeAll
+    static void setup() {
+        conn = DatabaseInitialiser.initInMemoryDb("unit_of_work_test");
+        items = new ItemRepository(conn);
+        archive = new ArchiveRepository(conn);
+    }
+
+    @BeforeEach
+    void createDir() throws Exception {
+        tempDir = Files.createTempDirectory("ansrs-uow-test");
+    }
+
+    @AfterEach
+    void clear() throws Exception {
+        items.clearItems();
+        archive.clearDatabase();
+        try (Stream<Path> files = Files.walk(tempDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @AfterAll
+    static void teardown() throws Exception {
+        items.close();
+    }
+
+    private static Item item(int id) {
+        return new Item(id, "Item" + id, "https://a.com", Item.Pool.M, LocalDate.now(), 0);
+    }
+
+    @Test
+    void testCommitSpansRepositoriesAndFlushesSetsAfterwards() {
+        WorkingSet workingSet = new WorkingSet(tempDir.resolve("working.set"));
+        try (UnitOfWork unit = items.beginUnitOfWork();
+             SetTransaction tx = workingSet.beginBatch()) {
+            unit.enlist(tx);
+            assertTrue(items.insertItemsBatch(List.of(item(1), item(2))));
+            assertTrue(archive.insertItem(item(3)));
+            workingSet.addItem(1);
+            // nothing reaches the set file before the database commit
+            assertFalse(new WorkingSet(workingSet.getSetPath()).containsItem(1));
+            unit.commit();
+        }
+        assertEquals(2, items.countItems());
+        assertTrue(archive.contains(3));
+        assertTrue(new WorkingSet(workingSet.getSetPath()).containsItem(1));
+    }
+
+    @Test
+    void testCloseWithoutCommitRollsBackEverything() {
+        WorkingSet workingSet = new WorkingSet(tempDir.resolve("working.set"));
+        try (UnitOfWork unit = items.beginUnitOfWork();
+             SetTransaction tx = workingSet.beginBatch()) {
+            unit.enlist(tx);
+            assertTrue(items.insertItem(item(1)));
+            assertTrue(archive.insertItem(item(2)));
+            workingSet.addItem(1);
+            try (Stream<Item> all = items.streamAllItems()) {
+                assertEquals(1, all.count());
+            }
+        }
+        assertEquals(0, items.countItems());
+        assertFalse(archive.contains(2));
+        assertFalse(workingSet.containsItem(1));
+        assertFalse(new WorkingSet(workingSet.getSetPath()).containsItem(1));
+    }
+
+    @Test
+    void testFailedCallOnlyUndoesItsOwnWork() {
+        try (UnitOfWork unit = items.beginUnitOfWork()) {
+            assertTrue(items.insertItem(item(1)));
+            // the duplicate fails the batch, its savepoint is rolled back but item 1 stays in the unit
+            assertThrows(RuntimeException.class, () -> items.insertItemsBatch(List.of(item(2), item(1))));
+            unit.commit();
+        }
+        assertEquals(Set.of(1), items.getAllItemsIds().orElseThrow());
+    }
+
+    @Test
+    void testAbandonedJoinedUnitFailsTheOuterCommit() {
+        try (UnitOfWork outer = items.beginUnitOfWork()) {
+            assertTrue(items.insertItem(item(1)));
+            try (UnitOfWork inner = archive.beginUnitOfWork()) {
+                assertTrue(archive.insertItem(item(2)));
+            }
+            assertThrows(RuntimeException.class, outer::commit);
+        }
+        assertEquals(0, items.countItems());
+        assertFalse(archive.contains(2));
+        // the connection is back in auto-commit once the unit is over
+        assertTrue(items.insertItem(item(5)));
+        assertEquals(1, items.countItems());
+    }
+}
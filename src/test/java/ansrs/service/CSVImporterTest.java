@@ -3,8 +3,12 @@ package ansrs.service;
 import ansrs.data.Item;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -70,4 +74,113 @@ class CSVImporterTest {
         assertEquals(1, items.size());
         assertEquals(2, items.get(0).getItemId());
     }
+
+    @Test
+    void testStreamHandsOverChunksAndSkipsCommittedRecords() {
+        String csv = """
+            ITEM_ID,ITEM_NAME,ITEM_LINK,ITEM_POOL,ITEM_LAST_RECALL,totalRecalls
+            1,One,https://1.com,H,2024-01-01,0
+            -2,Bad,https://2.com,H,2024-01-01,0
+            3,Three,https://3.com,M,2024-01-01,0
+            4,Four,https://4.com,L,2024-01-01,0
+            """;
+        List<List<Integer>> chunks = new ArrayList<>();
+        List<Long> progress = new ArrayList<>();
+        CSVImporter.Summary summary = new CSVImporter(new StringReader(csv)).stream(2, 0, (chunk, records) -> {
+            chunks.add(chunk.stream().map(Item::getItemId).toList());
+            progress.add(records);
+            return true;
+        });
+        assertEquals(List.of(List.of(1, 3), List.of(4)), chunks);
+        assertEquals(List.of(4L, 5L), progress);
+        assertEquals(new CSVImporter.Summary(5, 3, 1, true), summary);
+
+        // resuming after the first chunk reads past the header and the rows it held
+        chunks.clear();
+        summary = new CSVImporter(new StringReader(csv)).stream(2, 4, (chunk, records) -> {
+            chunks.add(chunk.stream().map(Item::getItemId).toList());
+            return true;
+        });
+        assertEquals(List.of(List.of(4)), chunks);
+        assertEquals(1, summary.valid());
+    }
+
+    @Test
+    void testStreamStopsWhenHandlerFails() {
+        String csv = "1,One,https://1.com,H,2024-01-01,0\n2,Two,https://2.com,H,2024-01-01,0\n";
+        CSVImporter.Summary summary = new CSVImporter(new StringReader(csv)).stream(1, 0, (chunk, records) -> false);
+        assertFalse(summary.completed());
+        assertEquals(0, summary.records());
+    }
+
+    @Test
+    void testParallelValidationKeepsFileOrder() {
+        StringBuilder csv = new StringBuilder("ITEM_ID,ITEM_NAME,ITEM_LINK,ITEM_POOL,ITEM_LAST_RECALL,totalRecalls\n");
+        List<Integer> expected = new ArrayList<>();
+        // enough rows for several validation batches, every seventh one invalid
+        for (int id = 1; id <= 5000; id++) {
+            if (id % 7 == 0) csv.append(id).append(",Bad,http://").append(id).append(".com,H,2024-01-01,0\n");
+            else {
+                csv.append(id).append(",Item ").append(id).append(",https://").append(id).append(".com,M,2024-01-01,0\n");
+                expected.add(id);
+            }
+        }
+        List<Integer> ids = new ArrayList<>();
+        List<Long> progress = new ArrayList<>();
+        CSVImporter.Summary summary = new CSVImporter(new StringReader(csv.toString())).stream(1000, 0, 4, (chunk, records) -> {
+            chunk.forEach(i -> ids.add(i.getItemId()));
+            progress.add(records);
+            return true;
+        });
+        assertEquals(expected, ids);
+        assertEquals(new CSVImporter.Summary(5001, expected.size(), 5000 - expected.size(), true), summary);
+        // every chunk boundary is a record number, counting the header, so a resume lands after it
+        assertEquals(progress.stream().sorted().toList(), progress);
+        assertEquals(5001L, progress.get(progress.size() - 1));
+    }
+
+    @Test
+    void testParallelStreamStopsEarlyAndReportsMalformedRowsInOrder() {
+        StringBuilder csv = new StringBuilder();
+        for (int id = 1; id <= 5000; id++) csv.append(id).append(",Item,https://x.com,H,2024-01-01,0\n");
+        // the reader is still ahead when the handler gives up, it must not hang the import
+        CSVImporter.Summary summary = new CSVImporter(new StringReader(csv.toString())).stream(10, 0, 4, (chunk, records) -> records < 20);
+        assertFalse(summary.completed());
+        assertEquals(10, summary.records());
+
+        csv.append("5001,OnlyTwoFields\n");
+        List<Long> handed = new ArrayList<>();
+        assertThrows(RuntimeException.class, () -> new CSVImporter(new StringReader(csv.toString())).stream(1000, 0, 4, (chunk, records) -> handed.add(records)));
+        // rows ahead of the malformed one were handed over before it failed the file
+        assertEquals(List.of(1000L, 2000L, 3000L, 4000L, 5000L), handed);
+    }
+
+    @Test
+    void testHasHeaderDecidesTheFirstRowAsStreamDoes() {
+        assertTrue(new CSVImporter(new StringReader("ITEM_ID,ITEM_NAME,ITEM_LINK,ITEM_POOL,ITEM_LAST_RECALL,totalRecalls\n1,A,https://a.com,H,,")).hasHeader());
+        assertFalse(new CSVImporter(new StringReader(" 1 ,A,https://a.com,H,,")).hasHeader());
+        assertFalse(new CSVImporter(new StringReader("")).hasHeader());
+        assertThrows(RuntimeException.class, () -> new CSVImporter(new StringReader("id,name\n1,A,https://a.com,H,,")).hasHeader());
+    }
+
+    @Test
+    void testInvalidRowCountLeadsTheRowWarnings() {
+        StringBuilder csv = new StringBuilder();
+        for (int id = 1; id <= 3000; id++) csv.append(id).append(id % 1000 == 0 ? ",Bad,http://x.com" : ",Item,https://x.com").append(",H,2024-01-01,0\n");
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true, StandardCharsets.UTF_8));
+        try {
+            new CSVImporter(new StringReader(csv.toString())).stream(500, 0, 4, (chunk, records) -> true);
+        } finally {
+            System.setOut(out);
+        }
+        String warnings = printed.toString(StandardCharsets.UTF_8);
+        int count = warnings.indexOf("3 invalid row(s)");
+        assertTrue(count >= 0);
+        assertTrue(count < warnings.indexOf("Invalid "));
+        assertTrue(count < warnings.indexOf("[1000, Bad"));
+        assertTrue(warnings.indexOf("[1000, Bad") < warnings.indexOf("[2000, Bad"));
+        assertTrue(warnings.indexOf("[2000, Bad") < warnings.indexOf("[3000, Bad"));
+    }
 }
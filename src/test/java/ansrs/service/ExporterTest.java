@@ -0,0 +1,63 @@
+package ansrs.service;
+
+import ansrs.data.Group;
+import ansrs.data.Item;
+import ansrs.db.GroupItemRepository;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExporterTest {
+
+    @Test
+    void testItemCsvImportsBack() {
+        List<Item> items = List.of(
+                new Item(1, "Two Sum, again", "https://a.com", Item.Pool.H, LocalDate.of(2024, 1, 2), 3),
+                new Item(2, "Plain", "https://b.com", Item.Pool.L, LocalDate.of(2023, 12, 31), 0));
+        StringWriter out = new StringWriter();
+        Exporter exporter = new Exporter(out, Exporter.Format.CSV);
+        assertEquals(2, exporter.writeItems(items.stream()));
+        exporter.finish();
+
+        assertTrue(out.toString().startsWith("ITEM_ID,ITEM_NAME,ITEM_LINK,ITEM_POOL,ITEM_LAST_RECALL,totalRecalls\n"));
+        List<Item> back = new CSVImporter(new StringReader(out.toString())).parse();
+        assertEquals(2, back.size());
+        assertEquals("Two Sum, again", back.get(0).getItemName());
+        assertEquals(LocalDate.of(2024, 1, 2), back.get(0).getLastRecall());
+        assertEquals(Item.Pool.L, back.get(1).getItemPool());
+        assertEquals(0, back.get(1).getTotalRecalls());
+    }
+
+    @Test
+    void testJsonLinesAreEscaped() {
+        StringWriter out = new StringWriter();
+        Exporter exporter = new Exporter(out, Exporter.Format.JSONL);
+        exporter.writeItems(Stream.of(new Item(7, "say \"hi\"\\\n", "https://c.com", Item.Pool.M, LocalDate.of(2024, 5, 6), 2)));
+        exporter.finish();
+        assertEquals("{\"id\":7,\"name\":\"say \\\"hi\\\"\\\\\\n\",\"link\":\"https://c.com\",\"pool\":\"M\",\"last_recall\":\"2024-05-06\",\"total_recalls\":2}\n", out.toString());
+
+        out = new StringWriter();
+        exporter = new Exporter(out, Exporter.Format.JSONL);
+        exporter.writeGroups(Stream.of(new Group(3, "G", null, Instant.parse("2024-01-01T00:00:00Z"), Instant.parse("2024-01-02T00:00:00Z"))));
+        exporter.writeMemberships(Stream.of(new GroupItemRepository.Membership(3, 9)));
+        exporter.finish();
+        assertEquals("""
+                {"id":3,"name":"G","link":null,"created_at":"2024-01-01T00:00:00Z","updated_at":"2024-01-02T00:00:00Z"}
+                {"group_id":3,"item_id":9}
+                """, out.toString());
+    }
+
+    @Test
+    void testFormatFromName() {
+        assertEquals(Exporter.Format.JSONL, Exporter.Format.fromName(" jsonl ").orElseThrow());
+        assertEquals(Exporter.Format.CSV, Exporter.Format.fromName("CSV").orElseThrow());
+        assertTrue(Exporter.Format.fromName("xml").isEmpty());
+    }
+}
@@ -1,12 +1,14 @@
 package ansrs.service;
 
 import ansrs.data.Item;
+import ansrs.db.DatabaseInitialiser;
 import ansrs.db.ItemRepository;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.Mockito;
 
+import java.sql.Connection;
 import java.time.LocalDate;
 import java.util.*;
 
@@ -37,7 +39,7 @@ class RecallServiceTest {
         items.add(new Item(9, "L-2d-0rec", "", Item.Pool.L, today.minusDays(2), 0));   // daysSince=3
         items.add(new Item(10, "M-0d-0rec", "", Item.Pool.M, today, 0));              // daysSince=1
 
-        Mockito.when(dbMock.getAllItems()).thenReturn(Optional.of(items));
+        Mockito.when(dbMock.streamAllItems()).thenAnswer(i -> items.stream());
 
         // Use the existing implementation (alpha=10, beta=1.2, gamma=1, date=today)
         service = new RecallService(dbMock, 10.0, 1.2, 1.0, today);
@@ -152,4 +154,100 @@ class RecallServiceTest {
 
         assertThat(base).isGreaterThan(decay);
     }
+
+    private RecallService freshService(List<Item> source) {
+        ItemRepository repo = Mockito.mock(ItemRepository.class);
+        Mockito.when(repo.streamAllItems()).thenAnswer(i -> source.stream());
+        return new RecallService(repo, 10.0, 1.2, 1.0, today);
+    }
+
+    @Test
+    void topKMatchesFullSort() {
+        Random random = new Random(42);
+        List<Item> many = new ArrayList<>();
+        Item.Pool[] pools = Item.Pool.values();
+        for (int i = 1; i <= 2000; i++) {
+            many.add(new Item(i, "r" + i, "", pools[random.nextInt(3)], today.minusDays(random.nextInt(60)), random.nextInt(5)));
+        }
+        RecallService topK = freshService(many);
+
+        List<Integer> expected = many.stream()
+                .sorted(Comparator.comparingDouble((Item p) -> topK.getRating(p)).reversed())
+                .map(Item::getItemId)
+                .toList();
+
+        assertThat(topK.recall(20)).containsExactlyElementsOf(expected.subList(0, 20));
+        // a second recall continues from where the first one stopped
+        assertThat(topK.recall(30)).containsExactlyElementsOf(expected.subList(20, 50));
+        assertThat(((InMemoryRecallStrategy) topK.getStrategy()).getRemainingCount()).isEqualTo(1950);
+    }
+
+    @Test
+    void recallMoreThanAvailableReturnsEverything() {
+        RecallService all = freshService(items);
+        assertThat(all.recall(50)).hasSize(10);
+        assertThat(all.recall(5)).isEmpty();
+    }
+
+    @Test
+    void tieBreakerIsDeterministic() {
+        // identical pool, date and recalls, so every rating is equal
+        List<Item> tied = List.of(
+                new Item(7, "a", "", Item.Pool.M, today.minusDays(3), 1),
+                new Item(3, "b", "", Item.Pool.M, today.minusDays(3), 1),
+                new Item(9, "c", "", Item.Pool.M, today.minusDays(3), 1),
+                new Item(5, "d", "", Item.Pool.M, today.minusDays(3), 1)
+        );
+
+        assertThat(freshService(tied).recall(3)).containsExactly(7, 3, 9);
+
+        RecallService lowest = freshService(tied);
+        lowest.setTieBreaker(RecallService.TieBreaker.LOWEST_ID);
+        assertThat(lowest.recall(3)).containsExactly(3, 5, 7);
+
+        RecallService highest = freshService(tied);
+        highest.setTieBreaker(RecallService.TieBreaker.HIGHEST_ID);
+        assertThat(highest.recall(3)).containsExactly(9, 7, 5);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"INSERTION_ORDER", "LOWEST_ID", "HIGHEST_ID"})
+    void databaseRankingMatchesInMemory(String tieBreaker) throws Exception {
+        Connection conn = DatabaseInitialiser.initInMemoryDb("recall_push_down_" + tieBreaker);
+        ItemRepository repo = new ItemRepository(conn);
+        Random random = new Random(7);
+        List<Item> many = new ArrayList<>();
+        Item.Pool[] pools = Item.Pool.values();
+        for (int i = 1; i <= 500; i++) {
+            // few distinct values, so plenty of exact ties
+            many.add(new Item(i, "r" + i, "https://r.com", pools[random.nextInt(3)], today.minusDays(random.nextInt(5)), random.nextInt(3)));
+        }
+        repo.insertItemsBatch(many);
+
+        RecallService memory = new RecallService(repo, 10.0, 1.2, 1.0, today, RecallService.Mode.IN_MEMORY);
+        RecallService database = new RecallService(repo, 10.0, 1.2, 1.0, today, RecallService.Mode.DATABASE);
+        memory.setTieBreaker(RecallService.TieBreaker.valueOf(tieBreaker));
+        database.setTieBreaker(RecallService.TieBreaker.valueOf(tieBreaker));
+
+        assertThat(database.recall(25)).containsExactlyElementsOf(memory.recall(25));
+        assertThat(database.recall(40)).containsExactlyElementsOf(memory.recall(40));
+        repo.close();
+    }
+
+    @Test
+    void insertionOrderTiesFollowIdsInBothStrategies() throws Exception {
+        Connection conn = DatabaseInitialiser.initInMemoryDb("recall_insertion_order");
+        ItemRepository repo = new ItemRepository(conn);
+        // equal ratings, written to the table in an order unrelated to their ids
+        for (int id : new int[]{9, 3, 7, 5}) {
+            repo.insertItemsBatch(List.of(new Item(id, "t" + id, "https://t.com", Item.Pool.M, today.minusDays(3), 1)));
+        }
+
+        RecallService memory = new RecallService(repo, 10.0, 1.2, 1.0, today, RecallService.Mode.IN_MEMORY);
+        RecallService database = new RecallService(repo, 10.0, 1.2, 1.0, today, RecallService.Mode.DATABASE);
+
+        assertThat(memory.recall(3)).containsExactly(3, 5, 7);
+        assertThat(database.recall(3)).containsExactly(3, 5, 7);
+        repo.close();
+    }
 }
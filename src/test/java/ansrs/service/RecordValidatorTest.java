@@ -0,0 +1,82 @@
+package ansrs.service;
+
+import ansrs.data.Item;
+import ansrs.service.RecordValidator.Outcome;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordValidatorTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2024, 6, 15);
+
+    private static CSVRecord record(String line) throws Exception {
+        return CSVFormat.DEFAULT.parse(new StringReader(line)).iterator().next();
+    }
+
+    private static Outcome check(String line) throws Exception {
+        return new RecordValidator(TODAY).check(record(line));
+    }
+
+    @Test
+    void testValidRecordBuildsItem() throws Exception {
+        RecordValidator validator = new RecordValidator(TODAY);
+        assertEquals(Outcome.VALID, validator.check(record("7,Two Sum,https://x.com/1,m,2024-02-29,12")));
+        Item item = validator.item();
+        assertEquals(7, item.getItemId());
+        assertEquals("Two Sum", item.getItemName());
+        assertEquals("https://x.com/1", item.getItemLink());
+        assertEquals(Item.Pool.M, item.getItemPool());
+        assertEquals(LocalDate.of(2024, 2, 29), item.getLastRecall());
+        assertEquals(12, item.getTotalRecalls());
+
+        // empty date and recalls fall back to today and 0
+        assertEquals(Outcome.VALID, validator.check(record("8,Name,https://x.com,H,,")));
+        assertEquals(TODAY, validator.item().getLastRecall());
+        assertEquals(0, validator.item().getTotalRecalls());
+
+        assertEquals(Outcome.BAD_LINK, validator.check(record("9,Name,http://x.com,H,,")));
+        assertThrows(IllegalStateException.class, validator::item);
+    }
+
+    @Test
+    void testQuotesAndWhitespaceAreSanitizedInPlace() throws Exception {
+        RecordValidator validator = new RecordValidator(TODAY);
+        assertEquals(Outcome.VALID, validator.check(record(" '1'1 ,\"\"\"Quoted\"\" name\"\"\", 'https://x.com' ,' L ',\"'2024-01-01'\", +3 ")));
+        Item item = validator.item();
+        assertEquals(11, item.getItemId());
+        assertEquals("Quoted name", item.getItemName());
+        assertEquals("https://x.com", item.getItemLink());
+        assertEquals(Item.Pool.L, item.getItemPool());
+        assertEquals(3, item.getTotalRecalls());
+    }
+
+    @Test
+    void testEachRuleReportsItsOwnOutcome() throws Exception {
+        assertEquals(Outcome.MALFORMED, check("1,OnlyOneField"));
+        assertEquals(Outcome.BAD_ID, check("0,Name,https://x.com,H,,"));
+        assertEquals(Outcome.BAD_ID, check("-4,Name,https://x.com,H,,"));
+        assertEquals(Outcome.BAD_ID, check("1 2,Name,https://x.com,H,,"));
+        assertEquals(Outcome.BAD_ID, check("2147483648,Name,https://x.com,H,,"));
+        assertEquals(Outcome.VALID, check("2147483647,Name,https://x.com,H,,"));
+        assertEquals(Outcome.VALID, check("000000000001,Name,https://x.com,H,,"));
+        assertEquals(Outcome.BAD_POOL, check("1,Name,https://x.com,HM,,"));
+        assertEquals(Outcome.BAD_POOL, check("1,Name,https://x.com,,,"));
+        assertEquals(Outcome.BAD_DATE, check("1,Name,https://x.com,H,2023-02-29,"));
+        assertEquals(Outcome.BAD_DATE, check("1,Name,https://x.com,H,2024-13-01,"));
+        assertEquals(Outcome.BAD_DATE, check("1,Name,https://x.com,H,2024-1-01,"));
+        assertEquals(Outcome.BAD_DATE, check("1,Name,https://x.com,H,01/02/2024,"));
+        assertEquals(Outcome.FUTURE_DATE, check("1,Name,https://x.com,H,2024-06-16,"));
+        assertEquals(Outcome.VALID, check("1,Name,https://x.com,H,2024-06-15,"));
+        assertEquals(Outcome.BAD_RECALLS, check("1,Name,https://x.com,H,,-1"));
+        assertEquals(Outcome.VALID, check("1,Name,https://x.com,H,,-0"));
+        assertEquals(Outcome.BAD_RECALLS, check("1,Name,https://x.com,H,,many"));
+        assertEquals(Outcome.BAD_NAME, check("1, '' ,https://x.com,H,,"));
+        assertEquals(Outcome.BAD_LINK, check("1,Name,https:/x.com,H,,"));
+    }
+}
@@ -14,7 +14,9 @@ import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 public class CompletedSetTests {
 
@@ -38,6 +40,8 @@ public class CompletedSetTests {
     void closeTests() {
         try {
             Files.deleteIfExists(completedSetTestPath);
+            Files.deleteIfExists(journalPath());
+            for (String suffix : List.of(".prev", ".tmp", ".corrupt", ".lock")) Files.deleteIfExists(completedSetTestPath.resolveSibling(completedSetTestPath.getFileName() + suffix));
             if (Files.exists(srsDir) && Files.list(srsDir).findAny().isEmpty()) {
                 Files.delete(srsDir);
             }
@@ -57,7 +61,7 @@ public class CompletedSetTests {
 
         // check file structure
         try {
-            List<String> lines = Files.readAllLines(completedSetTestPath);
+            List<String> lines = SetFiles.readTextLines(completedSetTestPath);
             Assertions.assertTrue(lines.size() >= 2, "Set file should have at least 2 lines");
             Assertions.assertEquals(LocalDate.now(), LocalDate.parse(lines.getFirst()));
             Assertions.assertEquals("0", lines.get(1).trim());
@@ -66,11 +70,25 @@ public class CompletedSetTests {
         }
     }
 
+    private Path journalPath() {
+        return completedSetTestPath.resolveSibling("test_completed.set.journal");
+    }
+
     private boolean isSetFileObjectEqual() {
+        // the state on disk, journal included, must match before and after compaction
+        CompletedSet reloaded = new CompletedSet(completedSetTestPath);
+        if (!testCompletedSet.getSetDate().equals(reloaded.getSetDate())) return false;
+        if (!testCompletedSet.getItems().keySet().equals(reloaded.getItems().keySet())) return false;
+        for (Integer id : reloaded.getItems().keySet()) {
+            CompletedSet.Pair<Item.Pool, LocalDate> r = reloaded.getItems().get(id);
+            CompletedSet.Pair<Item.Pool, LocalDate> o = testCompletedSet.getItems().get(id);
+            if (!Objects.equals(r.getPool(), o.getPool()) || !Objects.equals(r.getLast_recall(), o.getLast_recall())) return false;
+        }
+        testCompletedSet.close();
         HashMap<Integer, CompletedSet.Pair<Item.Pool, LocalDate>> fileItems = new HashMap<>();
-        HashMap<Integer, CompletedSet.Pair<Item.Pool, LocalDate>> setItems = testCompletedSet.getItems();
+        Map<Integer, CompletedSet.Pair<Item.Pool, LocalDate>> setItems = testCompletedSet.getItems();
         try {
-            List<String> lines = Files.readAllLines(completedSetTestPath);
+            List<String> lines = SetFiles.readTextLines(completedSetTestPath);
             if (lines.size() < 2) return false;
             if (!testCompletedSet.getSetDate().equals(LocalDate.parse(lines.getFirst()))) return false;
 
@@ -137,4 +155,123 @@ public class CompletedSetTests {
         Assertions.assertEquals(newDate, testCompletedSet.getSetDate());
         Assertions.assertTrue(isSetFileObjectEqual());
     }
+
+    @Test
+    void journalReplayedOnLoad() throws IOException {
+        LocalDate date = LocalDate.now().minusDays(2);
+        Assertions.assertTrue(testCompletedSet.addItem(1, Item.Pool.H, date));
+        Assertions.assertTrue(testCompletedSet.addItem(2, null, date));
+        Assertions.assertTrue(testCompletedSet.removeItem(1));
+        String base = SetJournal.BASE_PREFIX + Long.toHexString(SetFiles.checksum(completedSetTestPath));
+        Assertions.assertEquals(List.of(base, "+ 1 H " + date, "+ 2 null " + date, "- 1"), Files.readAllLines(journalPath()));
+
+        CompletedSet reloaded = new CompletedSet(completedSetTestPath);
+        Assertions.assertEquals(1, reloaded.getItems().size());
+        Assertions.assertNull(reloaded.getItems().get(2).getPool());
+        Assertions.assertEquals(date, reloaded.getItems().get(2).getLast_recall());
+
+        testCompletedSet.close();
+        Assertions.assertFalse(Files.exists(journalPath()));
+        Assertions.assertTrue(isSetFileObjectEqual());
+    }
+
+    @Test
+    void batchFlushesOnceOnCommit() throws IOException {
+        LocalDate date = LocalDate.now().minusDays(1);
+        testCompletedSet.addItem(1, Item.Pool.L, date);
+        testCompletedSet.close();
+        List<String> snapshot = Files.readAllLines(completedSetTestPath);
+
+        try (SetTransaction tx = testCompletedSet.beginBatch()) {
+            for (int i = 2; i < 2000; i++) Assertions.assertTrue(testCompletedSet.addItem(i, null, date));
+            Assertions.assertTrue(testCompletedSet.removeItem(1));
+            Assertions.assertEquals(snapshot, Files.readAllLines(completedSetTestPath));
+            Assertions.assertFalse(Files.exists(journalPath()));
+            tx.commit();
+        }
+        Assertions.assertFalse(Files.exists(journalPath()));
+        Assertions.assertEquals(1998, new CompletedSet(completedSetTestPath).getItems().size());
+        Assertions.assertTrue(isSetFileObjectEqual());
+    }
+
+    @Test
+    void batchRolledBackWithoutCommit() {
+        LocalDate date = LocalDate.now().minusDays(3);
+        testCompletedSet.addItem(1, null, date);
+        testCompletedSet.addItem(2, Item.Pool.H, date);
+        try (SetTransaction tx = testCompletedSet.beginBatch()) {
+            testCompletedSet.removeItem(1);
+            testCompletedSet.removeItem(2);
+            testCompletedSet.addItem(3, Item.Pool.M);
+        }
+        Assertions.assertEquals(Set.of(1, 2), testCompletedSet.getItems().keySet());
+        Assertions.assertNull(testCompletedSet.getItems().get(1).getPool());
+        Assertions.assertEquals(Item.Pool.H, testCompletedSet.getItems().get(2).getPool());
+        Assertions.assertEquals(date, testCompletedSet.getItems().get(2).getLast_recall());
+    }
+
+    @Test
+    void binaryFormatRoundTrip() throws IOException {
+        LocalDate date = LocalDate.now().minusDays(5);
+        testCompletedSet.addItem(1, Item.Pool.H, date);
+        testCompletedSet.addItem(2, null, date);
+        testCompletedSet.addItem(3, Item.Pool.L);
+        testCompletedSet.close();
+
+        CompletedSet binary = new CompletedSet(completedSetTestPath, SetFormat.BINARY);
+        Assertions.assertEquals(SetFormat.BINARY, SetFormat.detect(completedSetTestPath));
+        Assertions.assertEquals(20 + 9 * 3 + 4, Files.size(completedSetTestPath));
+        binary.removeItem(3);
+        binary.addItem(4, Item.Pool.M, date);
+        binary.close();
+
+        CompletedSet reloaded = new CompletedSet(completedSetTestPath);
+        Assertions.assertEquals(Set.of(1, 2, 4), reloaded.getItems().keySet());
+        Assertions.assertEquals(Item.Pool.H, reloaded.getItems().get(1).getPool());
+        Assertions.assertNull(reloaded.getItems().get(2).getPool());
+        Assertions.assertEquals(Item.Pool.M, reloaded.getItems().get(4).getPool());
+        Assertions.assertEquals(date, reloaded.getItems().get(4).getLast_recall());
+        Assertions.assertEquals(testCompletedSet.getSetDate(), reloaded.getSetDate());
+
+        new CompletedSet(completedSetTestPath, SetFormat.TEXT);
+        Assertions.assertEquals(SetFormat.TEXT, SetFormat.detect(completedSetTestPath));
+        Assertions.assertEquals(Set.of(1, 2, 4), new CompletedSet(completedSetTestPath).getItems().keySet());
+    }
+
+    @Test
+    void corruptBinarySetRecoveredFromPreviousGeneration() throws IOException {
+        LocalDate date = LocalDate.now().minusDays(1);
+        CompletedSet binary = new CompletedSet(completedSetTestPath, SetFormat.BINARY);
+        binary.addItem(1, Item.Pool.H, date);
+        binary.close();
+        binary.addItem(2, Item.Pool.L, date);
+        binary.close();
+
+        byte[] bytes = Files.readAllBytes(completedSetTestPath);
+        bytes[SetFormat.HEADER_BYTES] ^= 0x7F;
+        Files.write(completedSetTestPath, bytes);
+
+        CompletedSet recovered = new CompletedSet(completedSetTestPath);
+        Assertions.assertEquals(Set.of(1), recovered.getItems().keySet());
+        Assertions.assertEquals(Item.Pool.H, recovered.getItems().get(1).getPool());
+        Assertions.assertEquals(SetFormat.BINARY, SetFormat.detect(completedSetTestPath));
+    }
+
+    @Test
+    void concurrentWritersDoNotLoseCompletions() {
+        CompletedSet other = new CompletedSet(completedSetTestPath);
+        LocalDate date = LocalDate.now().minusDays(1);
+        try (SetTransaction tx = testCompletedSet.beginBatch()) {
+            for (int i = 1; i <= 10; i++) testCompletedSet.addItem(i, Item.Pool.M, date);
+            other.addItem(11, null, date);
+            tx.commit();
+        }
+        other.removeItem(1);
+        Assertions.assertEquals(10, other.getItems().size());
+        Assertions.assertEquals(Item.Pool.M, other.getItems().get(10).getPool());
+        CompletedSet reloaded = new CompletedSet(completedSetTestPath);
+        Assertions.assertEquals(10, reloaded.getItems().size());
+        Assertions.assertTrue(reloaded.containsItem(11));
+        Assertions.assertFalse(reloaded.containsItem(1));
+    }
 }
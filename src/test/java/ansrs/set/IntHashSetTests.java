@@ -0,0 +1,47 @@
+package ansrs.set;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class IntHashSetTests {
+
+    @Test
+    void matchesHashSetUnderRandomOperations() {
+        Random random = new Random(42);
+        IntHashSet ints = new IntHashSet();
+        Set<Integer> expected = new HashSet<>();
+        for (int i = 0; i < 200_000; i++) {
+            int id = random.nextInt(5_000);
+            if (random.nextBoolean()) Assertions.assertEquals(expected.add(id), ints.add(id));
+            else Assertions.assertEquals(expected.remove(id), ints.remove(id));
+        }
+        Assertions.assertEquals(expected, ints);
+        Assertions.assertEquals(expected.size(), ints.toIntArray().length);
+    }
+
+    @Test
+    void iteratorRemove() {
+        IntHashSet ints = new IntHashSet();
+        for (int i = 1; i <= 100; i++) ints.add(i);
+        Iterator<Integer> iterator = ints.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() % 2 == 0) iterator.remove();
+        }
+        Assertions.assertEquals(50, ints.size());
+        Assertions.assertTrue(ints.containsInt(99));
+        Assertions.assertFalse(ints.containsInt(100));
+    }
+
+    @Test
+    void smallIdsIterateInOrder() {
+        IntHashSet ints = new IntHashSet();
+        for (int id : new int[]{5, 3, 9, 1}) ints.add(id);
+        Assertions.assertEquals(List.of(1, 3, 5, 9), ints.stream().toList());
+    }
+}
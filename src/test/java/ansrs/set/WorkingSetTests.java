@@ -10,9 +10,11 @@ import org.junit.jupiter.api.Test;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 public class WorkingSetTests {
     private static final String baseDir = System.getenv("APPDATA");
@@ -36,6 +38,8 @@ public class WorkingSetTests {
     void closeTests(){
         try{
             Files.deleteIfExists(workingSetTestPath);
+            Files.deleteIfExists(journalPath());
+            for (String suffix : List.of(".prev", ".tmp", ".corrupt", ".lock", ".journal.corrupt")) Files.deleteIfExists(workingSetTestPath.resolveSibling(workingSetTestPath.getFileName() + suffix));
             if (Files.exists(srsDir) && Files.list(srsDir).findAny().isEmpty()) {
                 Files.delete(srsDir);
             }
@@ -53,7 +57,7 @@ public class WorkingSetTests {
         Assertions.assertEquals(0, testWorkingSet.getItemIdList().size());
         List<Integer> items = new ArrayList<>();
         try{
-            List<String> lines = Files.readAllLines(workingSetTestPath);
+            List<String> lines = SetFiles.readTextLines(workingSetTestPath);
             if(lines.size() <2) throw new RuntimeException(Log.errorMsg("Set File Contents Malformed"));
             Assertions.assertEquals(LocalDate.now(), LocalDate.parse(lines.getFirst()));
             for(int i=2; i< lines.size(); i++){
@@ -66,10 +70,19 @@ public class WorkingSetTests {
         Assertions.assertEquals(0,items.size());
     }
 
+    private Path journalPath() {
+        return workingSetTestPath.resolveSibling("test_working.set.journal");
+    }
+
     boolean isSetFileObjectEqual(){
+        // the state on disk, journal included, must match before and after compaction
+        WorkingSet reloaded = new WorkingSet(workingSetTestPath);
+        if (!testWorkingSet.getSetDate().equals(reloaded.getSetDate())) return false;
+        if (!testWorkingSet.getItemIdSet().equals(reloaded.getItemIdSet())) return false;
+        testWorkingSet.close();
         List<Integer> items = new ArrayList<>();
         try{
-            List<String> lines = Files.readAllLines(workingSetTestPath);
+            List<String> lines = SetFiles.readTextLines(workingSetTestPath);
             if(!testWorkingSet.getSetDate().equals(LocalDate.parse(lines.getFirst()))) return false;
             if(lines.size() <2) return false;
             for(int i=2; i< lines.size(); i++){
@@ -102,5 +115,215 @@ public class WorkingSetTests {
         Assertions.assertTrue(isSetFileObjectEqual());
     }
 
+    @Test
+    void journalAppendsWithoutRewritingSetFile() throws IOException {
+        testWorkingSet.fillSet(List.of(1, 2, 3));
+        List<String> snapshot = Files.readAllLines(workingSetTestPath);
+
+        Assertions.assertTrue(testWorkingSet.addItem(4));
+        Assertions.assertTrue(testWorkingSet.removeItem((Integer) 1));
+        Assertions.assertEquals(snapshot, Files.readAllLines(workingSetTestPath));
+        String base = SetJournal.BASE_PREFIX + Long.toHexString(SetFiles.checksum(workingSetTestPath));
+        Assertions.assertEquals(List.of(base, "+ 4", "- 1"), Files.readAllLines(journalPath()));
+
+        WorkingSet reloaded = new WorkingSet(workingSetTestPath);
+        Assertions.assertEquals(Set.of(2, 3, 4), reloaded.getItemIdSet());
+
+        testWorkingSet.close();
+        Assertions.assertFalse(Files.exists(journalPath()));
+        Assertions.assertTrue(isSetFileObjectEqual());
+    }
+
+    @Test
+    void journalCompactsPastThreshold() {
+        for (int i = 1; i <= SetJournal.COMPACT_THRESHOLD + 10; i++) testWorkingSet.addItem(i);
+        Assertions.assertTrue(Files.exists(journalPath()));
+        WorkingSet reloaded = new WorkingSet(workingSetTestPath);
+        Assertions.assertEquals(SetJournal.COMPACT_THRESHOLD + 10, reloaded.getItemIdSet().size());
+        Assertions.assertTrue(isSetFileObjectEqual());
+    }
+
+    @Test
+    void tornJournalRecordIgnored() throws IOException {
+        testWorkingSet.addItem(7);
+        Files.writeString(journalPath(), "+ 8", StandardOpenOption.APPEND);
+        WorkingSet reloaded = new WorkingSet(workingSetTestPath);
+        Assertions.assertEquals(Set.of(7), reloaded.getItemIdSet());
+    }
+
+    @Test
+    void journalCompactedIntoSnapshotNotReplayed() throws IOException {
+        testWorkingSet.addItem(5);
+        String journal = Files.readString(journalPath());
+        // the clear leaves the set file byte for byte as it was before the journal began
+        testWorkingSet.clearSet();
+        String sealed = SetJournal.SEALED_PREFIX + Long.toHexString(SetFiles.checksum(workingSetTestPath)) + "\n";
+
+        // crash after the new set file was renamed in but before the journal was deleted
+        Files.writeString(journalPath(), journal + sealed);
+        WorkingSet reloaded = new WorkingSet(workingSetTestPath);
+        Assertions.assertEquals(Set.of(), reloaded.getItemIdSet());
+        // the next record starts a journal of its own rather than landing behind the folded one
+        reloaded.addItem(6);
+        Assertions.assertEquals(Set.of(6), new WorkingSet(workingSetTestPath).getItemIdSet());
+
+        // crash before the rename, the seal names a file that never replaced the set, so the journal still applies
+        reloaded.clearSet();
+        Files.writeString(journalPath(), journal + SetJournal.SEALED_PREFIX + "0\n");
+        Assertions.assertEquals(Set.of(5), new WorkingSet(workingSetTestPath).getItemIdSet());
+    }
+
+    @Test
+    void batchFlushesOnceOnCommit() throws IOException {
+        testWorkingSet.fillSet(List.of(1, 2, 3));
+        List<String> snapshot = Files.readAllLines(workingSetTestPath);
+
+        try (SetTransaction tx = testWorkingSet.beginBatch()) {
+            for (int i = 4; i < 2000; i++) Assertions.assertTrue(testWorkingSet.addItem(i));
+            Assertions.assertTrue(testWorkingSet.removeItem((Integer) 1));
+            Assertions.assertEquals(snapshot, Files.readAllLines(workingSetTestPath));
+            Assertions.assertFalse(Files.exists(journalPath()));
+            tx.commit();
+        }
+        Assertions.assertFalse(Files.exists(journalPath()));
+        Assertions.assertFalse(Files.exists(workingSetTestPath.resolveSibling("test_working.set.tmp")));
+        Assertions.assertTrue(isSetFileObjectEqual());
+    }
+
+    @Test
+    void batchRolledBackWithoutCommit() {
+        testWorkingSet.fillSet(List.of(1, 2));
+        testWorkingSet.addItem(3);
+        try (SetTransaction tx = testWorkingSet.beginBatch()) {
+            testWorkingSet.removeItem((Integer) 1);
+            testWorkingSet.addItem(9);
+            // a nested batch joins the outer one and cannot commit it early
+            try (SetTransaction inner = testWorkingSet.beginBatch()) {
+                testWorkingSet.addItem(10);
+                inner.commit();
+            }
+            Assertions.assertTrue(testWorkingSet.getItemIdSet().contains(10));
+        }
+        Assertions.assertEquals(Set.of(1, 2, 3), testWorkingSet.getItemIdSet());
+        Assertions.assertEquals(Set.of(1, 2, 3), new WorkingSet(workingSetTestPath).getItemIdSet());
+    }
+
+    @Test
+    void binaryFormatRoundTrip() throws IOException {
+        testWorkingSet.fillSet(List.of(3, 1, 2));
+        WorkingSet binary = new WorkingSet(workingSetTestPath, SetFormat.BINARY);
+        Assertions.assertEquals(SetFormat.BINARY, SetFormat.detect(workingSetTestPath));
+        Assertions.assertEquals(4 * 5 + 4 * 3 + 4, Files.size(workingSetTestPath));
 
+        binary.addItem(7);
+        binary.removeItem((Integer) 1);
+        binary.close();
+        WorkingSet reloaded = new WorkingSet(workingSetTestPath);
+        Assertions.assertEquals(SetFormat.BINARY, reloaded.getFormat());
+        Assertions.assertEquals(Set.of(2, 3, 7), reloaded.getItemIdSet());
+        Assertions.assertEquals(testWorkingSet.getSetDate(), reloaded.getSetDate());
+
+        new WorkingSet(workingSetTestPath, SetFormat.TEXT);
+        Assertions.assertEquals(SetFormat.TEXT, SetFormat.detect(workingSetTestPath));
+        Assertions.assertEquals(Set.of(2, 3, 7), new WorkingSet(workingSetTestPath).getItemIdSet());
+    }
+
+    @Test
+    void binaryFormatLoadsLargeSet() {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 1; i <= 1_000_000; i++) ids.add(i * 3);
+        WorkingSet binary = new WorkingSet(workingSetTestPath, SetFormat.BINARY);
+        binary.fillSet(ids);
+
+        WorkingSet reloaded = new WorkingSet(workingSetTestPath);
+        Assertions.assertEquals(1_000_000, reloaded.getItemIdSet().size());
+        Assertions.assertTrue(reloaded.containsItem(3_000_000));
+        Assertions.assertFalse(reloaded.containsItem(3_000_001));
+    }
+
+    @Test
+    void corruptSetRecoveredFromPreviousGeneration() throws IOException {
+        testWorkingSet.fillSet(List.of(1, 2));
+        testWorkingSet.fillSet(List.of(3));
+        Path previous = workingSetTestPath.resolveSibling("test_working.set.prev");
+        Assertions.assertEquals(Set.of(1, 2), new WorkingSet(previous).getItemIdSet());
+
+        List<String> lines = new ArrayList<>(Files.readAllLines(workingSetTestPath));
+        Assertions.assertTrue(lines.getLast().startsWith("#CRC32 "));
+        lines.set(2, "99");
+        Files.write(workingSetTestPath, lines);
+
+        WorkingSet recovered = new WorkingSet(workingSetTestPath);
+        Assertions.assertEquals(Set.of(1, 2), recovered.getItemIdSet());
+        Assertions.assertTrue(Files.exists(workingSetTestPath.resolveSibling("test_working.set.corrupt")));
+        Assertions.assertEquals(Set.of(1, 2), new WorkingSet(workingSetTestPath).getItemIdSet());
+    }
+
+    @Test
+    void journalOfCorruptSetNotReplayedOverPreviousGeneration() throws IOException {
+        testWorkingSet.fillSet(List.of(1, 2));
+        testWorkingSet.fillSet(List.of(3));
+        testWorkingSet.addItem(4);
+        testWorkingSet.removeItem((Integer) 1);
+        List<String> journal = Files.readAllLines(journalPath());
+
+        List<String> lines = new ArrayList<>(Files.readAllLines(workingSetTestPath));
+        lines.set(2, "99");
+        Files.write(workingSetTestPath, lines);
+
+        // the journal was written over the now unreadable generation, applying it to the older one would mix the two
+        WorkingSet recovered = new WorkingSet(workingSetTestPath);
+        Assertions.assertEquals(Set.of(1, 2), recovered.getItemIdSet());
+        Assertions.assertFalse(Files.exists(journalPath()));
+        Assertions.assertEquals(journal, Files.readAllLines(workingSetTestPath.resolveSibling("test_working.set.journal.corrupt")));
+        Assertions.assertEquals(Set.of(1, 2), new WorkingSet(workingSetTestPath).getItemIdSet());
+    }
+
+    @Test
+    void setWithoutChecksumStillLoads() throws IOException {
+        Files.write(workingSetTestPath, List.of(LocalDate.now().toString(), "2", "5", "6"));
+        Assertions.assertEquals(Set.of(5, 6), new WorkingSet(workingSetTestPath).getItemIdSet());
+    }
+
+    @Test
+    void concurrentWritersDoNotLoseUpdates() {
+        WorkingSet other = new WorkingSet(workingSetTestPath);
+        testWorkingSet.addItem(1);
+        other.addItem(2);
+        testWorkingSet.fillSet(List.of(3));
+        other.removeItem((Integer) 3);
+        other.fillSet(List.of(4));
+        testWorkingSet.addItem(5);
+        testWorkingSet.close();
+        other.close();
+        Assertions.assertEquals(Set.of(1, 2, 4, 5), new WorkingSet(workingSetTestPath).getItemIdSet());
+    }
+
+    @Test
+    void lockTimesOutWithClearError() {
+        SetLock holder = new SetLock(workingSetTestPath);
+        SetLock waiter = new SetLock(workingSetTestPath, 100);
+        try (SetLock.Held held = holder.exclusive()) {
+            RuntimeException e = Assertions.assertThrows(RuntimeException.class, waiter::shared);
+            Assertions.assertTrue(e.getMessage().contains("Timed out"));
+        }
+        try (SetLock.Held held = waiter.shared()) {
+            Assertions.assertNotNull(held);
+        }
+    }
+
+    @Test
+    void lockInterruptedWhileWaiting() {
+        SetLock holder = new SetLock(workingSetTestPath);
+        SetLock waiter = new SetLock(workingSetTestPath);
+        try (SetLock.Held held = holder.exclusive()) {
+            Thread.currentThread().interrupt();
+            RuntimeException e = Assertions.assertThrows(RuntimeException.class, waiter::shared);
+            Assertions.assertTrue(e.getMessage().contains("Interrupted"));
+            Assertions.assertTrue(Thread.interrupted());
+        }
+        try (SetLock.Held held = waiter.exclusive()) {
+            Assertions.assertNotNull(held);
+        }
+    }
 }